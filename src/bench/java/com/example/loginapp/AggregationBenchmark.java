@@ -0,0 +1,61 @@
+package com.example.loginapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Summary view's numbers: building the day buckets for a ledger (once per login) and the
+ * per-period totals each chart refresh asks for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private LedgerRowList ledger;
+    private LedgerAggregator aggregator;
+    private LocalDate anchor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ledger = LedgerFixture.ledger(rows);
+        aggregator = new LedgerAggregator(ledger);
+        anchor = aggregator.anchorDate();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LedgerAggregator buildBuckets() {
+        // Same fold as a ledger-backed aggregator, without leaving a listener behind per call
+        return new LedgerAggregator(ledger.getColumns().image(), 0, ledger.size());
+    }
+
+    @Benchmark
+    public LedgerAggregator.Totals weekTotals() {
+        return aggregator.totals(LedgerAggregator.Period.WEEK, anchor);
+    }
+
+    @Benchmark
+    public LedgerAggregator.Totals yearTotals() {
+        return aggregator.totals(LedgerAggregator.Period.YEAR, anchor);
+    }
+}
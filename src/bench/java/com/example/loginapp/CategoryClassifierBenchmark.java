@@ -0,0 +1,116 @@
+package com.example.loginapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Classifying the rows of a 100k-row import without categories, as CsvImporter does: a fresh
+ * model snapshot, then every row predicted, on one thread or a batch per task on the shared
+ * executor. Merchant names repeat with branch numbers, so some rows hit the prediction cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CategoryClassifierBenchmark {
+
+    private static final String[][] MERCHANTS = {
+            {"Supermarket", "Grocery", "Electricity bill", "Water utilities", "Rent", "超市购物", "水电费"},
+            {"Mobile top up", "Phone bill", "Broadband", "Telecom data plan", "中国移动话费", "宽带"},
+            {"Salary", "Payroll", "Annual bonus", "工资"},
+            {"Sephora", "Lipstick", "Skincare cream", "Perfume", "化妆品", "面膜"}};
+    private static final int BATCH = 2000;
+
+    @Param({"100000"})
+    public int importRows;
+
+    private LedgerRowList ledger;
+    private CategoryClassifier classifier;
+    private List<String> products;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new SplittableRandom(42);
+        ledger = new LedgerRowList();
+        List<BillingViewController.BillingEntry> history = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            history.add(entry(random));
+        }
+        ledger.addAll(history);
+        classifier = new CategoryClassifier(ledger, ledger.size());
+
+        products = new ArrayList<>(importRows);
+        for (int i = 0; i < importRows; i++) {
+            products.add(entry(random).getProduct());
+        }
+    }
+
+    private static BillingViewController.BillingEntry entry(SplittableRandom random) {
+        int category = random.nextInt(MERCHANTS.length);
+        String[] names = MERCHANTS[category];
+        String product = names[random.nextInt(names.length)] + " #" + random.nextInt(20_000)
+                + (random.nextBoolean() ? " Shanghai" : " online");
+        return new BillingViewController.BillingEntry(LedgerFixture.CATEGORIES[category], product,
+                -random.nextInt(100_000), LocalDate.ofEpochDay(19000 + random.nextInt(700)), "12:00");
+    }
+
+    /**
+     * Learn one more row so the next model() call builds a new snapshot, as the first import
+     * after adding entries would.
+     */
+    private CategoryClassifier.Model freshModel() {
+        ledger.add(entry(random));
+        return classifier.model();
+    }
+
+    @Benchmark
+    public int singleThread() {
+        CategoryClassifier.Model model = freshModel();
+        int classified = 0;
+        for (String product : products) {
+            if (model.predict(product, null) != null) {
+                classified++;
+            }
+        }
+        return classified;
+    }
+
+    @Benchmark
+    public int batchesOnExecutor() throws InterruptedException, ExecutionException {
+        CategoryClassifier.Model model = freshModel();
+        List<Future<Integer>> batches = new ArrayList<>();
+        for (int from = 0; from < products.size(); from += BATCH) {
+            List<String> batch = products.subList(from, Math.min(products.size(), from + BATCH));
+            batches.add(TaskScheduler.executor().submit(() -> batch.stream()
+                    .filter(product -> model.predict(product, null) != null)
+                    .collect(Collectors.counting()).intValue()));
+        }
+        int classified = 0;
+        for (Future<Integer> batch : batches) {
+            classified += batch.get();
+        }
+        return classified;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.loginapp;
+
+import java.util.Arrays;
+
+/**
+ * Login latency for a range of PBKDF2 iteration counts, to pick {@code -Dpurseai.pbkdf2.iterations}.
+ *
+ * Prints the median and worst time of a password check at each cost and the highest cost whose
+ * median stays under the target. Run on the slowest machine the app has to support.
+ *
+ * Run with: mvn -Pbench compile exec:exec -Dbench.class=com.example.loginapp.CredentialHashBenchmark
+ * Optional argument: target login latency in ms (default 250).
+ */
+public class CredentialHashBenchmark {
+
+    private static final int[] COSTS = {50_000, 100_000, 210_000, 310_000, 600_000, 1_000_000};
+    private static final int SAMPLES = 9;
+
+    public static void main(String[] args) {
+        double targetMs = args.length > 0 ? Double.parseDouble(args[0]) : 250;
+        char[] password = "correct horse battery staple".toCharArray();
+        byte[] salt = new byte[16];
+
+        // Warm up the JIT and the provider lookup
+        for (int i = 0; i < 20; i++) {
+            CredentialStore.hash(password, salt, 20_000);
+        }
+
+        int chosen = 0;
+        for (int cost : COSTS) {
+            double[] ms = new double[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                long start = System.nanoTime();
+                CredentialStore.hash(password, salt, cost);
+                ms[i] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(ms);
+            double median = ms[SAMPLES / 2];
+            System.out.printf("%,10d iterations | median %7.1f ms | max %7.1f ms%s%n",
+                    cost, median, ms[SAMPLES - 1], cost == CredentialStore.DEFAULT_ITERATIONS ? "  (default)" : "");
+            if (median <= targetMs) {
+                chosen = cost;
+            }
+        }
+        if (chosen == 0) {
+            System.out.printf("No cost keeps login under %.0f ms on this machine%n", targetMs);
+        } else {
+            System.out.printf("Highest cost under %.0f ms: -Dpurseai.pbkdf2.iterations=%d%n", targetMs, chosen);
+        }
+    }
+}
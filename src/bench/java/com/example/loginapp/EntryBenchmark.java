@@ -0,0 +1,75 @@
+package com.example.loginapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating BillingEntry objects: a detached entry as built by the add form and the CSV
+ * importer, a row view with the properties a table cell reads, and loading a whole ledger.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryBenchmark {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 12, 24);
+
+    private LedgerRowList ledger;
+    private int row;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ledger = LedgerFixture.ledger(100_000);
+    }
+
+    @Benchmark
+    public BillingViewController.BillingEntry detachedEntry() {
+        return new BillingViewController.BillingEntry("Living costs", "Nov.utilities bill", -200_00, DATE, "14:29");
+    }
+
+    @Benchmark
+    public void rowViewWithCellProperties(Blackhole blackhole) {
+        BillingViewController.BillingEntry entry = ledger.get(row);
+        row = row + 1 == ledger.size() ? 0 : row + 1;
+        blackhole.consume(entry.categoryProperty().get());
+        blackhole.consume(entry.productProperty().get());
+        blackhole.consume(entry.formattedTimeProperty().get());
+        blackhole.consume(entry.centsProperty().get());
+        blackhole.consume(entry.remarkProperty().get());
+    }
+
+    /**
+     * Appending a ledger of {@code rows} entries in import-sized batches.
+     */
+    @State(Scope.Thread)
+    public static class Load {
+        @Param({"1000", "100000", "1000000", "10000000"})
+        public int rows;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LedgerRowList loadLedger(Load load) {
+        LedgerRowList loaded = new LedgerRowList();
+        LedgerFixture.append(loaded, load.rows, new SplittableRandom(7));
+        return loaded;
+    }
+}
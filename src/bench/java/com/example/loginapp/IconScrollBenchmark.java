@@ -0,0 +1,157 @@
+package com.example.loginapp;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.stage.Stage;
+import javafx.util.Callback;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Frame time and FX-thread allocation while scrolling a large table of category icons, comparing
+ * the old cell (decode a new Image per update) with the cached icon cell.
+ *
+ * Needs a display. Run with:
+ * mvn -Pbench compile exec:exec -Dbench.class=com.example.loginapp.IconScrollBenchmark
+ * Optional arguments: row count (default 200,000), frames per run (default 600).
+ */
+public class IconScrollBenchmark {
+
+    private static final String[] CATEGORIES = {"Living costs", "Communication", "Salary", "Cosmetics"};
+    // Where the icons of the built-in categories come from
+    private static final CategoryRegistry CATEGORY_REGISTRY = new CategoryRegistry();
+
+    static int rows = 200_000;
+    static int frames = 600;
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            rows = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            frames = Integer.parseInt(args[1]);
+        }
+        // Launched through a nested class so the benchmark runs from the plain classpath
+        Application.launch(App.class);
+    }
+
+    public static class App extends Application {
+        private final List<String> results = new ArrayList<>();
+
+        @Override
+        public void start(Stage stage) {
+            LedgerRowList ledger = new LedgerRowList();
+            List<BillingViewController.BillingEntry> batch = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                batch.add(new BillingViewController.BillingEntry(CATEGORIES[i % CATEGORIES.length], "Merchant #" + (i % 5000),
+                        -12_50, LocalDate.of(2020, 1, 1).plusDays(i % 1500), "14:29"));
+            }
+            ledger.addAll(batch);
+
+            TableView<BillingViewController.BillingEntry> table = new TableView<>(ledger);
+            TableColumn<BillingViewController.BillingEntry, String> column = new TableColumn<>("Category");
+            column.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getCategory()));
+            column.setPrefWidth(120);
+            table.getColumns().add(column);
+
+            stage.setScene(new Scene(table, 400, 900));
+            stage.show();
+
+            column.setCellFactory(legacyCells());
+            run(table, "new Image per update", () -> {
+                column.setCellFactory(cachedCells());
+                table.refresh();
+                run(table, "shared IconCache", () -> {
+                    results.forEach(System.out::println);
+                    Platform.exit();
+                });
+            });
+        }
+
+        private void run(TableView<?> table, String label, Runnable next) {
+            long[] frameNanos = new long[frames];
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long fxThread = Thread.currentThread().getId();
+
+            new AnimationTimer() {
+                int frame = -30; // warm-up frames
+                long last;
+                long allocatedAtStart;
+
+                @Override
+                public void handle(long now) {
+                    if (frame == 0) {
+                        allocatedAtStart = threads.getThreadAllocatedBytes(fxThread);
+                    } else if (frame > 0) {
+                        frameNanos[frame - 1] = now - last;
+                    }
+                    last = now;
+                    // Jump a screenful every frame so every visible cell is updated
+                    table.scrollTo((int) ((long) (frame + 30) * 40 % table.getItems().size()));
+                    if (++frame > frames) {
+                        stop();
+                        long allocated = threads.getThreadAllocatedBytes(fxThread) - allocatedAtStart;
+                        long[] sorted = frameNanos.clone();
+                        Arrays.sort(sorted);
+                        results.add(String.format("%-22s mean %.2f ms | p50 %.2f ms | p99 %.2f ms | %,.0f KB allocated/frame",
+                                label, Arrays.stream(frameNanos).average().orElse(0) / 1e6,
+                                sorted[frames / 2] / 1e6, sorted[frames * 99 / 100] / 1e6, allocated / 1024.0 / frames));
+                        next.run();
+                    }
+                }
+            }.start();
+        }
+    }
+
+    private static Callback<TableColumn<BillingViewController.BillingEntry, String>, TableCell<BillingViewController.BillingEntry, String>> legacyCells() {
+        return column -> new TableCell<BillingViewController.BillingEntry, String>() {
+            @Override
+            protected void updateItem(String item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setGraphic(null);
+                } else {
+                    String icon = CATEGORY_REGISTRY.find(item).getIcon();
+                    ImageView imageView = new ImageView(new Image(getClass().getResourceAsStream(icon)));
+                    imageView.setFitHeight(24);
+                    imageView.setFitWidth(24);
+                    setGraphic(imageView);
+                }
+            }
+        };
+    }
+
+    private static Callback<TableColumn<BillingViewController.BillingEntry, String>, TableCell<BillingViewController.BillingEntry, String>> cachedCells() {
+        return column -> new TableCell<BillingViewController.BillingEntry, String>() {
+            private final ImageView imageView = new ImageView();
+
+            {
+                imageView.setFitHeight(IconCache.ICON_SIZE);
+                imageView.setFitWidth(IconCache.ICON_SIZE);
+            }
+
+            @Override
+            protected void updateItem(String item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setGraphic(null);
+                } else {
+                    imageView.setImage(IconCache.forCategory(CATEGORY_REGISTRY.find(item)));
+                    setGraphic(imageView);
+                }
+            }
+        };
+    }
+}
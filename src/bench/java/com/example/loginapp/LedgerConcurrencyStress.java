@@ -0,0 +1,247 @@
+package com.example.loginapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test for reading the ledger while it is written: one thread imports segments of rows
+ * (with new categories and texts appearing as it goes) while reader threads take versions of
+ * the columns without locking and check that every version is consistent.
+ *
+ * Every row's fields are a function of its row id, so a reader can tell a torn or stale read
+ * from a correct one. For each version a reader checks that it ends exactly at the end of an
+ * append (imports become visible whole or not at all), never goes back, and that its new rows
+ * and a sample of the older ones read back as written; the sum of the amounts is compared with
+ * its closed form, which covers every row. From time to time readers also run a text search, a
+ * structured query and a fixed-range aggregation against the index and the same columns.
+ *
+ * With a resident row budget the oldest pages are spilled to a page file while all this goes
+ * on, so readers also see versions move rows to disk and read them back through the cache.
+ *
+ * Run with: mvn -Pbench compile exec:exec -Dbench.class=com.example.loginapp.LedgerConcurrencyStress
+ * Optional arguments: seconds (default 10), reader threads (default max(3, cores)), resident
+ * rows before spilling to disk (default 0, keep everything in memory).
+ * Exits with status 1 if any inconsistency was seen.
+ */
+public class LedgerConcurrencyStress {
+
+    private static final int MAX_ROWS = 5_000_000;
+    private static final int SAMPLED_ROWS = 256;
+    // Every this many versions a reader also searches, queries and aggregates
+    private static final int DEEP_CHECK_INTERVAL = 64;
+
+    private static final AtomicLong versionsChecked = new AtomicLong();
+    private static final AtomicLong rowsChecked = new AtomicLong();
+    private static final AtomicLong deepChecks = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int readers = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(3, Runtime.getRuntime().availableProcessors());
+        int residentRows = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        LedgerRowList ledger = new LedgerRowList();
+        LedgerColumns columns = ledger.getColumns();
+        LedgerPageCache pages = null;
+        if (residentRows > 0) {
+            pages = LedgerPageCache.open(Files.createTempFile("ledger-pages", ".bin"), 8);
+            columns.spillTo(pages, residentRows);
+        }
+        LedgerSearchIndex index = new LedgerSearchIndex(ledger);
+        // Where each append ends, recorded before it is published
+        Set<Integer> ends = ConcurrentHashMap.newKeySet();
+        ends.add(0);
+        AtomicBoolean done = new AtomicBoolean();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        Thread writer = new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(42);
+            int appends = 0;
+            while (System.nanoTime() < deadline && columns.size() < MAX_ROWS) {
+                int first = columns.size();
+                if (random.nextInt(10) == 0) {
+                    ends.add(first + 1);
+                    columns.append(category(first), product(first), cents(first), date(first), time(first), remark(first));
+                } else {
+                    LedgerColumns.Segment segment = new LedgerColumns.Segment(0);
+                    int rows = 1 + random.nextInt(5000);
+                    for (int row = first; row < first + rows; row++) {
+                        segment.add(category(row), product(row), cents(row), date(row), time(row), remark(row));
+                    }
+                    ends.add(first + rows);
+                    ledger.addSegment(segment);
+                }
+                appends++;
+            }
+            System.out.printf("writer: %,d rows in %,d appends%n", columns.size(), appends);
+            done.set(true);
+        }, "writer");
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            int seed = i;
+            threads.add(new Thread(() -> read(columns, index, ends, done, seed), "reader-" + i));
+        }
+        long start = System.nanoTime();
+        writer.start();
+        threads.forEach(Thread::start);
+        writer.join();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("readers: %d, %,d versions and %,d rows checked in %.1f s, %,d searches/queries/aggregations%n",
+                readers, versionsChecked.get(), rowsChecked.get(), elapsed, deepChecks.get());
+        if (pages != null) {
+            System.out.println("pages: " + pages.summary());
+            pages.close();
+        }
+        System.out.printf("failures: %,d%n", failures.get());
+        TaskScheduler.shutdown();
+        if (failures.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void read(LedgerColumns columns, LedgerSearchIndex index, Set<Integer> ends,
+                             AtomicBoolean done, int seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int lastSize = 0;
+        long iterations = 0;
+        while (true) {
+            boolean last = done.get();
+            LedgerColumns.Image image = columns.image();
+            int size = image.size();
+            check(size >= lastSize, "version went back from " + lastSize + " to " + size);
+            check(ends.contains(size), "version ends inside an append at " + size);
+
+            for (int row = lastSize; row < size; row++) {
+                checkRow(image, row);
+            }
+            for (int i = 0; i < SAMPLED_ROWS && size > 0; i++) {
+                checkRow(image, random.nextInt(size));
+            }
+            long sum = 0;
+            for (int row = 0; row < size; row++) {
+                sum += image.cents(row);
+            }
+            check(sum == centsSum(size), "sum of amounts of " + size + " rows is " + sum);
+            rowsChecked.addAndGet(size - lastSize + Math.min(size, SAMPLED_ROWS));
+            versionsChecked.incrementAndGet();
+
+            if (++iterations % DEEP_CHECK_INTERVAL == 0 || last) {
+                deepCheck(columns, index, image);
+            }
+            lastSize = size;
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Search, query and aggregate, and compare with the expected results for the rows of the
+     * version (the index and the query may have seen a later one).
+     */
+    private static void deepCheck(LedgerColumns columns, LedgerSearchIndex index, LedgerColumns.Image image) {
+        int size = image.size();
+        try {
+            // "k42z" is in the product of every 97th row, from row 42
+            LedgerSearchIndex.Result found = index.searchLater("k42z").call();
+            int matches = 0;
+            for (int row = 0; row < size; row++) {
+                if (found.distanceOfRow(row) >= 0) {
+                    matches++;
+                    check(row % 97 == 42, "search matched row " + row);
+                }
+            }
+            check(matches == (size + 54) / 97, "search found " + matches + " of " + size + " rows");
+
+            // Expenses are exactly the rows below 333,334
+            LedgerQuery.Result expenses = LedgerQuery.parse("amount<0").evaluateLater(columns, index).call();
+            int below = 0;
+            for (int row : expenses.rows()) {
+                if (row < size) {
+                    below++;
+                }
+            }
+            check(below == Math.min(size, 333_334), "query found " + below + " expenses in " + size + " rows");
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            e.printStackTrace();
+        }
+
+        LedgerAggregator.Totals totals = new LedgerAggregator(image, 0, size)
+                .totals(LocalDate.ofEpochDay(18_000), LocalDate.ofEpochDay(18_000 + 3650));
+        long expense = 0;
+        long income = 0;
+        for (int row = 0; row < size; row++) {
+            if (cents(row) < 0) {
+                expense -= cents(row);
+            } else {
+                income += cents(row);
+            }
+        }
+        check(totals.getTotalExpense() == expense && totals.getTotalIncome() == income,
+                "aggregated " + totals.getTotalExpense() + "/" + totals.getTotalIncome() + " for " + size + " rows");
+        deepChecks.incrementAndGet();
+    }
+
+    private static void checkRow(LedgerColumns.Image image, int row) {
+        check(image.cents(row) == cents(row)
+                        && image.epochDay(row) == date(row).toEpochDay()
+                        && image.category(row).equals(category(row))
+                        && image.product(row).equals(product(row))
+                        && image.remark(row).equals(remark(row) != null ? remark(row) : product(row))
+                        && image.timeHour(row).equals(time(row)),
+                "row " + row + " reads back wrong");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition && failures.incrementAndGet() <= 20) {
+            System.out.println("FAILED: " + message);
+        }
+    }
+
+    // ---- row contents as a function of the row id ----
+
+    private static long cents(int row) {
+        return row * 3L - 1_000_000;
+    }
+
+    private static long centsSum(int rows) {
+        return 3L * rows * (rows - 1) / 2 - 1_000_000L * rows;
+    }
+
+    private static LocalDate date(int row) {
+        return LocalDate.ofEpochDay(18_000 + (row * 7L) % 3650);
+    }
+
+    private static String category(int row) {
+        // New categories keep turning up, up to 200 of them
+        return row % 7 == 0 ? "Category " + (row / 10_000) % 200 : "Category " + row % 5;
+    }
+
+    private static String product(int row) {
+        return "Merchant " + row % 1000 + " k" + row % 97 + "z";
+    }
+
+    private static String remark(int row) {
+        return row % 3 == 0 ? "Note " + row / 1000 : null;
+    }
+
+    private static String time(int row) {
+        int minute = row % 1440;
+        return String.format("%02d:%02d", minute / 60, minute % 60);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.loginapp;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic ledgers for the JMH benchmarks.
+ */
+final class LedgerFixture {
+
+    static final String[] CATEGORIES = {"Living costs", "Communication", "Salary", "Cosmetics"};
+    private static final int BATCH = 2000;
+
+    private LedgerFixture() {
+    }
+
+    /**
+     * A ledger of the given size with the same content on every call.
+     */
+    static LedgerRowList ledger(int rows) {
+        LedgerRowList ledger = new LedgerRowList();
+        append(ledger, rows, new SplittableRandom(42));
+        return ledger;
+    }
+
+    static void append(LedgerRowList ledger, int rows, SplittableRandom random) {
+        List<BillingViewController.BillingEntry> batch = new ArrayList<>(Math.min(rows, BATCH));
+        for (int i = 0; i < rows; i++) {
+            batch.add(entry(random));
+            if (batch.size() == BATCH || i == rows - 1) {
+                ledger.addAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    static BillingViewController.BillingEntry entry(SplittableRandom random) {
+        return new BillingViewController.BillingEntry(CATEGORIES[random.nextInt(CATEGORIES.length)],
+                "Merchant #" + random.nextInt(5000), random.nextInt(2_000_000) - 1_900_000,
+                LocalDate.ofEpochDay(16436 + random.nextInt(3650)), "14:29");
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.loginapp;
+
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * Heap cost per ledger row: the old property-per-field BillingEntry versus the columnar store.
+ *
+ * Run with: mvn -Pbench compile exec:exec -Dbench.class=com.example.loginapp.LedgerMemoryBenchmark
+ * Optional argument: row count (default 1,000,000).
+ */
+public class LedgerMemoryBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        long legacy = measure(() -> {
+            ObservableList<LegacyBillingEntry> list = FXCollections.observableArrayList();
+            // The same rows as the columnar store gets
+            SplittableRandom random = new SplittableRandom(42);
+            for (int i = 0; i < rows; i++) {
+                BillingViewController.BillingEntry entry = LedgerFixture.entry(random);
+                list.add(new LegacyBillingEntry(entry.getCategory(), entry.getProduct(), Money.toYuan(entry.getCents()),
+                        entry.getDate(), entry.getTimeHour()));
+            }
+            return list;
+        });
+
+        long columnar = measure(() -> LedgerFixture.ledger(rows));
+
+        System.out.printf("rows: %,d%n", rows);
+        System.out.printf("property entries: %,d bytes total, %,.1f bytes/row%n", legacy, (double) legacy / rows);
+        System.out.printf("columnar store:   %,d bytes total, %,.1f bytes/row%n", columnar, (double) columnar / rows);
+        System.out.printf("reduction:        %.1fx%n", (double) legacy / columnar);
+    }
+
+    private static long measure(java.util.function.Supplier<Object> build) {
+        long before = usedHeap();
+        Object retained = build.get();
+        long after = usedHeap();
+        // Keep the structure reachable until after the measurement
+        if (retained.hashCode() == 42) {
+            System.out.print("");
+        }
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * BillingEntry as it was before the columnar store: seven eager properties per row.
+     */
+    static class LegacyBillingEntry {
+        private final StringProperty category;
+        private final StringProperty product;
+        private final DoubleProperty price;
+        private final ObjectProperty<LocalDate> time;
+        private final StringProperty timeHour;
+        private final StringProperty formattedTime;
+        private final StringProperty remark;
+
+        LegacyBillingEntry(String category, String product, double price, LocalDate time, String timeHour) {
+            this.category = new SimpleStringProperty(category);
+            this.product = new SimpleStringProperty(product);
+            this.price = new SimpleDoubleProperty(price);
+            this.time = new SimpleObjectProperty<>(time);
+            this.timeHour = new SimpleStringProperty(timeHour);
+            this.formattedTime = new SimpleStringProperty(
+                time.getYear() + "." +
+                String.format("%02d", time.getMonthValue()) + "." +
+                String.format("%02d", time.getDayOfMonth()) + " " +
+                timeHour
+            );
+            this.remark = new SimpleStringProperty(product);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.loginapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Heap and access cost of a ledger that keeps only its most recent rows in memory.
+ *
+ * Builds a persisted ledger, then reopens it with everything in memory and with a resident row
+ * budget and caches of a few sizes. For each it reports the heap held after loading, how long a
+ * screen of table rows takes when the user jumps to random points of the history and scrolls a
+ * few screens from each, the page cache's hit rate while doing so, and a structured query over
+ * every row (which scans the spilled pages without caching them).
+ *
+ * Run with: mvn -Pbench compile exec:exec -Dbench.class=com.example.loginapp.LedgerPagingBenchmark
+ * Optional arguments: rows (default 2,000,000), resident rows (default 250,000).
+ */
+public class LedgerPagingBenchmark {
+
+    private static final int SCREEN_ROWS = 40;
+    private static final int JUMPS = 300;
+    private static final int SCREENS_PER_JUMP = 10;
+    private static final int QUERY_RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int resident = args.length > 1 ? Integer.parseInt(args[1]) : 250_000;
+        Path directory = Files.createTempDirectory("ledger-paging");
+        try {
+            populate(directory, rows);
+            System.out.printf("rows: %,d, resident rows with a budget: %,d%n%n", rows, resident);
+            System.out.printf("%-22s %9s %9s %12s %9s %11s%n",
+                    "", "heap MB", "load ms", "screen us", "hit rate", "query ms");
+            run(directory, "all in memory", 0, 0);
+            for (int cachePages : new int[] {4, 16, 64}) {
+                run(directory, "budget, " + cachePages + " cached pages", resident, cachePages);
+            }
+        } finally {
+            TaskScheduler.shutdown();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static void populate(Path directory, int rows) throws IOException {
+        LedgerRowList ledger = LedgerFixture.ledger(rows);
+        try (LedgerStore store = LedgerStore.open(directory, new LedgerColumns())) {
+            store.append(ledger.getColumns(), 0, rows);
+            store.requestSnapshot(ledger.getColumns());
+        }
+    }
+
+    private static void run(Path directory, String label, int resident, int cachePages) throws Exception {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        LedgerColumns columns = new LedgerColumns();
+        LedgerPageCache pages = null;
+        if (resident > 0) {
+            pages = LedgerPageCache.open(directory.resolve("pages.bin"), cachePages);
+            columns.spillTo(pages, resident);
+        }
+        LedgerStore store = LedgerStore.open(directory, columns);
+        double loadMs = (System.nanoTime() - start) / 1e6;
+        long heap = usedHeap() - before;
+
+        long hits = pages != null ? pages.getHits() : 0;
+        long misses = pages != null ? pages.getMisses() : 0;
+        double screenMicros = scroll(columns);
+        String hitRate = pages == null ? "-" : String.format("%.1f%%",
+                100.0 * (pages.getHits() - hits) / (pages.getHits() - hits + pages.getMisses() - misses));
+
+        LedgerQuery query = LedgerQuery.parse("category:living amount<-100");
+        LedgerSearchIndex index = new LedgerSearchIndex(new LedgerRowList());
+        query.evaluate(columns, index);
+        start = System.nanoTime();
+        for (int i = 0; i < QUERY_RUNS; i++) {
+            query.evaluate(columns, index);
+        }
+        double queryMs = (System.nanoTime() - start) / 1e6 / QUERY_RUNS;
+
+        System.out.printf("%-22s %9.1f %9.1f %12.1f %9s %11.1f%n",
+                label, heap / 1048576.0, loadMs, screenMicros, hitRate, queryMs);
+        store.close();
+        if (pages != null) {
+            pages.close();
+        }
+    }
+
+    /**
+     * Jump to random rows and scroll a few screens from each, reading every cell like the table
+     * does. Returns the average time per screen in microseconds.
+     */
+    private static double scroll(LedgerColumns columns) {
+        SplittableRandom random = new SplittableRandom(7);
+        int size = columns.size();
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int jump = 0; jump < JUMPS; jump++) {
+            int first = random.nextInt(size - SCREEN_ROWS * SCREENS_PER_JUMP);
+            for (int row = first; row < first + SCREEN_ROWS * SCREENS_PER_JUMP; row++) {
+                checksum += columns.category(row).length() + columns.product(row).length()
+                        + columns.remark(row).length() + columns.cents(row) + columns.epochDay(row)
+                        + columns.timeHour(row).length();
+            }
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / (JUMPS * SCREENS_PER_JUMP);
+        if (checksum == 42) {
+            System.out.print("");
+        }
+        return micros;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.loginapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Time from opening a persisted ledger to having the first table page ready, at 1M rows.
+ *
+ * Builds a store with a snapshot plus a journal tail, then reopens it the way the app does at
+ * startup: map the snapshot, replay the tail, build the Summary aggregation and materialize the
+ * first screenful of rows.
+ *
+ * Run with: mvn -Pbench compile exec:exec -Dbench.class=com.example.loginapp.LedgerStartupBenchmark
+ * Optional arguments: snapshot rows (default 1,000,000), journal tail rows (default 20,000).
+ */
+public class LedgerStartupBenchmark {
+
+    private static final int PAGE_ROWS = 40;
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int tail = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        Path directory = Files.createTempDirectory("ledger-bench");
+        try {
+            populate(directory, rows, tail);
+            for (int run = 1; run <= 3; run++) {
+                reopen(directory, run);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static void populate(Path directory, int rows, int tail) throws IOException {
+        LedgerRowList list = new LedgerRowList();
+        LedgerStore store = LedgerStore.open(directory, list.getColumns());
+        SplittableRandom random = new SplittableRandom(7);
+        long start = System.nanoTime();
+        appendRows(list, store, random, rows);
+        store.requestSnapshot(list.getColumns());
+        appendRows(list, store, random, tail);
+        store.close();
+        System.out.printf("wrote %,d snapshot rows + %,d journal rows in %.0f ms%n",
+                rows, tail, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static void appendRows(LedgerRowList list, LedgerStore store, SplittableRandom random, int count) {
+        // Journaled a batch at a time, like imported rows
+        for (int done = 0; done < count; done += 2000) {
+            int from = list.size();
+            LedgerFixture.append(list, Math.min(2000, count - done), random);
+            store.append(list.getColumns(), from, list.size());
+        }
+    }
+
+    private static void reopen(Path directory, int run) throws IOException {
+        long start = System.nanoTime();
+        LedgerRowList list = new LedgerRowList();
+        LedgerStore store = LedgerStore.open(directory, list.getColumns());
+        long opened = System.nanoTime();
+
+        LedgerAggregator aggregator = new LedgerAggregator(list);
+        long aggregated = System.nanoTime();
+
+        // What the first table page needs
+        int page = Math.min(PAGE_ROWS, list.size());
+        long checksum = 0;
+        for (int i = list.size() - page; i < list.size(); i++) {
+            BillingViewController.BillingEntry entry = list.get(i);
+            checksum += entry.categoryProperty().get().length() + entry.productProperty().get().length()
+                    + entry.formattedTimeProperty().get().length() + entry.centsProperty().get();
+        }
+        long firstPage = System.nanoTime();
+        store.close();
+
+        System.out.printf("run %d: %,d rows (%,d replayed) | open %.1f ms | aggregate %.1f ms | first page %.2f ms | total %.1f ms%n",
+                run, list.size(), store.getReplayedRows(), (opened - start) / 1e6, (aggregated - opened) / 1e6,
+                (firstPage - aggregated) / 1e6, (firstPage - start) / 1e6);
+        // Keep the page reads from being optimised away
+        if (checksum == 42 && aggregator.anchorDate() == null) {
+            System.out.print("");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.loginapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting an amount the way the price cell does on every updateItem: the String.format call
+ * it used with double prices, {@link Money#formatSigned} on cents, and the cached cell text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceFormatBenchmark {
+
+    private final double[] prices = new double[1024];
+    private final long[] cents = new long[1024];
+    private int next;
+
+    public PriceFormatBenchmark() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < prices.length; i++) {
+            cents[i] = random.nextInt(2_000_000) - 1_900_000;
+            prices[i] = cents[i] / 100.0;
+        }
+    }
+
+    @Benchmark
+    public String legacyPriceCell() {
+        double item = prices[next++ & (prices.length - 1)];
+        return String.format("%s¥%.2f", item >= 0 ? "+" : "-", Math.abs(item));
+    }
+
+    @Benchmark
+    public String priceCell() {
+        return Money.formatSigned(cents[next++ & (cents.length - 1)]);
+    }
+
+    @Benchmark
+    public String cachedPriceCell() {
+        return CellText.price(cents[next++ & (cents.length - 1)]);
+    }
+
+    @Benchmark
+    public String totalLabel() {
+        return Money.format(cents[next++ & (cents.length - 1)] * 1000);
+    }
+}
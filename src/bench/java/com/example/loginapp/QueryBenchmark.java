@@ -0,0 +1,66 @@
+package com.example.loginapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Structured header queries over the columns: a selective one, one that keeps about half the
+ * rows, and one with a text part that also goes through the trigram index. Ledgers from
+ * 256k rows up are evaluated in parallel chunks, so compare across core counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"100000", "1000000", "10000000"})
+    public int rows;
+
+    private LedgerColumns columns;
+    private LedgerSearchIndex index;
+    private LedgerQuery selective;
+    private LedgerQuery broad;
+    private LedgerQuery withText;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LedgerRowList ledger = LedgerFixture.ledger(rows);
+        columns = ledger.getColumns();
+        index = new LedgerSearchIndex(ledger);
+        // The first query builds the index
+        index.search("warm up");
+        selective = LedgerQuery.parse("category:salary amount<-100 date:2019-11..2019-12");
+        broad = LedgerQuery.parse("amount<-9500");
+        withText = LedgerQuery.parse("category:living date:2019 merchant #42");
+    }
+
+    @Benchmark
+    public LedgerQuery.Result selectiveColumns() {
+        return selective.evaluate(columns, index);
+    }
+
+    @Benchmark
+    public LedgerQuery.Result halfTheRows() {
+        return broad.evaluate(columns, index);
+    }
+
+    @Benchmark
+    public LedgerQuery.Result columnsAndText() {
+        return withText.evaluate(columns, index);
+    }
+}
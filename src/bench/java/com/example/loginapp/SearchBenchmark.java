@@ -0,0 +1,55 @@
+package com.example.loginapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The fuzzy search behind handleFuzzySearch and the search box, against a built trigram index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private LedgerSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new LedgerSearchIndex(LedgerFixture.ledger(rows));
+        // The first query builds the index
+        index.search("warm up");
+    }
+
+    @Benchmark
+    public LedgerSearchIndex.Result exactTerm() {
+        return index.search("merchant #1234");
+    }
+
+    @Benchmark
+    public LedgerSearchIndex.Result typo() {
+        return index.search("mrechant #42");
+    }
+
+    @Benchmark
+    public LedgerSearchIndex.Result shortTerm() {
+        return index.search("#7");
+    }
+}
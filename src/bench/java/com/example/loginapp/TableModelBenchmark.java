@@ -0,0 +1,130 @@
+package com.example.loginapp;
+
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+
+/**
+ * Sort, search and scroll latency of the billing table model across ledger sizes, headless.
+ *
+ * For each size it times the first sort by each key (building the order), re-sorting with a
+ * cached order, appending an import batch while sorted, a search (query, then filtering the
+ * sorted rows by its result), a month's date range (the first one builds the date index, then
+ * the next month, then that month sorted by price), and reading a screenful of cells at random scroll positions,
+ * which is what the TableView does per frame. The old
+ * FilteredList/SortedList pipeline with a property comparator is timed for comparison up to
+ * 1M rows.
+ *
+ * Run with: mvn -Pbench compile exec:exec -Dbench.class=com.example.loginapp.TableModelBenchmark
+ * Optional arguments: ledger sizes (default 10000 100000 1000000).
+ */
+public class TableModelBenchmark {
+
+    private static final int VIEWPORT_ROWS = 40;
+    private static final int SCROLL_JUMPS = 2000;
+    private static final int LEGACY_LIMIT = 1_000_000;
+
+    private static long blackhole;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] {10_000, 100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        // First pass warms up the JIT and is not reported
+        run(20_000, false);
+        for (int size : sizes) {
+            run(size, true);
+        }
+        if (blackhole == 42) {
+            System.out.print("");
+        }
+    }
+
+    private static void run(int rows, boolean report) {
+        SplittableRandom random = new SplittableRandom(11);
+        LedgerRowList ledger = new LedgerRowList();
+        LedgerFixture.append(ledger, rows, random);
+        LedgerTableModel model = new LedgerTableModel(ledger);
+        LedgerSearchIndex searchIndex = new LedgerSearchIndex(ledger);
+
+        StringBuilder line = new StringBuilder(String.format("%,10d rows |", rows));
+        for (LedgerSortIndex.Key key : new LedgerSortIndex.Key[] {LedgerSortIndex.Key.TIME,
+                LedgerSortIndex.Key.PRICE, LedgerSortIndex.Key.CATEGORY}) {
+            long start = System.nanoTime();
+            model.sortBy(key, true);
+            long first = System.nanoTime();
+            model.sortBy(key, false);
+            long again = System.nanoTime();
+            line.append(String.format(" %s %.1f / %.1f ms |", key.name().toLowerCase(), (first - start) / 1e6, (again - first) / 1e6));
+        }
+
+        // An import batch arriving while the table is sorted by time
+        model.sortBy(LedgerSortIndex.Key.TIME, false);
+        long start = System.nanoTime();
+        LedgerFixture.append(ledger, 2000, random);
+        line.append(String.format(" +2k rows sorted %.1f ms |", (System.nanoTime() - start) / 1e6));
+
+        // The trigram index is built by the first query; time a query against a built index
+        searchIndex.search("warm up");
+        start = System.nanoTime();
+        LedgerSearchIndex.Result result = searchIndex.search("merchant #1234");
+        long searched = System.nanoTime();
+        model.setFilter(result);
+        line.append(String.format(" search %.1f + filter %.1f ms (%,d) |", (searched - start) / 1e6,
+                (System.nanoTime() - searched) / 1e6, model.size()));
+        model.setFilter(null);
+
+        model.sortBy(null, true);
+        LocalDate month = LocalDate.of(2020, 6, 1);
+        start = System.nanoTime();
+        model.setDateRange(month, month.plusMonths(1).minusDays(1));
+        long firstRange = System.nanoTime();
+        model.setDateRange(month.plusMonths(1), month.plusMonths(2).minusDays(1));
+        long nextRange = System.nanoTime();
+        model.sortBy(LedgerSortIndex.Key.PRICE, true);
+        line.append(String.format(" month %.1f / %.2f ms, by price %.2f ms (%,d) |", (firstRange - start) / 1e6,
+                (nextRange - firstRange) / 1e6, (System.nanoTime() - nextRange) / 1e6, model.size()));
+        model.setDateRange(null, null);
+        model.sortBy(null, true);
+
+        line.append(String.format(" scroll %.1f us/frame", scroll(model, random) / 1e3));
+        if (rows <= LEGACY_LIMIT) {
+            line.append(String.format(" | legacy sort by price %.1f ms", legacySort(ledger) / 1e6));
+        }
+        if (report) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Average nanoseconds to read the cells of one viewport at random positions.
+     */
+    private static double scroll(LedgerTableModel model, SplittableRandom random) {
+        long start = System.nanoTime();
+        for (int jump = 0; jump < SCROLL_JUMPS; jump++) {
+            int top = random.nextInt(Math.max(1, model.size() - VIEWPORT_ROWS));
+            for (int i = top; i < Math.min(model.size(), top + VIEWPORT_ROWS); i++) {
+                BillingViewController.BillingEntry entry = model.get(i);
+                blackhole += entry.categoryProperty().get().length() + entry.productProperty().get().length()
+                        + entry.formattedTimeProperty().get().length() + entry.centsProperty().get();
+            }
+        }
+        return (double) (System.nanoTime() - start) / SCROLL_JUMPS;
+    }
+
+    /**
+     * The pipeline the table used before: a SortedList over a FilteredList, comparing the price property.
+     */
+    private static long legacySort(LedgerRowList ledger) {
+        SortedList<BillingViewController.BillingEntry> sorted = new SortedList<>(new FilteredList<>(ledger));
+        long start = System.nanoTime();
+        sorted.setComparator(Comparator.comparingLong(entry -> entry.centsProperty().get()));
+        long elapsed = System.nanoTime() - start;
+        blackhole += sorted.get(0).getRow();
+        return elapsed;
+    }
+}
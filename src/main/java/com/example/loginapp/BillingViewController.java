@@ -2,20 +2,30 @@ package com.example.loginapp;
 
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.beans.property.*;
+import javafx.beans.value.ChangeListener;
+import javafx.css.PseudoClass;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.Image;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
-import javafx.stage.Stage;
+import javafx.scene.layout.HBox;
+import javafx.stage.FileChooser;
+import javafx.util.Duration;
 import java.time.LocalDate;
+import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+public class BillingViewController implements BoundView {
+    // Price cell states, styled by .price-cell:positive and .price-cell:negative in billing.css
+    private static final PseudoClass POSITIVE = PseudoClass.getPseudoClass("positive");
+    private static final PseudoClass NEGATIVE = PseudoClass.getPseudoClass("negative");
+    private static final String ALL_DATES = "All dates";
+    private static final String CUSTOM_RANGE = "Custom";
 
-public class BillingViewController {
     @FXML private Label usernameLabel;
+    @FXML private Hyperlink logoutLink;
     @FXML private TextField searchField;
     @FXML private Button billingButton;
     @FXML private Button summaryButton;
@@ -23,67 +33,112 @@ public class BillingViewController {
     @FXML private Button footprintButton;
     @FXML private Button setButton;
     @FXML private Button addCsvButton;
+    @FXML private Button exportButton;
+    @FXML private ProgressIndicator busyIndicator;
+    @FXML private ProgressBar importProgressBar;
+    @FXML private Label importStatusLabel;
+    @FXML private Label budgetAlertLabel;
+    @FXML private ChoiceBox<String> dateRangeChoice;
+    @FXML private DatePicker rangeFromPicker;
+    @FXML private DatePicker rangeToPicker;
 
     @FXML private TextField productField;
     @FXML private TextField priceField;
     @FXML private DatePicker timePicker;
 
-    // Category radio buttons
-    @FXML private ToggleGroup categoryGroup;
-    @FXML private RadioButton livingCostsRadio;
-    @FXML private RadioButton communicationRadio;
-    @FXML private RadioButton salaryRadio;
-    @FXML private RadioButton cosmeticsRadio;
+    // One radio button per category of the ledger, built from its registry
+    @FXML private HBox categoryBox;
+    @FXML private Button addCategoryButton;
+    private final ToggleGroup categoryGroup = new ToggleGroup();
+    private CategoryRegistry shownCategories;
 
     @FXML private Button resetButton;
     @FXML private Button buildButton;
     @FXML private Button inquireButton;
 
-    // Removed ComboBox as we're now using radio buttons
-
     @FXML private TableView<BillingEntry> billingTable;
     @FXML private TableColumn<BillingEntry, String> categoryColumn;
     @FXML private TableColumn<BillingEntry, String> productColumn;
     @FXML private TableColumn<BillingEntry, String> timeColumn;
-    @FXML private TableColumn<BillingEntry, Double> priceColumn;
+    @FXML private TableColumn<BillingEntry, Number> priceColumn;
     @FXML private TableColumn<BillingEntry, String> remarkColumn;
 
-    private final ObservableList<BillingEntry> billingData = FXCollections.observableArrayList();
+    // The signed-in user's ledger; replaced on login and logout
+    private ObservableList<BillingEntry> billingData;
+
+    // The table shows the ledger through a paged model that sorts (columns or search rank) and filters (search) row ids
+    private LedgerTableModel tableModel;
+    private LedgerColumns columns;
+    private CategoryRegistry categories;
+    private LedgerSearchIndex searchIndex;
+    private RowFilter activeSearch;
+
+    // Searches run in the background; typing waits for a short pause, the Inquire button does not.
+    // The header takes structured queries, the Inquire button searches the product text
+    // Created in bind(), since the scheduler tracks them on the FX thread
+    private LatestRequestService<LedgerQuery.Result> typedSearch;
+    private LatestRequestService<LedgerSearchIndex.Result> inquirySearch;
+    // When the search being waited for was asked for, for the latency metrics
+    private long searchRequestedAt;
+
+    // Set once the user picks a category, so the classifier's suggestion no longer overrides it
+    private boolean categoryChosen;
+    private CategoryClassifier classifier;
+
+    // Budget alerts of the bound ledger are shown in the header until the next one
+    private LedgerRules rules;
+    private final ChangeListener<LedgerRules.BudgetAlert> budgetAlertListener =
+            (obs, oldAlert, alert) -> showBudgetAlert(alert);
+
+    // Warns once when the bound ledger can no longer save its entries
+    private ReadOnlyObjectProperty<IOException> storageFailure;
+    private final ChangeListener<IOException> storageFailureListener =
+            (obs, oldFailure, failure) -> showStorageFailure(failure);
+
+    // Currently running CSV import and export, if any
+    private CsvImporter csvImporter;
+    private LedgerExporter exporter;
 
     @FXML
     public void initialize() {
+        logoutLink.setOnAction(event -> Session.getCurrent().logout());
+
         // Configure table columns
         categoryColumn.setCellValueFactory(cellData -> cellData.getValue().categoryProperty());
         productColumn.setCellValueFactory(cellData -> cellData.getValue().productProperty());
         timeColumn.setCellValueFactory(cellData -> cellData.getValue().formattedTimeProperty());
-        priceColumn.setCellValueFactory(cellData -> cellData.getValue().priceProperty().asObject());
+        priceColumn.setCellValueFactory(cellData -> cellData.getValue().centsProperty());
         remarkColumn.setCellValueFactory(cellData -> cellData.getValue().remarkProperty());
 
         // Custom cell factory for price column to show positive/negative values with colors
-        priceColumn.setCellFactory(column -> new TableCell<BillingEntry, Double>() {
+        priceColumn.setCellFactory(column -> new TableCell<BillingEntry, Number>() {
+            {
+                getStyleClass().add("price-cell");
+            }
+
             @Override
-            protected void updateItem(Double item, boolean empty) {
+            protected void updateItem(Number item, boolean empty) {
                 super.updateItem(item, empty);
 
-                if (empty || item == null) {
-                    setText(null);
-                    setStyle("");
-                } else {
-                    // Format with ¥ symbol and set color based on value
-                    String formattedPrice = String.format("%s¥%.2f", item >= 0 ? "+" : "-", Math.abs(item));
-                    setText(formattedPrice);
-
-                    if (item >= 0) {
-                        setStyle("-fx-text-fill: #4CAF50; -fx-font-weight: bold;");
-                    } else {
-                        setStyle("-fx-text-fill: #F44336; -fx-font-weight: bold;");
-                    }
-                }
+                boolean filled = !empty && item != null;
+                long cents = filled ? item.longValue() : 0;
+                // Text comes from the shared cache and colors from billing.css, so a recycled cell does no formatting or style parsing
+                setText(filled ? CellText.price(cents) : null);
+                pseudoClassStateChanged(POSITIVE, filled && cents >= 0);
+                pseudoClassStateChanged(NEGATIVE, filled && cents < 0);
             }
         });
 
         // Custom cell factory for category column to show icons
         categoryColumn.setCellFactory(column -> new TableCell<BillingEntry, String>() {
+            // One ImageView per cell, reused as the cell is recycled while scrolling
+            private final ImageView imageView = new ImageView();
+
+            {
+                imageView.setFitHeight(IconCache.ICON_SIZE);
+                imageView.setFitWidth(IconCache.ICON_SIZE);
+            }
+
             @Override
             protected void updateItem(String item, boolean empty) {
                 super.updateItem(item, empty);
@@ -92,30 +147,57 @@ public class BillingViewController {
                     setText(null);
                     setGraphic(null);
                 } else {
-                    // Create an ImageView with the appropriate icon based on category
-                    String iconPath = getCategoryIconPath(item);
-                    if (iconPath != null) {
-                        ImageView imageView = new ImageView(new Image(getClass().getResourceAsStream(iconPath)));
-                        imageView.setFitHeight(24);
-                        imageView.setFitWidth(24);
+                    // Icons are decoded once per category and shared by all cells
+                    Image icon = IconCache.forCategory(categories.find(item));
+                    if (icon != null) {
+                        imageView.setImage(icon);
+                        setText(null);
                         setGraphic(imageView);
                     } else {
                         setText(item);
+                        setGraphic(null);
                     }
                 }
             }
         });
 
-        billingTable.setItems(billingData);
+        // Column sorting uses the model's precomputed orders; with no column selected a search is ranked by match quality
+        Map<TableColumn<BillingEntry, ?>, LedgerSortIndex.Key> sortKeys = Map.of(
+                timeColumn, LedgerSortIndex.Key.TIME,
+                priceColumn, LedgerSortIndex.Key.PRICE,
+                categoryColumn, LedgerSortIndex.Key.CATEGORY,
+                productColumn, LedgerSortIndex.Key.PRODUCT,
+                remarkColumn, LedgerSortIndex.Key.REMARK);
+        billingTable.setSortPolicy(table -> {
+            // Only the primary sort column is used
+            TableColumn<BillingEntry, ?> column = table.getSortOrder().isEmpty() ? null : table.getSortOrder().get(0);
+            long start = System.nanoTime();
+            tableModel.sortBy(column != null ? sortKeys.get(column) : null,
+                    column == null || column.getSortType() == TableColumn.SortType.ASCENDING);
+            UiMetrics.recordSince(UiMetrics.Action.SORT, start);
+            return true;
+        });
+
+        // Search as you type in the header search box, e.g. "category:Salary date:2024-11 bonus"
+        searchField.textProperty().addListener((obs, oldText, newText) -> applySearch(newText));
+
+        // Suggest a category from the product name until the user picks one
+        productField.textProperty().addListener((obs, oldText, newText) -> suggestCategory(newText));
+        addCategoryButton.setOnAction(event -> handleAddCategory());
+
+        // Narrow the table to a date range; the model looks the rows up by date instead of scanning
+        dateRangeChoice.getItems().addAll(ALL_DATES, "Today", "This week", "This month", "This year", CUSTOM_RANGE);
+        dateRangeChoice.setValue(ALL_DATES);
+        dateRangeChoice.valueProperty().addListener((obs, oldRange, range) -> applyDateRange());
+        rangeFromPicker.valueProperty().addListener((obs, oldDate, date) -> applyDateRange());
+        rangeToPicker.valueProperty().addListener((obs, oldDate, date) -> applyDateRange());
 
         // Set current date as default for date picker
         timePicker.setValue(LocalDate.now());
 
-        // Add sample data
-        addSampleData();
-
         // Button handlers
         addCsvButton.setOnAction(event -> handleAddCsv());
+        exportButton.setOnAction(event -> handleExport());
         resetButton.setOnAction(event -> clearInputFields());
         buildButton.setOnAction(event -> handleAddRecord()); // Build button adds a record
         inquireButton.setOnAction(event -> handleFuzzySearch()); // Inquire button performs fuzzy search
@@ -123,23 +205,215 @@ public class BillingViewController {
         // Menu button handlers
         billingButton.setOnAction(event -> System.out.println("Already on Billing Details"));
         summaryButton.setOnAction(event -> navigateToSummary());
-        savingButton.setOnAction(event -> System.out.println("Saving clicked"));
+        savingButton.setOnAction(event -> RulesPanel.show(savingButton.getScene().getWindow()));
         footprintButton.setOnAction(event -> System.out.println("Footprint clicked"));
-        setButton.setOnAction(event -> System.out.println("Set clicked"));
+        setButton.setOnAction(event -> DiagnosticsPanel.show(setButton.getScene().getWindow()));
+    }
+
+    /**
+     * Attach to the session, the scheduler and the current ledger; on the FX thread, after
+     * {@link #initialize()}, which may have run on a loader thread.
+     */
+    @Override
+    public void bind() {
+        usernameLabel.textProperty().bind(Session.getCurrent().usernameProperty());
+
+        typedSearch = new LatestRequestService<>(Duration.millis(150));
+        inquirySearch = new LatestRequestService<>(Duration.ZERO);
+        typedSearch.setOnSucceeded(event -> showSearchResult(typedSearch.getValue()));
+        typedSearch.setOnFailed(event -> showSearchFailure(searchField, typedSearch.getException()));
+        inquirySearch.setOnSucceeded(event -> showInquiryResult(inquirySearch.getValue()));
+        inquirySearch.setOnFailed(event -> {
+            Throwable error = inquirySearch.getException();
+            if (error != null) {
+                error.printStackTrace();
+            }
+            showAlert("Search Error", "Search failed: " + (error != null ? error.getMessage() : "unknown error"));
+        });
+        TaskScheduler.bindBusyIndicator(busyIndicator);
+
+        // Show the signed-in user's ledger, and switch when another user signs in
+        bindLedger(Ledger.getCurrent());
+        Ledger.currentProperty().addListener((obs, oldLedger, newLedger) -> bindLedger(newLedger));
+    }
+
+    /**
+     * Point the table at a ledger, dropping everything derived from the previous one so it can be
+     * unloaded.
+     */
+    private void bindLedger(Ledger ledger) {
+        if (csvImporter != null) {
+            csvImporter.cancel();
+        }
+        if (exporter != null) {
+            exporter.cancel();
+        }
+        // Results of searches still running belong to the previous ledger
+        typedSearch.discard();
+        inquirySearch.discard();
+        billingData = ledger.getEntries();
+        tableModel = new LedgerTableModel(ledger.getEntries());
+        columns = ledger.getColumns();
+        categories = ledger.getCategories();
+        showCategories();
+        searchIndex = ledger.getSearchIndex();
+        classifier = ledger.getClassifier();
+        activeSearch = null;
+        billingTable.getSortOrder().clear();
+        billingTable.setItems(tableModel);
+        applyDateRange();
+        if (!searchField.getText().isEmpty()) {
+            searchField.clear();
+        }
+
+        if (rules != null) {
+            rules.alertProperty().removeListener(budgetAlertListener);
+        }
+        rules = ledger.getRules();
+        rules.alertProperty().addListener(budgetAlertListener);
+        showBudgetAlert(null);
+
+        if (storageFailure != null) {
+            storageFailure.removeListener(storageFailureListener);
+        }
+        storageFailure = ledger.storageFailureProperty();
+        storageFailure.addListener(storageFailureListener);
+
+        // A new user starts with the sample entries (the ledger is persisted, so only seed it once)
+        if (ledger.hasOwner() && billingData.isEmpty()) {
+            addSampleData();
+        }
+        // The table shows the ledger up to today, so recurring entries are due up to today
+        rules.materializeThrough(LocalDate.now());
+    }
+
+    /**
+     * Rebuild the category radio buttons if the ledger has categories they do not show yet (a
+     * different ledger, or names an import or the user added), keeping the selection.
+     */
+    private void showCategories() {
+        if (shownCategories == categories && categoryGroup.getToggles().size() == categories.size()) {
+            return;
+        }
+        String selected = categoryGroup.getSelectedToggle() != null ? getSelectedCategory() : null;
+        shownCategories = categories;
+        categoryGroup.getToggles().clear();
+        categoryBox.getChildren().clear();
+        for (CategoryRegistry.Category category : categories.getAll()) {
+            RadioButton radio = new RadioButton();
+            radio.setToggleGroup(categoryGroup);
+            radio.setUserData(category.getName());
+            radio.getStyleClass().add("category-radio");
+            radio.setTooltip(new Tooltip(category.getName()));
+            // Categories without an icon show their name
+            Image icon = IconCache.forCategory(category);
+            if (icon != null) {
+                ImageView imageView = new ImageView(icon);
+                imageView.setFitHeight(IconCache.ICON_SIZE);
+                imageView.setFitWidth(IconCache.ICON_SIZE);
+                radio.setGraphic(imageView);
+            } else {
+                radio.setText(category.getName());
+            }
+            radio.setOnAction(event -> categoryChosen = true);
+            categoryBox.getChildren().add(radio);
+        }
+        selectCategory(selected != null && categories.find(selected) != null ? selected : categories.name(0));
+    }
+
+    private void selectCategory(String name) {
+        for (Toggle toggle : categoryGroup.getToggles()) {
+            if (toggle.getUserData().equals(name)) {
+                toggle.setSelected(true);
+            }
+        }
+    }
+
+    /**
+     * Ask for the name of a new category and select it. It gets a color of its own and shows
+     * its name until it is given an icon.
+     */
+    private void handleAddCategory() {
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.initOwner(addCategoryButton.getScene().getWindow());
+        dialog.setTitle("New category");
+        dialog.setHeaderText(null);
+        dialog.setContentText("Name:");
+        String name = dialog.showAndWait().map(String::trim).orElse("");
+        if (name.isEmpty()) {
+            return;
+        }
+        try {
+            categories.register(name, null, null);
+        } catch (IllegalStateException e) {
+            showAlert("Error", "This ledger already has " + CategoryRegistry.MAX_CATEGORIES + " categories");
+            return;
+        }
+        showCategories();
+        selectCategory(name);
+        categoryChosen = true;
+    }
+
+    private void showBudgetAlert(LedgerRules.BudgetAlert alert) {
+        budgetAlertLabel.setText(alert != null ? alert.getMessage() : "");
+        budgetAlertLabel.setVisible(alert != null);
+        budgetAlertLabel.setManaged(alert != null);
+    }
+
+    private void showStorageFailure(IOException failure) {
+        if (failure != null) {
+            showAlert("Storage Error", "Your entries can no longer be saved: " + failure.getMessage()
+                    + "\nEntries added from now on are lost when you log out.");
+        }
+    }
+
+    private void applyDateRange() {
+        String range = dateRangeChoice.getValue() != null ? dateRangeChoice.getValue() : ALL_DATES;
+        boolean custom = CUSTOM_RANGE.equals(range);
+        rangeFromPicker.setVisible(custom);
+        rangeFromPicker.setManaged(custom);
+        rangeToPicker.setVisible(custom);
+        rangeToPicker.setManaged(custom);
+
+        LocalDate today = LocalDate.now();
+        switch (range) {
+            case "Today":
+                tableModel.setDateRange(today, today);
+                break;
+            case "This week":
+                tableModel.setDateRange(LedgerAggregator.windowStart(LedgerAggregator.Period.WEEK, today),
+                        LedgerAggregator.windowEnd(LedgerAggregator.Period.WEEK, today));
+                break;
+            case "This month":
+                tableModel.setDateRange(LedgerAggregator.windowStart(LedgerAggregator.Period.MONTH, today),
+                        LedgerAggregator.windowEnd(LedgerAggregator.Period.MONTH, today));
+                break;
+            case "This year":
+                tableModel.setDateRange(LedgerAggregator.windowStart(LedgerAggregator.Period.YEAR, today),
+                        LedgerAggregator.windowEnd(LedgerAggregator.Period.YEAR, today));
+                break;
+            case CUSTOM_RANGE:
+                // Either end may be left open
+                tableModel.setDateRange(rangeFromPicker.getValue(), rangeToPicker.getValue());
+                break;
+            default: // All dates
+                tableModel.setDateRange(null, null);
+                break;
+        }
     }
 
     private void addSampleData() {
         // Add sample data to match the screenshot
-        billingData.add(new BillingEntry("Living costs", "Nov.utilities bill", -200.00, LocalDate.of(2024, 12, 24), "14:29"));
-        billingData.add(new BillingEntry("Communication", "Dad phone bill", -200.00, LocalDate.of(2024, 12, 23), "14:29"));
-        billingData.add(new BillingEntry("Salary", "Nov.salary", 18800.00, LocalDate.of(2024, 12, 21), "14:29"));
-        billingData.add(new BillingEntry("Cosmetics", "-", -300.00, LocalDate.of(2024, 12, 13), "14:29"));
+        billingData.add(new BillingEntry("Living costs", "Nov.utilities bill", -200_00, LocalDate.of(2024, 12, 24), "14:29"));
+        billingData.add(new BillingEntry("Communication", "Dad phone bill", -200_00, LocalDate.of(2024, 12, 23), "14:29"));
+        billingData.add(new BillingEntry("Salary", "Nov.salary", 18800_00, LocalDate.of(2024, 12, 21), "14:29"));
+        billingData.add(new BillingEntry("Cosmetics", "-", -300_00, LocalDate.of(2024, 12, 13), "14:29"));
     }
 
     private void handleAddRecord() {
         try {
             String product = productField.getText().trim();
-            double price = Double.parseDouble(priceField.getText().trim());
+            long cents = Money.parse(priceField.getText());
             String category = getSelectedCategory();
             LocalDate date = timePicker.getValue();
 
@@ -148,7 +422,7 @@ public class BillingViewController {
                 return;
             }
 
-            billingData.add(new BillingEntry(category, product, price, date, "14:29"));
+            billingData.add(new BillingEntry(category, product, cents, date, "14:29"));
             clearInputFields();
         } catch (NumberFormatException e) {
             showAlert("Error", "Please enter a valid price");
@@ -156,70 +430,294 @@ public class BillingViewController {
     }
 
     private void handleFuzzySearch() {
-        String searchTerm = productField.getText().trim().toLowerCase();
+        String searchTerm = productField.getText().trim();
         if (searchTerm.isEmpty()) {
             showAlert("Search Error", "Please enter a search term");
             return;
         }
 
-        // Create a filtered list for the search results
-        ObservableList<BillingEntry> searchResults = FXCollections.observableArrayList();
+        // Repeated clicks collapse into one search; the table is updated when it completes
+        typedSearch.discard();
+        searchRequestedAt = System.nanoTime();
+        inquirySearch.request(searchIndex.searchLater(searchTerm));
+    }
 
-        // Perform fuzzy search on product and remark fields
-        for (BillingEntry entry : billingData) {
-            if (entry.productProperty().get().toLowerCase().contains(searchTerm) ||
-                entry.remarkProperty().get().toLowerCase().contains(searchTerm)) {
-                searchResults.add(entry);
-            }
+    private void showInquiryResult(LedgerSearchIndex.Result result) {
+        if (result.getMatchCount() == 0) {
+            showSearchResult(null);
+            UiMetrics.recordSince(UiMetrics.Action.SEARCH, searchRequestedAt);
+            showInfo("Search Results", "No matching records found");
+        } else {
+            showSearchResult(result);
+            showInfo("Search Results", result.getMatchCount() + " matching records found");
         }
+    }
 
-        // Update the table with search results
-        if (searchResults.isEmpty()) {
-            showInfo("Search Results", "No matching records found");
+    /**
+     * Filter the table by a structured query, in the background. An empty query shows the
+     * whole ledger right away; a malformed one keeps the current rows and marks the field.
+     */
+    private void applySearch(String term) {
+        inquirySearch.discard();
+        LedgerQuery query;
+        try {
+            query = LedgerQuery.parse(term);
+            showQueryError(searchField, null);
+        } catch (IllegalArgumentException e) {
+            typedSearch.discard();
+            showQueryError(searchField, e.getMessage());
+            return;
+        }
+        if (query.isEmpty()) {
+            typedSearch.discard();
+            showSearchResult(null);
         } else {
-            billingTable.setItems(searchResults);
-            showInfo("Search Results", searchResults.size() + " matching records found");
+            searchRequestedAt = System.nanoTime();
+            typedSearch.request(query.evaluateLater(columns, searchIndex));
+        }
+    }
+
+    /**
+     * Mark a search field whose query does not parse, with the reason as its tooltip (null
+     * clears the mark).
+     */
+    static void showQueryError(TextField field, String message) {
+        if (message == null) {
+            field.getStyleClass().remove("search-error");
+            field.setTooltip(null);
+        } else {
+            if (!field.getStyleClass().contains("search-error")) {
+                field.getStyleClass().add("search-error");
+            }
+            field.setTooltip(new Tooltip(message));
+        }
+    }
+
+    /**
+     * Mark a search field whose query failed to run, keeping the rows of the last search that
+     * did, like a query that does not parse.
+     */
+    static void showSearchFailure(TextField field, Throwable error) {
+        if (error != null) {
+            error.printStackTrace();
+        }
+        showQueryError(field, "Search failed: " + (error != null ? error.getMessage() : "unknown error"));
+    }
+
+    private void showSearchResult(RowFilter result) {
+        activeSearch = result;
+        tableModel.setFilter(activeSearch);
+        if (activeSearch != null) {
+            // From the request (including the typing pause) to the filtered table
+            UiMetrics.recordSince(UiMetrics.Action.SEARCH, searchRequestedAt);
         }
     }
 
     private void handleAddCsv() {
-        // This would handle importing data from a CSV file
-        showInfo("CSV Import", "CSV import functionality would be implemented here.");
+        // While an import is running the button acts as a cancel button
+        if (csvImporter != null) {
+            csvImporter.cancel();
+            return;
+        }
+        if (exporter != null) {
+            showInfo("CSV Import", "Please wait for the export to finish");
+            return;
+        }
+
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import CSV");
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV files", "*.csv"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = chooser.showOpenDialog(addCsvButton.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        CsvImporter importer = new CsvImporter(file.toPath(), getSelectedCategory(), classifier, categories,
+                Ledger.getCurrent().getFingerprints(), Ledger.getCurrent().getEntries()::addSegment);
+        csvImporter = importer;
+
+        importProgressBar.progressProperty().bind(importer.progressProperty());
+        importStatusLabel.textProperty().bind(importer.messageProperty());
+        setImportRunning(true);
+
+        importer.setOnSucceeded(event -> {
+            UiMetrics.record(UiMetrics.Action.IMPORT, importer.getValue().getElapsedNanos());
+            finishImport();
+            showImportReport(importer);
+        });
+        importer.setOnCancelled(event -> {
+            finishImport();
+            showInfo("CSV Import", "Import cancelled");
+        });
+        importer.setOnFailed(event -> {
+            finishImport();
+            Throwable error = importer.getException();
+            showAlert("CSV Import", "Import failed: " + (error != null ? error.getMessage() : "unknown error"));
+        });
+
+        TaskScheduler.submit(importer);
+    }
+
+    /**
+     * Export what the table shows (its date range and search) to a CSV or columnar file in the
+     * background, with progress in the header like an import.
+     */
+    private void handleExport() {
+        // While an export is running the button acts as a cancel button
+        if (exporter != null) {
+            exporter.cancel();
+            return;
+        }
+        if (csvImporter != null) {
+            showInfo("Export", "Please wait for the import to finish");
+            return;
+        }
+
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Export");
+        chooser.setInitialFileName("ledger-" + LocalDate.now() + ".csv");
+        for (LedgerExporter.Format format : LedgerExporter.Format.values()) {
+            chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter(format.getDescription(), format.getPattern()));
+        }
+        File file = chooser.showSaveDialog(exportButton.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        String pattern = LedgerExporter.Format.COLUMNAR.getPattern();
+        LedgerExporter.Format format = file.getName().endsWith(pattern.substring(1))
+                || (chooser.getSelectedExtensionFilter() != null
+                    && chooser.getSelectedExtensionFilter().getExtensions().contains(pattern))
+                ? LedgerExporter.Format.COLUMNAR : LedgerExporter.Format.CSV;
+
+        LedgerExporter export = new LedgerExporter(columns, file.toPath(), format);
+        export.setDateRange(tableModel.getRangeFrom(), tableModel.getRangeTo());
+        export.setFilter(activeSearch);
+        exporter = export;
+
+        importProgressBar.progressProperty().bind(export.progressProperty());
+        importStatusLabel.textProperty().bind(export.messageProperty());
+        setExportRunning(true);
+
+        export.setOnSucceeded(event -> {
+            LedgerExporter.ExportReport report = export.getValue();
+            finishExport();
+            showInfo("Export", String.format("Exported %,d records to %s in %.1f s (%,.0f rows/s, %.1f MB).",
+                    report.getRowsExported(), report.getFile().getFileName(), report.getElapsedNanos() / 1e9,
+                    report.getRowsPerSecond(), report.getBytesWritten() / 1048576.0));
+        });
+        export.setOnCancelled(event -> {
+            finishExport();
+            showInfo("Export", "Export cancelled");
+        });
+        export.setOnFailed(event -> {
+            finishExport();
+            Throwable error = export.getException();
+            showAlert("Export", "Export failed: " + (error != null ? error.getMessage() : "unknown error"));
+        });
+
+        TaskScheduler.submit(export);
+    }
+
+    private void finishExport() {
+        exporter = null;
+        importProgressBar.progressProperty().unbind();
+        importStatusLabel.textProperty().unbind();
+        setExportRunning(false);
+    }
+
+    private void setExportRunning(boolean running) {
+        exportButton.setText(running ? "Cancel" : "Export");
+        addCsvButton.setDisable(running);
+        importProgressBar.setVisible(running);
+        importProgressBar.setManaged(running);
+        if (!running) {
+            importStatusLabel.setText("");
+        }
+    }
+
+    private void finishImport() {
+        csvImporter = null;
+        // The import may have brought new categories
+        showCategories();
+        importProgressBar.progressProperty().unbind();
+        importStatusLabel.textProperty().unbind();
+        setImportRunning(false);
+    }
+
+    private void setImportRunning(boolean running) {
+        addCsvButton.setText(running ? "Cancel" : "Add CSV");
+        importProgressBar.setVisible(running);
+        importProgressBar.setManaged(running);
+        if (!running) {
+            importStatusLabel.setText("");
+        }
+    }
+
+    private void showImportReport(CsvImporter importer) {
+        CsvImporter.ImportReport report = importer.getValue();
+        int duplicates = report.getDuplicateCount();
+        long replaced = report.getCategoriesReplaced();
+        Alert alert = new Alert(report.getErrorCount() > 0 || duplicates > 0 || replaced > 0
+                ? Alert.AlertType.WARNING : Alert.AlertType.INFORMATION);
+        alert.setTitle("CSV Import");
+        alert.setHeaderText(null);
+        alert.setContentText(String.format("Imported %,d records in %.1f s (%,.0f rows/s).%s%s%s",
+                report.getRowsImported(), report.getElapsedNanos() / 1e9, report.getRowsPerSecond(),
+                duplicates > 0 ? String.format("%n%,d rows that match entries already in the ledger were held back.", duplicates) : "",
+                report.getErrorCount() > 0 ? String.format("%n%,d malformed rows were skipped.", report.getErrorCount()) : "",
+                replaced > 0 ? String.format("%n%,d rows got the default category: the ledger has no room for more than %d categories.",
+                        replaced, CategoryRegistry.MAX_CATEGORIES) : ""));
+
+        // Held back and malformed rows go into the expandable section so a big report does not blow up the dialog
+        if (report.getErrorCount() > 0 || duplicates > 0) {
+            String details = (duplicates > 0 ? "Suspected duplicates:\n" + report.formatDuplicates() + "\n" : "")
+                    + (report.getErrorCount() > 0 ? "Malformed rows:\n" + report.formatErrors() : "");
+            TextArea errors = new TextArea(details);
+            errors.setEditable(false);
+            errors.setWrapText(false);
+            errors.setPrefRowCount(12);
+            alert.getDialogPane().setExpandableContent(errors);
+        }
+        ButtonType importAnyway = new ButtonType("Import duplicates too", ButtonBar.ButtonData.LEFT);
+        if (duplicates > 0) {
+            alert.getButtonTypes().add(importAnyway);
+        }
+        if (alert.showAndWait().orElse(null) == importAnyway) {
+            importer.addDuplicates();
+        }
     }
 
     // Helper method to get the selected category from radio buttons
     private String getSelectedCategory() {
-        RadioButton selectedRadio = (RadioButton) categoryGroup.getSelectedToggle();
-        if (selectedRadio != null) {
-            return (String) selectedRadio.getUserData();
-        }
-        return "Living costs"; // Default
+        Toggle selected = categoryGroup.getSelectedToggle();
+        return selected != null ? (String) selected.getUserData() : categories.name(0);
     }
 
-    // Helper method to get the icon path for a category
-    private String getCategoryIconPath(String category) {
-        switch (category) {
-            case "Living costs":
-                return "/images/living_costs.png";
-            case "Communication":
-                return "/images/communication.png";
-            case "Salary":
-                return "/images/salary.png";
-            case "Cosmetics":
-                return "/images/cosmetics.png";
-            default:
-                return null;
+    private void suggestCategory(String product) {
+        if (categoryChosen || product.trim().isEmpty()) {
+            return;
+        }
+        String category = classifier.predict(product.trim(), null);
+        if (category != null) {
+            selectCategory(category);
         }
     }
 
     private void clearInputFields() {
         productField.clear();
         priceField.clear();
-        livingCostsRadio.setSelected(true); // Reset to default category
+        selectCategory(categories.name(0)); // Reset to default category
+        categoryChosen = false;
         timePicker.setValue(LocalDate.now());
 
         // Reset table to show all data after a search
-        billingTable.setItems(billingData);
+        if (!searchField.getText().isEmpty()) {
+            searchField.clear();
+        } else if (activeSearch != null) {
+            applySearch("");
+        }
     }
 
     private void showAlert(String title, String content) {
@@ -243,58 +741,165 @@ public class BillingViewController {
      */
     private void navigateToSummary() {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/SummaryView.fxml"));
-            Parent summaryView = loader.load();
-
-            // Get the controller and set the username
-            SummaryViewController controller = loader.getController();
-            controller.setUsername(usernameLabel.getText());
-
-            // Switch to the summary view
-            Scene scene = new Scene(summaryView, 1000, 600); // Use consistent dimensions
-            Stage stage = (Stage) summaryButton.getScene().getWindow();
-            stage.setScene(scene);
-            stage.show();
-        } catch (IOException e) {
+            ViewManager.getInstance().show(ViewManager.View.SUMMARY);
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
             showAlert("Error", "Error loading summary view");
         }
     }
 
-    public void setUsername(String username) {
-        usernameLabel.setText(username);
-    }
-
+    /**
+     * One ledger row. Entries read from the ledger are views over {@link LedgerColumns};
+     * entries built with the public constructors are detached values waiting to be added.
+     * JavaFX properties are only created when a cell asks for them.
+     */
     public static class BillingEntry {
-        private final StringProperty category;
-        private final StringProperty product;
-        private final DoubleProperty price;
-        private final ObjectProperty<LocalDate> time;
-        private final StringProperty timeHour;
-        private final StringProperty formattedTime;
-        private final StringProperty remark;
-
-        public BillingEntry(String category, String product, double price, LocalDate time, String timeHour) {
-            this.category = new SimpleStringProperty(category);
-            this.product = new SimpleStringProperty(product);
-            this.price = new SimpleDoubleProperty(price);
-            this.time = new SimpleObjectProperty<>(time);
-            this.timeHour = new SimpleStringProperty(timeHour);
-            this.formattedTime = new SimpleStringProperty(
-                time.getYear() + "." +
-                String.format("%02d", time.getMonthValue()) + "." +
-                String.format("%02d", time.getDayOfMonth()) + " " +
-                timeHour
-            );
-            this.remark = new SimpleStringProperty(product); // Using product as remark for now
-        }
-
-        public StringProperty categoryProperty() { return category; }
-        public StringProperty productProperty() { return product; }
-        public DoubleProperty priceProperty() { return price; }
-        public ObjectProperty<LocalDate> timeProperty() { return time; }
-        public StringProperty timeHourProperty() { return timeHour; }
-        public StringProperty formattedTimeProperty() { return formattedTime; }
-        public StringProperty remarkProperty() { return remark; }
+        // Set for views over a stored row
+        private final LedgerColumns columns;
+        private final int row;
+
+        // Set for detached entries
+        private final String category;
+        private final String product;
+        private final long cents;
+        private final LocalDate date;
+        private final String timeHour;
+        private final String remark;
+
+        private StringProperty categoryProperty;
+        private StringProperty productProperty;
+        private LongProperty centsProperty;
+        private ObjectProperty<LocalDate> timeProperty;
+        private StringProperty timeHourProperty;
+        private StringProperty formattedTimeProperty;
+        private StringProperty remarkProperty;
+
+        /**
+         * @param cents the amount in cents, negative for an expense (see {@link Money})
+         */
+        public BillingEntry(String category, String product, long cents, LocalDate time, String timeHour) {
+            this(category, product, cents, time, timeHour, product); // Using product as remark for now
+        }
+
+        public BillingEntry(String category, String product, long cents, LocalDate time, String timeHour, String remark) {
+            this.columns = null;
+            this.row = -1;
+            this.category = category;
+            this.product = product;
+            this.cents = cents;
+            this.date = time;
+            this.timeHour = timeHour;
+            this.remark = remark;
+        }
+
+        BillingEntry(LedgerColumns columns, int row) {
+            this.columns = columns;
+            this.row = row;
+            this.category = null;
+            this.product = null;
+            this.cents = 0;
+            this.date = null;
+            this.timeHour = null;
+            this.remark = null;
+        }
+
+        /**
+         * Row index in the ledger, or -1 for a detached entry.
+         */
+        public int getRow() { return row; }
+
+        public String getCategory() { return columns != null ? columns.category(row) : category; }
+        public String getProduct() { return columns != null ? columns.product(row) : product; }
+        public long getCents() { return columns != null ? columns.cents(row) : cents; }
+        public LocalDate getDate() { return columns != null ? columns.date(row) : date; }
+        public String getTimeHour() { return columns != null ? columns.timeHour(row) : timeHour; }
+        public String getRemark() { return columns != null ? columns.remark(row) : remark; }
+
+        public String getFormattedTime() {
+            if (columns != null) {
+                return CellText.time(columns.epochDay(row), columns.minuteOfDay(row));
+            }
+            int minuteOfDay = LedgerColumns.parseMinutes(timeHour);
+            if (minuteOfDay < 0 && timeHour != null && !timeHour.isEmpty()) {
+                return CellText.time((int) date.toEpochDay(), timeHour);
+            }
+            return CellText.time((int) date.toEpochDay(), minuteOfDay);
+        }
+
+        /**
+         * The amount as the price column shows it, e.g. {@code -¥200.00}.
+         */
+        public String getFormattedPrice() {
+            return CellText.price(getCents());
+        }
+
+        public StringProperty categoryProperty() {
+            if (categoryProperty == null) {
+                categoryProperty = new SimpleStringProperty(getCategory());
+            }
+            return categoryProperty;
+        }
+
+        public StringProperty productProperty() {
+            if (productProperty == null) {
+                productProperty = new SimpleStringProperty(getProduct());
+            }
+            return productProperty;
+        }
+
+        /**
+         * The amount in cents.
+         */
+        public LongProperty centsProperty() {
+            if (centsProperty == null) {
+                centsProperty = new SimpleLongProperty(getCents());
+            }
+            return centsProperty;
+        }
+
+        public ObjectProperty<LocalDate> timeProperty() {
+            if (timeProperty == null) {
+                timeProperty = new SimpleObjectProperty<>(getDate());
+            }
+            return timeProperty;
+        }
+
+        public StringProperty timeHourProperty() {
+            if (timeHourProperty == null) {
+                timeHourProperty = new SimpleStringProperty(getTimeHour());
+            }
+            return timeHourProperty;
+        }
+
+        public StringProperty formattedTimeProperty() {
+            if (formattedTimeProperty == null) {
+                formattedTimeProperty = new SimpleStringProperty(getFormattedTime());
+            }
+            return formattedTimeProperty;
+        }
+
+        public StringProperty remarkProperty() {
+            if (remarkProperty == null) {
+                remarkProperty = new SimpleStringProperty(getRemark());
+            }
+            return remarkProperty;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BillingEntry) || columns == null) {
+                return false;
+            }
+            BillingEntry other = (BillingEntry) o;
+            return columns == other.columns && row == other.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return columns != null ? row : System.identityHashCode(this);
+        }
     }
-}
\ No newline at end of file
+}
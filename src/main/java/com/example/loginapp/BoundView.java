@@ -0,0 +1,15 @@
+package com.example.loginapp;
+
+/**
+ * A view controller that attaches to application state: the current ledger, the session and the
+ * scheduler's busy state.
+ *
+ * {@link ViewManager} may load a view, and so run its controller's {@code initialize()}, on a
+ * background thread. That state belongs to the FX thread, so such a controller only builds its
+ * nodes in {@code initialize()} and attaches in {@link #bind()}, which the view manager calls
+ * once on the FX thread before the view is first shown.
+ */
+interface BoundView {
+
+    void bind();
+}
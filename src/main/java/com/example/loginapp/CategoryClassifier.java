@@ -0,0 +1,262 @@
+package com.example.loginapp;
+
+import javafx.collections.ListChangeListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Guesses the category of an entry from its product and remark text with a naive Bayes model
+ * over the words of the ledger's own entries. Everything is local; nothing leaves the machine.
+ *
+ * The model is trained on the whole ledger when it is opened and then on every added row, so it
+ * keeps learning from what the user enters and imports. Product and remark texts are
+ * dictionary-encoded in the {@link LedgerColumns}, so each distinct text is tokenized once no
+ * matter how many rows use it. Predictions use an immutable {@link Model} snapshot that is
+ * rebuilt only when the counts have changed, can be shared by any number of threads, and
+ * caches its answer per distinct text (bank statements repeat the same merchants all the time).
+ */
+public class CategoryClassifier {
+
+    // Distinct texts whose prediction a model remembers before it starts over
+    private static final int MAX_CACHED_PREDICTIONS = 1 << 16;
+    private static final int[] NO_TOKENS = new int[0];
+
+    private final LedgerColumns columns;
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    // Token occurrences per category code and token id
+    private int[][] tokenCounts = new int[0][];
+    private long[] tokenTotals = new long[0];
+    private long[] documents = new long[0];
+    private long totalDocuments;
+    // Token ids of each dictionary text of the columns, filled in on first use
+    private int[][] textTokens = new int[0][];
+
+    // Snapshot of the counts above, or null once they have changed
+    private Model model;
+
+    /**
+     * @param loadedRows rows that came from disk; later additions are learned as they arrive
+     */
+    CategoryClassifier(LedgerRowList entries, int loadedRows) {
+        columns = entries.getColumns();
+        train(0, loadedRows);
+        entries.addListener((ListChangeListener<BillingViewController.BillingEntry>) change -> {
+            while (change.next()) {
+                int from = entries.rowAt(change.getFrom());
+                // Older history being revealed was learned when the ledger was opened
+                if (change.wasAdded() && from >= loadedRows) {
+                    train(from, entries.rowAt(change.getTo()));
+                }
+            }
+        });
+    }
+
+    private synchronized void train(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        int categories = columns.categoryCount();
+        if (categories > documents.length) {
+            tokenCounts = Arrays.copyOf(tokenCounts, categories);
+            for (int c = 0; c < categories; c++) {
+                if (tokenCounts[c] == null) {
+                    tokenCounts[c] = new int[Math.max(16, tokenIds.size())];
+                }
+            }
+            tokenTotals = Arrays.copyOf(tokenTotals, categories);
+            documents = Arrays.copyOf(documents, categories);
+        }
+        if (columns.textCount() > textTokens.length) {
+            textTokens = Arrays.copyOf(textTokens, columns.textCount());
+        }
+
+        for (int row = from; row < to; row++) {
+            int category = columns.categoryCode(row);
+            int product = columns.productId(row);
+            int remark = columns.remarkId(row);
+            count(category, tokensOf(product));
+            if (remark != product) {
+                count(category, tokensOf(remark));
+            }
+            documents[category]++;
+            totalDocuments++;
+        }
+        model = null;
+    }
+
+    private int[] tokensOf(int textId) {
+        int[] tokens = textTokens[textId];
+        if (tokens == null) {
+            List<String> words = tokenize(columns.text(textId));
+            tokens = words.isEmpty() ? NO_TOKENS : new int[words.size()];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = tokenIds.computeIfAbsent(words.get(i), word -> tokenIds.size());
+            }
+            textTokens[textId] = tokens;
+        }
+        return tokens;
+    }
+
+    private void count(int category, int[] tokens) {
+        for (int token : tokens) {
+            int[] counts = tokenCounts[category];
+            if (token >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(token + 1, counts.length * 2));
+                tokenCounts[category] = counts;
+            }
+            counts[token]++;
+            tokenTotals[category]++;
+        }
+    }
+
+    /**
+     * The current model. Cheap when nothing was learned since the last call.
+     */
+    public synchronized Model model() {
+        if (model == null) {
+            model = new Model(this);
+        }
+        return model;
+    }
+
+    /**
+     * Best guess for an entry's category, or null if none of its words have been seen before.
+     */
+    public String predict(String product, String remark) {
+        return model().predict(product, remark);
+    }
+
+    /**
+     * Split text into lower-case words; runs of CJK characters become overlapping character
+     * pairs, since Chinese merchant names have no spaces. Digits are dropped (dates, order
+     * numbers and amounts say nothing about the category).
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int cjkStart = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean cjk = Character.isIdeographic(c);
+            if (Character.isLetter(c) && !cjk) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                if (word.length() > 1) {
+                    tokens.add(word.toString());
+                }
+                word.setLength(0);
+            }
+
+            if (cjk && cjkStart < 0) {
+                cjkStart = i;
+            } else if (!cjk && cjkStart >= 0) {
+                if (i - cjkStart == 1) {
+                    tokens.add(text.substring(cjkStart, i));
+                }
+                for (int j = cjkStart; j + 2 <= i; j++) {
+                    tokens.add(text.substring(j, j + 2));
+                }
+                cjkStart = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * An immutable snapshot of the classifier: log probabilities precomputed per token, so a
+     * prediction is a few table lookups per word. Safe to use from any thread.
+     */
+    public static final class Model {
+        private final String[] categories;
+        private final Map<String, Integer> tokenIds;
+        // log P(token | category), indexed [token * categories + category]
+        private final float[] logLikelihoods;
+        private final float[] logPriors;
+        private final Map<String, String> predictions = new ConcurrentHashMap<>();
+
+        private Model(CategoryClassifier classifier) {
+            int count = classifier.documents.length;
+            categories = new String[count];
+            for (int c = 0; c < count; c++) {
+                categories[c] = classifier.columns.categoryName(c);
+            }
+            tokenIds = new HashMap<>(classifier.tokenIds);
+            int vocabulary = tokenIds.size();
+
+            // Laplace smoothing, so unseen pairs are unlikely rather than impossible
+            logPriors = new float[count];
+            logLikelihoods = new float[vocabulary * count];
+            for (int c = 0; c < count; c++) {
+                logPriors[c] = (float) Math.log((classifier.documents[c] + 1.0) / (classifier.totalDocuments + count));
+                double denominator = Math.log(classifier.tokenTotals[c] + vocabulary);
+                int[] counts = classifier.tokenCounts[c];
+                for (int token = 0; token < vocabulary; token++) {
+                    int seen = token < counts.length ? counts[token] : 0;
+                    logLikelihoods[token * count + c] = (float) (Math.log(seen + 1.0) - denominator);
+                }
+            }
+        }
+
+        /**
+         * Best guess for an entry's category, or null if none of its words are known.
+         */
+        public String predict(String product, String remark) {
+            String key = remark == null || remark.equals(product) ? product : product + '\u0001' + remark;
+            String cached = predictions.get(key);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            }
+            String category = classify(product, remark == null || remark.equals(product) ? null : remark);
+            if (predictions.size() >= MAX_CACHED_PREDICTIONS) {
+                predictions.clear();
+            }
+            predictions.put(key, category != null ? category : "");
+            return category;
+        }
+
+        private String classify(String product, String remark) {
+            int count = categories.length;
+            if (count == 0) {
+                return null;
+            }
+            double[] scores = new double[count];
+            for (int c = 0; c < count; c++) {
+                scores[c] = logPriors[c];
+            }
+            boolean known = score(product, scores);
+            if (remark != null) {
+                known |= score(remark, scores);
+            }
+            if (!known) {
+                return null;
+            }
+            int best = 0;
+            for (int c = 1; c < count; c++) {
+                if (scores[c] > scores[best]) {
+                    best = c;
+                }
+            }
+            return categories[best];
+        }
+
+        private boolean score(String text, double[] scores) {
+            boolean known = false;
+            for (String word : tokenize(text)) {
+                Integer token = tokenIds.get(word);
+                if (token != null) {
+                    known = true;
+                    int base = token * scores.length;
+                    for (int c = 0; c < scores.length; c++) {
+                        scores[c] += logLikelihoods[base + c];
+                    }
+                }
+            }
+            return known;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.loginapp;
+
+import javafx.scene.paint.Color;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The categories of one ledger. Each category has a dense int id, which is what the ledger's
+ * rows store (as the category code of {@link LedgerColumns}), and a color and an optional icon
+ * that the views show it with.
+ *
+ * A ledger starts with the built-in categories. Any other name is registered the first time a
+ * row or the user uses it, with a color of its own and no icon, so new categories need no code
+ * changes. Ids are never reused or removed, since stored rows refer to them, and are kept in
+ * {@code categories.bin} next to the ledger's store.
+ *
+ * Lookups are lock-free and safe on any thread; registering is serialized. The categories are
+ * published copy-on-write, so a list taken with {@link #names()} covers every id handed out
+ * before it was taken.
+ */
+public final class CategoryRegistry {
+
+    // Category codes are stored in a byte per row
+    public static final int MAX_CATEGORIES = 256;
+
+    private static final int FILE_MAGIC = 0x50414943; // "PAIC"
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_NAME = "categories.bin";
+    private static final String NO_ICON = "";
+
+    private static final List<Category> BUILT_IN = List.of(
+            new Category(0, "Living costs", "#A9A9A9", "/images/living_costs.png"),
+            new Category(1, "Communication", "#70C1FF", "/images/communication.png"),
+            new Category(2, "Salary", "#FF6B6B", "/images/salary.png"),
+            new Category(3, "Cosmetics", "#FFE066", "/images/cosmetics.png"));
+
+    private final Path file;
+    private final Map<String, Category> byName = new ConcurrentHashMap<>();
+    // Indexed by id; replaced, never modified, when a category is added
+    private volatile Category[] byId = new Category[0];
+    private volatile List<String> names = List.of();
+
+    // Saves are written in the background in order; older snapshots that lose the race are dropped
+    private long savesRequested;
+    private long savedSequence;
+
+    /**
+     * The built-in categories, kept in memory only.
+     */
+    public CategoryRegistry() {
+        this(null);
+    }
+
+    /**
+     * @param directory the ledger directory to load the categories from and save them to, or
+     *                  null to keep them in memory only
+     */
+    CategoryRegistry(Path directory) {
+        this.file = directory != null ? directory.resolve(FILE_NAME) : null;
+        if (file != null) {
+            try {
+                load();
+            } catch (IOException e) {
+                // Fall back to the built-in categories; names found in the rows are added again
+                e.printStackTrace();
+            }
+        }
+        for (Category category : BUILT_IN) {
+            if (!byName.containsKey(category.name)) {
+                add(category.name, category.color, category.icon);
+            }
+        }
+    }
+
+    /**
+     * The id of a category, registering it (with a generated color and no icon) if it is new.
+     *
+     * @throws IllegalStateException if the ledger already has {@link #MAX_CATEGORIES} categories
+     */
+    public int idOf(String name) {
+        Category category = byName.get(name);
+        return category != null ? category.id : register(name, null, null).id;
+    }
+
+    /**
+     * Add a category, or return the existing one of that name unchanged.
+     *
+     * @param color a CSS color such as "#70C1FF", or null to generate one
+     * @param icon  a classpath resource or file path of an image, or null for none
+     */
+    public synchronized Category register(String name, String color, String icon) {
+        Category existing = byName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        Category category = add(name, color != null ? color : generatedColor(byId.length), icon);
+        save();
+        return category;
+    }
+
+    private synchronized Category add(String name, String color, String icon) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("A category needs a name");
+        }
+        Category[] categories = byId;
+        if (categories.length == MAX_CATEGORIES) {
+            throw new IllegalStateException("Too many categories");
+        }
+        Category category = new Category(categories.length, name, color, icon);
+        categories = Arrays.copyOf(categories, categories.length + 1);
+        categories[category.id] = category;
+        String[] list = Arrays.copyOf(names.toArray(new String[0]), categories.length);
+        list[category.id] = name;
+        // The array before the name, so whoever finds the name can also get it by id
+        byId = categories;
+        names = Collections.unmodifiableList(Arrays.asList(list));
+        byName.put(name, category);
+        return category;
+    }
+
+    /**
+     * Spread generated colors around the hue circle by the golden angle, so consecutive ids
+     * stay apart; saturation and brightness are close to the built-in palette.
+     */
+    private static String generatedColor(int id) {
+        Color color = Color.hsb((id * 137.508) % 360, 0.55, 0.95);
+        return String.format("#%02X%02X%02X", Math.round(color.getRed() * 255), Math.round(color.getGreen() * 255),
+                Math.round(color.getBlue() * 255));
+    }
+
+    /**
+     * The category with the given name, or null if there is none.
+     */
+    public Category find(String name) {
+        return name != null ? byName.get(name) : null;
+    }
+
+    /**
+     * The id of the category with the given name, or -1 if there is none. Never registers.
+     */
+    public int indexOf(String name) {
+        Category category = find(name);
+        return category != null ? category.id : -1;
+    }
+
+    public Category get(int id) {
+        return byId[id];
+    }
+
+    public String name(int id) {
+        return byId[id].name;
+    }
+
+    public int size() {
+        return byId.length;
+    }
+
+    /**
+     * All categories in id order.
+     */
+    public List<Category> getAll() {
+        return Collections.unmodifiableList(Arrays.asList(byId));
+    }
+
+    /**
+     * Names of the categories registered so far, indexed by id; later additions do not show up
+     * in the list.
+     */
+    public List<String> names() {
+        return names;
+    }
+
+    long estimatedBytes() {
+        // Category, name string and map node per category
+        return byId.length * 160L;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unrecognized categories file: " + file);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                String color = in.readUTF();
+                String icon = in.readUTF();
+                add(name, color, icon.equals(NO_ICON) ? null : icon);
+            }
+        } catch (NoSuchFileException e) {
+            // A new ledger, or one from before categories were saved
+        }
+    }
+
+    private synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        byte[] snapshot = snapshot();
+        long sequence = ++savesRequested;
+        TaskScheduler.executor().execute(() -> {
+            try {
+                write(sequence, snapshot);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private byte[] snapshot() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            Category[] categories = byId;
+            out.writeInt(categories.length);
+            for (Category category : categories) {
+                out.writeUTF(category.name);
+                out.writeUTF(category.color);
+                out.writeUTF(category.icon != null ? category.icon : NO_ICON);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writers are serialized; the file is replaced atomically so a crash never leaves it half written
+    private void write(long sequence, byte[] snapshot) throws IOException {
+        synchronized (file) {
+            if (sequence < savedSequence) {
+                return;
+            }
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            savedSequence = sequence;
+        }
+    }
+
+    /**
+     * One category: its id in the ledger's rows, display name, CSS color and icon.
+     */
+    public static final class Category {
+        private final int id;
+        private final String name;
+        private final String color;
+        private final String icon;
+
+        Category(int id, String name, String color, String icon) {
+            this.id = id;
+            this.name = name;
+            this.color = color;
+            this.icon = icon;
+        }
+
+        public int getId() { return id; }
+        public String getName() { return name; }
+        public String getColor() { return color; }
+
+        /**
+         * Classpath resource or file path of the icon, or null if the category has none.
+         */
+        public String getIcon() { return icon; }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
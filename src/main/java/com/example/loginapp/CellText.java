@@ -0,0 +1,82 @@
+package com.example.loginapp;
+
+import java.time.LocalDate;
+
+/**
+ * Display strings of the billing table cells, formatted once per distinct value.
+ *
+ * A ledger has far fewer distinct amounts and timestamps than rows, and scrolling shows the
+ * same ones over and over, so each string is kept in a small direct-mapped cache keyed by the
+ * primitive value: a hit costs a hash and a comparison and allocates nothing. Slots are
+ * immutable and replaced whole, so the caches may be read from any thread.
+ */
+final class CellText {
+
+    // Per cache; a power of two
+    private static final int SLOTS = 4096;
+    private static final int SHIFT = Integer.numberOfLeadingZeros(SLOTS - 1);
+
+    private static final Slot[] prices = new Slot[SLOTS];
+    private static final Slot[] times = new Slot[SLOTS];
+
+    private CellText() {
+    }
+
+    /**
+     * The signed amount, e.g. {@code -¥200.00}.
+     */
+    static String price(long cents) {
+        int index = index(cents);
+        Slot slot = prices[index];
+        if (slot == null || slot.key != cents) {
+            slot = new Slot(cents, Money.formatSigned(cents));
+            prices[index] = slot;
+        }
+        return slot.text;
+    }
+
+    /**
+     * Date and time as {@code yyyy.MM.dd HH:mm}; the time is left out if the minute is negative.
+     */
+    static String time(int epochDay, int minuteOfDay) {
+        long key = (long) epochDay << 16 | (minuteOfDay & 0xFFFF);
+        int index = index(key);
+        Slot slot = times[index];
+        if (slot == null || slot.key != key) {
+            slot = new Slot(key, date(epochDay) + LedgerColumns.formatMinutes(minuteOfDay));
+            times[index] = slot;
+        }
+        return slot.text;
+    }
+
+    /**
+     * The date followed by free-form time text that has no minute-of-day form.
+     */
+    static String time(int epochDay, String timeHour) {
+        return date(epochDay) + timeHour;
+    }
+
+    private static String date(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        int month = date.getMonthValue();
+        int day = date.getDayOfMonth();
+        return new StringBuilder(17).append(date.getYear()).append('.')
+                .append((char) ('0' + month / 10)).append((char) ('0' + month % 10)).append('.')
+                .append((char) ('0' + day / 10)).append((char) ('0' + day % 10)).append(' ')
+                .toString();
+    }
+
+    private static int index(long key) {
+        return ((int) (key ^ (key >>> 32)) * 0x9E3779B9) >>> SHIFT;
+    }
+
+    private static final class Slot {
+        final long key;
+        final String text;
+
+        Slot(long key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.loginapp;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local user accounts with salted PBKDF2 password hashes, persisted to {@code accounts.bin} in the
+ * PurseAI home directory.
+ *
+ * Hashing is deliberately slow, so {@link #register} and {@link #authenticate} must not be called
+ * on the FX thread. The cost is the PBKDF2 iteration count, taken from the
+ * {@code purseai.pbkdf2.iterations} system property (see CredentialHashBenchmark for picking one).
+ * Each account records the cost it was hashed with; older hashes are upgraded on the next login.
+ *
+ * Every account owns its own ledger directory under the home directory.
+ */
+public class CredentialStore {
+
+    public static final int DEFAULT_ITERATIONS = 210_000;
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int FILE_MAGIC = 0x50414941; // "PAIA"
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_NAME = "accounts.bin";
+    // Accounts created before there were several users keep the original single ledger
+    private static final String LEGACY_LEDGER = "ledger";
+
+    private static CredentialStore instance;
+
+    private final Path file;
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    // Verified against when the user does not exist, so unknown names take as long as wrong passwords
+    private final Account dummy;
+
+    CredentialStore(Path file, int iterations) throws IOException {
+        this.file = file;
+        this.iterations = iterations;
+        load();
+        byte[] salt = newSalt();
+        this.dummy = new Account("", "", "", salt, iterations, hash(new char[0], salt, iterations));
+    }
+
+    /**
+     * The store in the PurseAI home directory, opened on first use. Opening hashes the demo account
+     * when the store is new, so call this off the FX thread too.
+     */
+    public static synchronized CredentialStore getInstance() {
+        if (instance == null) {
+            try {
+                instance = new CredentialStore(Ledger.homeDirectory().resolve(FILE_NAME), configuredIterations());
+                if (instance.accounts.isEmpty()) {
+                    // 测试账户
+                    instance.register("123", "123".toCharArray(), "test@example.com");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error opening the account store", e);
+            }
+        }
+        return instance;
+    }
+
+    static int configuredIterations() {
+        return Integer.getInteger("purseai.pbkdf2.iterations", DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Create an account.
+     *
+     * @return the new account, or null if the name is already taken
+     */
+    public Account register(String username, char[] password, String email) throws IOException {
+        byte[] salt = newSalt();
+        byte[] hash = hash(password, salt, iterations);
+        String ledger = accounts.isEmpty() && !Files.exists(file) ? LEGACY_LEDGER : ledgerDirectoryFor(username);
+        Account account = new Account(username, email, ledger, salt, iterations, hash);
+        if (accounts.putIfAbsent(username, account) != null) {
+            return null;
+        }
+        save();
+        return account;
+    }
+
+    /**
+     * Check a password.
+     *
+     * @return the account, or null if the name is unknown or the password is wrong
+     */
+    public Account authenticate(String username, char[] password) throws IOException {
+        Account account = accounts.get(username);
+        Account checked = account != null ? account : dummy;
+        byte[] hash = hash(password, checked.salt, checked.iterations);
+        if (account == null || !MessageDigest.isEqual(hash, account.hash)) {
+            return null;
+        }
+        if (account.iterations != iterations) {
+            byte[] salt = newSalt();
+            Account upgraded = new Account(account.username, account.email, account.ledger, salt, iterations,
+                    hash(password, salt, iterations));
+            if (accounts.replace(username, account, upgraded)) {
+                save();
+                account = upgraded;
+            }
+        }
+        return account;
+    }
+
+    public boolean exists(String username) {
+        return accounts.containsKey(username);
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * PBKDF2-HMAC-SHA256 of the password.
+     */
+    static byte[] hash(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // Every Java SE runtime ships this algorithm
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private byte[] newSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        return salt;
+    }
+
+    private String ledgerDirectoryFor(String username) {
+        // Names are phone numbers or e-mail addresses; keep the directory name portable
+        StringBuilder name = new StringBuilder("ledger-");
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            name.append(Character.isLetterOrDigit(c) && c < 128 ? c : '_');
+        }
+        name.append('-').append(Integer.toHexString(random.nextInt()));
+        return name.toString();
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not an account file: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String username = in.readUTF();
+                String email = in.readUTF();
+                String ledger = in.readUTF();
+                int accountIterations = in.readInt();
+                byte[] salt = new byte[in.readUnsignedByte()];
+                in.readFully(salt);
+                byte[] hash = new byte[in.readUnsignedByte()];
+                in.readFully(hash);
+                accounts.put(username, new Account(username, email, ledger, salt, accountIterations, hash));
+            }
+        } catch (NoSuchFileException e) {
+            // First start
+        }
+    }
+
+    // Writers are serialized; the file is replaced atomically so a crash never leaves it half written
+    private synchronized void save() throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        List<Account> snapshot = new ArrayList<>(accounts.values());
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(snapshot.size());
+            for (Account account : snapshot) {
+                out.writeUTF(account.username);
+                out.writeUTF(account.email);
+                out.writeUTF(account.ledger);
+                out.writeInt(account.iterations);
+                out.writeByte(account.salt.length);
+                out.write(account.salt);
+                out.writeByte(account.hash.length);
+                out.write(account.hash);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * A local user. Immutable; a password change or cost upgrade replaces it in the store.
+     */
+    public static final class Account {
+        private final String username;
+        private final String email;
+        private final String ledger;
+        private final byte[] salt;
+        private final int iterations;
+        private final byte[] hash;
+
+        Account(String username, String email, String ledger, byte[] salt, int iterations, byte[] hash) {
+            this.username = username;
+            this.email = email;
+            this.ledger = ledger;
+            this.salt = salt;
+            this.iterations = iterations;
+            this.hash = hash;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        /**
+         * Directory of this user's ledger
+         */
+        public Path getLedgerDirectory() {
+            return Ledger.homeDirectory().resolve(ledger);
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+    }
+}
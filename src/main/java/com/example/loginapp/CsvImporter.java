@@ -0,0 +1,539 @@
+package com.example.loginapp;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Streams a CSV bank statement into the ledger on a background thread.
+ *
+ * The file is read line by line through a buffered reader on top of a FileChannel, so only
+ * the current line and the pending batch are held in memory. Parsed entries are encoded off the
+ * FX thread into {@link LedgerColumns.Segment}s, which the sink appends in bulk on the FX
+ * thread, one published version of the ledger per batch; malformed rows are collected in the
+ * report instead of aborting the import.
+ *
+ * Columns are taken from the header row when one is present (date, time, category, product,
+ * price/amount, remark), otherwise the default order is date,time,category,product,price,remark.
+ *
+ * Rows without a category are classified by the ledger's {@link CategoryClassifier}: each
+ * batch is classified on the shared executor while the next one is parsed, with up to one batch
+ * per core in flight, and batches are still handed to the sink in file order. Rows the model
+ * knows nothing about get the default category. New categories are registered with the ledger
+ * on the FX thread as their batch is handed to the sink, so rows that never reach the ledger
+ * (a cancelled or failed import, held-back duplicates) leave none behind; once the ledger has
+ * as many categories as it can hold, rows of new ones get the default category and are counted
+ * in the report.
+ *
+ * Rows whose date, amount and product match an entry already in the ledger (see
+ * {@link LedgerFingerprints}) are held back as suspected duplicates, so re-importing an
+ * overlapping statement does not count the overlap twice. They are kept in a segment of their
+ * own, as compact as the imported rows, and listed in the report for the user to review and add
+ * anyway with {@link #addDuplicates}.
+ */
+public class CsvImporter extends Task<CsvImporter.ImportReport> {
+
+    private static final int BATCH_SIZE = 2000;
+    // Batches queued on the FX thread but not yet applied; keeps a slow UI from buffering the whole file
+    private static final int MAX_PENDING_BATCHES = 4;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int CLASSIFYING_BATCHES = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final int DATE = 0;
+    private static final int TIME = 1;
+    private static final int CATEGORY = 2;
+    private static final int PRODUCT = 3;
+    private static final int PRICE = 4;
+    private static final int REMARK = 5;
+
+    private final Path file;
+    private final String defaultCategory;
+    private final CategoryClassifier classifier;
+    private final CategoryRegistry categories;
+    private final LedgerFingerprints fingerprints;
+    private final Consumer<LedgerColumns.Segment> sink;
+    private final Semaphore pendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+    // Parsed batches being classified and encoded, oldest first
+    private final ArrayDeque<Future<LedgerColumns.Segment>> classifying = new ArrayDeque<>();
+    private CategoryClassifier.Model model;
+
+    private int[] columns = {0, 1, 2, 3, 4, 5};
+
+    /**
+     * @param file            CSV file to import
+     * @param defaultCategory category used for rows without a category the classifier can guess
+     * @param classifier      guesses categories for rows without one, or null to always use the default
+     * @param categories      the ledger's categories, which new ones are registered with as their
+     *                        batch is handed to the sink, or null to leave that to the sink
+     * @param fingerprints    entries already in the ledger, or null to import every row
+     * @param sink            receives each batch of parsed entries on the FX thread, e.g.
+     *                        {@link LedgerRowList#addSegment}
+     */
+    public CsvImporter(Path file, String defaultCategory, CategoryClassifier classifier, CategoryRegistry categories,
+                       LedgerFingerprints fingerprints, Consumer<LedgerColumns.Segment> sink) {
+        this.file = file;
+        this.defaultCategory = defaultCategory;
+        this.classifier = classifier;
+        this.categories = categories;
+        this.fingerprints = fingerprints;
+        this.sink = sink;
+    }
+
+    @Override
+    protected ImportReport call() throws Exception {
+        ImportReport report = new ImportReport(file);
+        long start = System.nanoTime();
+        // One snapshot for the whole import, learned from the entries that were there before it
+        model = classifier != null ? classifier.model() : null;
+        LedgerFingerprints.Matcher matcher = fingerprints != null ? fingerprints.newImport() : null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8), 1 << 16)) {
+            long totalBytes = Math.max(1, channel.size());
+            List<BillingViewController.BillingEntry> batch = new ArrayList<>(BATCH_SIZE);
+            List<String> fields = new ArrayList<>(8);
+            String line;
+            long lineNumber = 0;
+            boolean firstRow = true;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (isCancelled()) {
+                    break;
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (firstRow) {
+                    firstRow = false;
+                    line = stripBom(line);
+                    if (!splitLine(line, fields)) {
+                        report.addError(lineNumber, line, "Unterminated quoted field");
+                        continue;
+                    }
+                    if (readHeader(fields)) {
+                        continue;
+                    }
+                } else if (!splitLine(line, fields)) {
+                    report.addError(lineNumber, line, "Unterminated quoted field");
+                    continue;
+                }
+
+                try {
+                    BillingViewController.BillingEntry entry = parseRow(fields);
+                    if (matcher != null && matcher.claim(entry)) {
+                        // Ready to be added as they are if the user decides they are not duplicates
+                        report.duplicates.add(categoryOf(entry), entry.getProduct(), entry.getCents(), entry.getDate(),
+                                entry.getTimeHour(), entry.getRemark());
+                    } else {
+                        batch.add(entry);
+                    }
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    report.addError(lineNumber, line, e.getMessage());
+                }
+
+                if (batch.size() >= BATCH_SIZE) {
+                    classify(batch, report, CLASSIFYING_BATCHES);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    updateStatus(report, channel.position(), totalBytes, start);
+                }
+            }
+
+            if (!batch.isEmpty() && !isCancelled()) {
+                classify(batch, report, 0);
+            } else {
+                publishClassified(report, 0);
+            }
+            updateStatus(report, channel.position(), totalBytes, start);
+        } finally {
+            for (Future<?> pending : classifying) {
+                pending.cancel(true);
+            }
+        }
+
+        report.elapsedNanos = System.nanoTime() - start;
+        report.cancelled = isCancelled();
+        return report;
+    }
+
+    /**
+     * Queue a batch for classification, then publish finished batches until at most
+     * {@code inFlight} are left.
+     */
+    private void classify(List<BillingViewController.BillingEntry> batch, ImportReport report, int inFlight)
+            throws InterruptedException, ExecutionException {
+        classifying.add(TaskScheduler.executor().submit(() -> toSegment(withCategories(batch))));
+        publishClassified(report, inFlight);
+    }
+
+    private void publishClassified(ImportReport report, int inFlight) throws InterruptedException, ExecutionException {
+        while (classifying.size() > inFlight) {
+            LedgerColumns.Segment batch = classifying.poll().get();
+            if (isCancelled()) {
+                return;
+            }
+            report.rowsImported += batch.size();
+            publish(report, batch);
+        }
+    }
+
+    /**
+     * Fill in the categories of rows that had none.
+     */
+    private List<BillingViewController.BillingEntry> withCategories(List<BillingViewController.BillingEntry> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            BillingViewController.BillingEntry entry = batch.get(i);
+            String category = categoryOf(entry);
+            if (!category.equals(entry.getCategory())) {
+                batch.set(i, new BillingViewController.BillingEntry(category, entry.getProduct(), entry.getCents(),
+                        entry.getDate(), entry.getTimeHour(), entry.getRemark()));
+            }
+        }
+        return batch;
+    }
+
+    private String categoryOf(BillingViewController.BillingEntry entry) {
+        String category = entry.getCategory();
+        if (category == null) {
+            category = model != null ? model.predict(entry.getProduct(), entry.getRemark()) : null;
+            if (category == null) {
+                category = defaultCategory;
+            }
+        }
+        return category;
+    }
+
+    private static LedgerColumns.Segment toSegment(List<BillingViewController.BillingEntry> batch) {
+        LedgerColumns.Segment segment = new LedgerColumns.Segment(batch.size());
+        for (BillingViewController.BillingEntry entry : batch) {
+            segment.add(entry);
+        }
+        return segment;
+    }
+
+    /**
+     * Add the rows the finished import held back as duplicates after all, through the sink like
+     * the imported rows. On the FX thread.
+     */
+    public void addDuplicates() {
+        commit(getValue(), getValue().duplicates);
+    }
+
+    private void publish(ImportReport report, LedgerColumns.Segment batch) throws InterruptedException {
+        pendingBatches.acquire();
+        Platform.runLater(() -> {
+            try {
+                commit(report, batch);
+            } finally {
+                pendingBatches.release();
+            }
+        });
+    }
+
+    /**
+     * Register the batch's new categories and hand it to the sink, on the FX thread. Rows of
+     * categories the ledger has no room for get the default category, so appending the batch
+     * cannot fail.
+     */
+    private void commit(ImportReport report, LedgerColumns.Segment batch) {
+        if (categories != null) {
+            for (String category : batch.categoryNames()) {
+                if (categories.indexOf(category) >= 0) {
+                    continue;
+                }
+                try {
+                    categories.idOf(category);
+                } catch (IllegalStateException full) {
+                    report.categoriesReplaced += batch.replaceCategory(category, defaultCategory);
+                }
+            }
+        }
+        sink.accept(batch);
+    }
+
+    private void updateStatus(ImportReport report, long bytesRead, long totalBytes, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rowsPerSecond = seconds > 0 ? report.rowsImported / seconds : 0;
+        updateProgress(Math.min(bytesRead, totalBytes), totalBytes);
+        updateMessage(String.format("%,d rows (%,.0f rows/s), %,d duplicates, %,d errors",
+                report.rowsImported, rowsPerSecond, report.duplicates.size(), report.errorCount));
+    }
+
+    /**
+     * Map header names to column positions. Returns false if the row is data rather than a header.
+     */
+    private boolean readHeader(List<String> fields) {
+        int[] mapped = {-1, -1, -1, -1, -1, -1};
+        boolean any = false;
+        for (int i = 0; i < fields.size(); i++) {
+            int column = headerColumn(fields.get(i).trim().toLowerCase(Locale.ROOT));
+            if (column >= 0 && mapped[column] < 0) {
+                mapped[column] = i;
+                any = true;
+            }
+        }
+        if (!any) {
+            return false;
+        }
+        if (mapped[DATE] < 0 || mapped[PRICE] < 0) {
+            throw new IllegalStateException("CSV header must contain a date and a price/amount column");
+        }
+        columns = mapped;
+        return true;
+    }
+
+    private static int headerColumn(String name) {
+        switch (name) {
+            case "date":
+            case "日期":
+                return DATE;
+            case "time":
+            case "时间":
+                return TIME;
+            case "category":
+            case "分类":
+                return CATEGORY;
+            case "product":
+            case "description":
+            case "商品":
+                return PRODUCT;
+            case "price":
+            case "amount":
+            case "金额":
+            case "金額":
+                return PRICE;
+            case "remark":
+            case "note":
+            case "备注":
+                return REMARK;
+            default:
+                return -1;
+        }
+    }
+
+    private BillingViewController.BillingEntry parseRow(List<String> fields) {
+        String dateText = field(fields, DATE);
+        String timeText = field(fields, TIME);
+        if (dateText.isEmpty()) {
+            throw new IllegalArgumentException("Missing date");
+        }
+        // Some exports put date and time in the same column
+        int space = dateText.indexOf(' ');
+        if (space > 0) {
+            if (timeText.isEmpty()) {
+                timeText = dateText.substring(space + 1).trim();
+            }
+            dateText = dateText.substring(0, space);
+        }
+        LocalDate date = parseDate(dateText);
+        String timeHour = timeText.length() >= 5 ? timeText.substring(0, 5) : (timeText.isEmpty() ? "00:00" : timeText);
+
+        String category = field(fields, CATEGORY);
+        if (category.isEmpty()) {
+            category = null; // Classified with the rest of the batch
+        }
+        String product = field(fields, PRODUCT);
+        if (product.isEmpty()) {
+            product = "-";
+        }
+        String remark = field(fields, REMARK);
+        if (remark.isEmpty()) {
+            remark = product;
+        }
+        return new BillingViewController.BillingEntry(category, product, parsePrice(field(fields, PRICE)), date, timeHour, remark);
+    }
+
+    private String field(List<String> fields, int column) {
+        int index = columns[column];
+        return index >= 0 && index < fields.size() ? fields.get(index).trim() : "";
+    }
+
+    static LocalDate parseDate(String text) {
+        // Accept yyyy-MM-dd, yyyy/MM/dd and yyyy.MM.dd (with or without zero padding)
+        int first = indexOfSeparator(text, 0);
+        int second = first < 0 ? -1 : indexOfSeparator(text, first + 1);
+        if (first < 0 || second < 0) {
+            throw new IllegalArgumentException("Invalid date: " + text);
+        }
+        try {
+            return LocalDate.of(Integer.parseInt(text.substring(0, first)),
+                    Integer.parseInt(text.substring(first + 1, second)),
+                    Integer.parseInt(text.substring(second + 1)));
+        } catch (NumberFormatException | java.time.DateTimeException e) {
+            throw new IllegalArgumentException("Invalid date: " + text);
+        }
+    }
+
+    private static int indexOfSeparator(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '-' || c == '/' || c == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static long parsePrice(String text) {
+        try {
+            return Money.parse(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(text.isBlank() ? "Missing price" : "Invalid price: " + text);
+        }
+    }
+
+    /**
+     * Split one CSV line into fields, honouring double-quoted fields and "" escapes.
+     * Returns false if a quoted field is not terminated on this line.
+     */
+    static boolean splitLine(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return !quoted;
+    }
+
+    private static String stripBom(String line) {
+        return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+    }
+
+    /**
+     * Outcome of an import: row counts, throughput and the malformed rows that were skipped.
+     */
+    public static class ImportReport {
+        private final Path file;
+        private final List<RowError> errors = new ArrayList<>();
+        private final LedgerColumns.Segment duplicates = new LedgerColumns.Segment(0);
+        private long rowsImported;
+        private long errorCount;
+        // Counted on the FX thread as batches are handed to the sink
+        private long categoriesReplaced;
+        private long elapsedNanos;
+        private boolean cancelled;
+
+        ImportReport(Path file) {
+            this.file = file;
+        }
+
+        void addError(long lineNumber, String line, String reason) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(lineNumber, line, reason));
+            }
+        }
+
+        public Path getFile() { return file; }
+        public long getRowsImported() { return rowsImported; }
+        public long getErrorCount() { return errorCount; }
+        public List<RowError> getErrors() { return Collections.unmodifiableList(errors); }
+
+        /**
+         * Rows imported with the default category because the ledger had no room for theirs.
+         */
+        public long getCategoriesReplaced() { return categoriesReplaced; }
+
+        /**
+         * Rows that were held back because the ledger already had a matching entry.
+         */
+        public int getDuplicateCount() { return duplicates.size(); }
+        public long getElapsedNanos() { return elapsedNanos; }
+        public boolean isCancelled() { return cancelled; }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos > 0 ? rowsImported / (elapsedNanos / 1e9) : 0;
+        }
+
+        /**
+         * Human readable list of the skipped rows (capped at the first 1000).
+         */
+        public String formatErrors() {
+            StringBuilder sb = new StringBuilder();
+            for (RowError error : errors) {
+                sb.append("Line ").append(error.getLineNumber()).append(": ")
+                  .append(error.getReason()).append("  [").append(error.getLine()).append("]\n");
+            }
+            if (errorCount > errors.size()) {
+                sb.append("... ").append(errorCount - errors.size()).append(" more\n");
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Human readable list of the suspected duplicates (capped at the first 1000).
+         */
+        public String formatDuplicates() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < Math.min(duplicates.size(), MAX_REPORTED_ERRORS); i++) {
+                sb.append(CellText.time(duplicates.epochDay(i), duplicates.minuteOfDay(i))).append("  ")
+                  .append(Money.formatSigned(duplicates.cents(i))).append("  ").append(duplicates.product(i)).append('\n');
+            }
+            if (duplicates.size() > MAX_REPORTED_ERRORS) {
+                sb.append("... ").append(duplicates.size() - MAX_REPORTED_ERRORS).append(" more\n");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A row that could not be parsed.
+     */
+    public static class RowError {
+        private static final int MAX_LINE_LENGTH = 200;
+
+        private final long lineNumber;
+        private final String line;
+        private final String reason;
+
+        RowError(long lineNumber, String line, String reason) {
+            this.lineNumber = lineNumber;
+            this.line = line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) + "..." : line;
+            this.reason = reason;
+        }
+
+        public long getLineNumber() { return lineNumber; }
+        public String getLine() { return line; }
+        public String getReason() { return reason; }
+    }
+}
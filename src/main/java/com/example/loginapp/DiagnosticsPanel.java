@@ -0,0 +1,57 @@
+package com.example.loginapp;
+
+import javafx.event.ActionEvent;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.TextArea;
+import javafx.scene.text.Font;
+import javafx.stage.Window;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * The Set panel: shows the {@link UiMetrics} report and saves it to a file for a bug report.
+ */
+public final class DiagnosticsPanel {
+
+    private static final ButtonType REFRESH = new ButtonType("Refresh", ButtonBar.ButtonData.LEFT);
+    private static final ButtonType SAVE = new ButtonType("Save to file", ButtonBar.ButtonData.LEFT);
+
+    private DiagnosticsPanel() {
+    }
+
+    public static void show(Window owner) {
+        TextArea report = new TextArea(UiMetrics.report());
+        report.setEditable(false);
+        report.setWrapText(false);
+        report.setFont(Font.font("Monospaced", 12));
+        report.setPrefColumnCount(80);
+        report.setPrefRowCount(24);
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.initOwner(owner);
+        dialog.setTitle("Set");
+        dialog.setHeaderText("UI performance");
+        dialog.getDialogPane().setContent(report);
+        dialog.getDialogPane().getButtonTypes().addAll(REFRESH, SAVE, ButtonType.CLOSE);
+
+        // Both keep the dialog open
+        dialog.getDialogPane().lookupButton(REFRESH).addEventFilter(ActionEvent.ACTION, event -> {
+            event.consume();
+            report.setText(UiMetrics.report());
+        });
+        dialog.getDialogPane().lookupButton(SAVE).addEventFilter(ActionEvent.ACTION, event -> {
+            event.consume();
+            try {
+                Path file = UiMetrics.dump();
+                dialog.setHeaderText("UI performance (saved to " + file + ")");
+            } catch (UncheckedIOException e) {
+                e.printStackTrace();
+                dialog.setHeaderText("UI performance (could not save: " + e.getCause().getMessage() + ")");
+            }
+        });
+        dialog.showAndWait();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.loginapp;
+
+import javafx.scene.image.Image;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of decoded category icons.
+ *
+ * Each icon is decoded once, already scaled to the size it is displayed at, and shared by every
+ * table cell and control that shows it.
+ */
+public final class IconCache {
+
+    public static final double ICON_SIZE = 24;
+
+    // By icon path; empty when the icon cannot be found, so misses are cached too
+    private static final Map<String, Optional<Image>> categoryIcons = new ConcurrentHashMap<>();
+
+    private IconCache() {
+    }
+
+    /**
+     * The 24x24 icon for a category, or null if the category has none.
+     */
+    public static Image forCategory(CategoryRegistry.Category category) {
+        if (category == null || category.getIcon() == null) {
+            return null;
+        }
+        return categoryIcons.computeIfAbsent(category.getIcon(), IconCache::loadIcon).orElse(null);
+    }
+
+    /**
+     * Load an icon from a classpath resource, or else from a file (user-added categories).
+     */
+    private static Optional<Image> loadIcon(String path) {
+        URL url = IconCache.class.getResource(path);
+        try {
+            if (url == null && Files.isRegularFile(Paths.get(path))) {
+                url = Paths.get(path).toUri().toURL();
+            }
+        } catch (InvalidPathException | MalformedURLException e) {
+            url = null;
+        }
+        if (url == null) {
+            return Optional.empty();
+        }
+        // Decode straight to the display size (smooth, aspect preserved) instead of scaling per frame
+        return Optional.of(new Image(url.toExternalForm(), ICON_SIZE, ICON_SIZE, true, true));
+    }
+}
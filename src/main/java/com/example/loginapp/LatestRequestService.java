@@ -0,0 +1,89 @@
+package com.example.loginapp;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.util.Duration;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A Service for requests that supersede each other, such as a search per keystroke or repeated
+ * clicks on a button: only the latest request's result is ever delivered.
+ *
+ * Requests made within the quiet period (or, with no quiet period, within the same FX event
+ * batch) are coalesced into one run of the last of them. A new request cancels the run in
+ * flight, so its result can no longer reach the onSucceeded handler; the work itself should
+ * check {@link Thread#isInterrupted()} if it is long. Runs on the {@link TaskScheduler}
+ * executor and counts towards its busy state. Use from the FX thread only.
+ */
+public class LatestRequestService<T> extends Service<T> {
+
+    private final PauseTransition quietPeriod;
+    private Callable<T> latest;
+    private boolean scheduled;
+
+    /**
+     * @param quietPeriod how long requests must stop arriving before the latest one runs
+     */
+    public LatestRequestService(Duration quietPeriod) {
+        setExecutor(TaskScheduler.executor());
+        TaskScheduler.track(this);
+        if (quietPeriod.greaterThan(Duration.ZERO)) {
+            this.quietPeriod = new PauseTransition(quietPeriod);
+            this.quietPeriod.setOnFinished(event -> runLatest());
+        } else {
+            this.quietPeriod = null;
+        }
+    }
+
+    /**
+     * Ask for the work to run, replacing any earlier request that has not delivered its result.
+     */
+    public void request(Callable<T> work) {
+        latest = work;
+        if (isRunning()) {
+            cancel();
+        }
+        if (quietPeriod != null) {
+            quietPeriod.playFromStart();
+        } else if (!scheduled) {
+            scheduled = true;
+            Platform.runLater(() -> {
+                scheduled = false;
+                runLatest();
+            });
+        }
+    }
+
+    /**
+     * Drop pending and running requests without delivering anything.
+     */
+    public void discard() {
+        latest = null;
+        if (quietPeriod != null) {
+            quietPeriod.stop();
+        }
+        if (isRunning()) {
+            cancel();
+        }
+    }
+
+    private void runLatest() {
+        if (latest != null) {
+            restart();
+        }
+    }
+
+    @Override
+    protected Task<T> createTask() {
+        Callable<T> work = latest;
+        return new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+                return work.call();
+            }
+        };
+    }
+}
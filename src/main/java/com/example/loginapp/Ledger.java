@@ -0,0 +1,274 @@
+package com.example.loginapp;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.ListChangeListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The billing ledger of the signed-in user, shared by the Billing and Summary views, together
+ * with the indexes that are kept up to date as entries are added.
+ *
+ * Every account has its own ledger, loaded from and journaled to a {@link LedgerStore} in the
+ * account's directory under the PurseAI home directory ({@code ~/.purseai}, or the
+ * {@code purseai.home} system property). A ledger is only in memory while its user is signed in:
+ * {@link #open} loads it on a background thread and reveals the most recent page, {@link #activate}
+ * makes it current and streams the older history into the list a chunk per pulse, and
+ * {@link #unload} closes it again on logout. While nobody is signed in the current ledger is an
+ * empty one that is never saved.
+ *
+ * Recurring entries and budgets ({@link LedgerRules}) and the ledger's categories
+ * ({@link CategoryRegistry}) are kept next to the ledger's store.
+ *
+ * With a heap budget ({@code -Dpurseai.ledger.heapMb}), three quarters of it hold the most recent
+ * rows and the rest a cache of older pages, which are spilled to a page file in the account's
+ * directory ({@link LedgerPageCache}) and read back when the table or a summary needs them.
+ *
+ * If the store fails to write, the entries stay in the list but are no longer saved;
+ * {@link #storageFailureProperty} tells the views so they can warn the user.
+ */
+public class Ledger {
+
+    // Rows shown as soon as the user is signed in; the rest follow in chunks
+    private static final int FIRST_PAGE_ROWS = 200;
+    private static final int STREAM_CHUNK_ROWS = 20_000;
+    // Heap for the ledger's rows in MB; 0 keeps every row in memory
+    private static final long HEAP_BUDGET_MB = Long.getLong("purseai.ledger.heapMb", 0);
+    private static final String PAGE_FILE = "pages.bin";
+
+    // Changed on the FX thread only; views rebind when it changes
+    private static final ReadOnlyObjectWrapper<Ledger> current = new ReadOnlyObjectWrapper<>(new Ledger(null));
+
+    private final Path directory;
+    private final CategoryRegistry categories;
+    private final LedgerRowList entries;
+    private final LedgerPageCache pageCache;
+    private final LedgerStore store;
+    private final LedgerSearchIndex searchIndex;
+    private final LedgerAggregator aggregator;
+    private final LedgerRules rules;
+    private final CategoryClassifier classifier;
+    private final LedgerFingerprints fingerprints;
+    // Rows that came from disk; only rows after these are journaled
+    private final int loadedRows;
+    private long openedNanos;
+    // Set on the FX thread when the store fails to write; null while entries are being saved
+    private final ReadOnlyObjectWrapper<IOException> storageFailure = new ReadOnlyObjectWrapper<>();
+
+    private Ledger(Path directory) {
+        this.directory = directory;
+        // Before the rows, whose category codes are its ids
+        categories = new CategoryRegistry(directory);
+        entries = new LedgerRowList(categories);
+        pageCache = directory != null && HEAP_BUDGET_MB > 0 ? openPageCache(directory) : null;
+        store = directory != null ? openStore(directory) : null;
+        loadedRows = entries.size();
+        entries.holdBackLoadedRows();
+        entries.revealOlder(FIRST_PAGE_ROWS);
+        searchIndex = new LedgerSearchIndex(entries);
+        aggregator = new LedgerAggregator(entries);
+        // After the aggregator, whose totals the budget checks read
+        rules = new LedgerRules(store != null ? directory : null, entries, aggregator, loadedRows);
+        classifier = new CategoryClassifier(entries, loadedRows);
+        fingerprints = new LedgerFingerprints(entries, loadedRows);
+
+        if (store != null) {
+            // Journal every added row; the store batches the fsyncs and drops the rows once it has failed
+            entries.addListener((ListChangeListener<BillingViewController.BillingEntry>) change -> {
+                while (change.next()) {
+                    int from = entries.rowAt(change.getFrom());
+                    if (change.wasAdded() && from >= loadedRows) {
+                        store.append(entries.getColumns(), from, entries.rowAt(change.getTo()));
+                    }
+                }
+            });
+        }
+    }
+
+    private LedgerPageCache openPageCache(Path directory) {
+        long budget = HEAP_BUDGET_MB << 20;
+        try {
+            Files.createDirectories(directory);
+            LedgerPageCache cache = LedgerPageCache.open(directory.resolve(PAGE_FILE),
+                    (int) Math.max(2, budget / 4 / LedgerPageCache.PAGE_BYTES));
+            entries.getColumns().spillTo(cache, (int) Math.min(Integer.MAX_VALUE, budget * 3 / 4 / LedgerColumns.ROW_BYTES));
+            return cache;
+        } catch (IOException e) {
+            // Without a page file every row stays in memory
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private LedgerStore openStore(Path directory) {
+        try {
+            LedgerStore opened = LedgerStore.open(directory, entries.getColumns());
+            opened.setFailureListener(e -> Platform.runLater(() -> storageFailure.set(e)));
+            UiMetrics.record(UiMetrics.Action.LEDGER_LOAD, opened.getLoadNanos());
+            return opened;
+        } catch (IOException e) {
+            // Entries added to a ledger that cannot be saved would be lost silently, so refuse to open it
+            if (pageCache != null) {
+                try {
+                    pageCache.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Load the ledger in the given directory, with only its most recent page revealed. Blocks on
+     * disk I/O, so call it off the FX thread, then hand the result to {@link #activate}.
+     *
+     * @throws IOException if the ledger's store cannot be read or written, e.g. a corrupt
+     *                     snapshot or a directory without write access
+     */
+    public static Ledger open(Path directory) throws IOException {
+        long start = System.nanoTime();
+        Ledger ledger;
+        try {
+            ledger = new Ledger(directory);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        ledger.openedNanos = start;
+        return ledger;
+    }
+
+    /**
+     * Make a freshly opened ledger the current one, closing the previous one, and stream the rest
+     * of its history into the list in the background of the FX thread.
+     */
+    public static void activate(Ledger ledger) {
+        Ledger previous = current.get();
+        current.set(ledger);
+        previous.close();
+        ledger.streamOlderRows();
+    }
+
+    /**
+     * Close the current ledger and drop it from memory, e.g. on logout.
+     */
+    public static void unload() {
+        Ledger previous = current.get();
+        current.set(new Ledger(null));
+        previous.close();
+    }
+
+    public static Ledger getCurrent() {
+        return current.get();
+    }
+
+    public static ReadOnlyObjectProperty<Ledger> currentProperty() {
+        return current.getReadOnlyProperty();
+    }
+
+    /**
+     * Why entries added to this ledger are no longer saved, or null while they are.
+     */
+    public ReadOnlyObjectProperty<IOException> storageFailureProperty() {
+        return storageFailure.getReadOnlyProperty();
+    }
+
+    /**
+     * Flush and close the store of the current ledger, if one was opened.
+     */
+    public static void shutdown() {
+        current.get().close();
+    }
+
+    private void streamOlderRows() {
+        if (entries.getFirstRow() == 0) {
+            return;
+        }
+        // One chunk per runnable so rendering and input get a turn in between
+        Platform.runLater(() -> {
+            if (current.get() != this) {
+                return; // logged out while loading
+            }
+            if (entries.revealOlder(STREAM_CHUNK_ROWS) > 0) {
+                streamOlderRows();
+            } else {
+                // The first page is covered by the login action
+                UiMetrics.recordSince(UiMetrics.Action.LEDGER_HISTORY, openedNanos);
+            }
+        });
+    }
+
+    private void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        // After the store, whose last snapshot may still read spilled pages
+        if (pageCache != null) {
+            try {
+                pageCache.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    static Path homeDirectory() {
+        return Paths.get(System.getProperty("purseai.home", System.getProperty("user.home") + "/.purseai"));
+    }
+
+    /**
+     * Whether this ledger belongs to a signed-in user (rather than being the empty placeholder)
+     */
+    public boolean hasOwner() {
+        return directory != null;
+    }
+
+    public LedgerRowList getEntries() {
+        return entries;
+    }
+
+    public LedgerColumns getColumns() {
+        return entries.getColumns();
+    }
+
+    public CategoryRegistry getCategories() {
+        return categories;
+    }
+
+    /**
+     * The cache of rows spilled to disk, or null if the ledger has no heap budget.
+     */
+    public LedgerPageCache getPageCache() {
+        return pageCache;
+    }
+
+    public LedgerSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    public LedgerAggregator getAggregator() {
+        return aggregator;
+    }
+
+    public LedgerRules getRules() {
+        return rules;
+    }
+
+    public CategoryClassifier getClassifier() {
+        return classifier;
+    }
+
+    public LedgerFingerprints getFingerprints() {
+        return fingerprints;
+    }
+}
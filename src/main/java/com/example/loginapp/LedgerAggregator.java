@@ -0,0 +1,332 @@
+package com.example.loginapp;
+
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Per-category expense and income totals over week/month/year windows.
+ *
+ * Entries are folded into one bucket per day as they are added or removed, so a window query
+ * only sums the day buckets inside it (at most 366) instead of rescanning the ledger. Rows of
+ * a columnar ledger are folded from a published version of the columns, so totals of a fixed
+ * range can also be built on another thread while rows are being added. Buckets are indexed by
+ * the category ids of the ledger's {@link CategoryRegistry}, which the columns store per row, so
+ * folding a row never looks at its category name.
+ */
+public class LedgerAggregator {
+
+    public enum Period { WEEK, MONTH, YEAR }
+
+    // Row count above which added ranges are summed densely before touching the day map
+    private static final int BULK_ROWS = 1024;
+    private static final long MAX_DENSE_CELLS = 4_000_000;
+
+    private final NavigableMap<Long, DayBucket> days = new TreeMap<>();
+    // Null for the totals of a fixed range, which name the categories of their version instead
+    private final CategoryRegistry categories;
+    private final List<String> fixedNames;
+
+    // Bumped on every change so views can refresh what they show
+    private final ReadOnlyLongWrapper revision = new ReadOnlyLongWrapper(this, "revision");
+
+    /**
+     * Totals of a fixed range of rows of one version of the columns, not kept up to date
+     * afterwards. Safe on any thread.
+     */
+    LedgerAggregator(LedgerColumns.Image rows, int from, int to) {
+        categories = null;
+        fixedNames = rows.categories;
+        applyRows(rows, from, to);
+    }
+
+    public LedgerAggregator(ObservableList<BillingViewController.BillingEntry> ledger) {
+        // Columnar ledgers are folded straight from the arrays, without a view per row
+        LedgerRowList rows = ledger instanceof LedgerRowList ? (LedgerRowList) ledger : null;
+        LedgerColumns columns = rows != null ? rows.getColumns() : null;
+        categories = columns != null ? columns.getCategories() : new CategoryRegistry();
+        fixedNames = null;
+        if (columns != null) {
+            applyRows(columns.image(), rows.getFirstRow(), columns.size());
+        } else {
+            for (BillingViewController.BillingEntry entry : ledger) {
+                apply(entry, 1);
+            }
+        }
+        ledger.addListener((ListChangeListener<BillingViewController.BillingEntry>) change -> {
+            while (change.next()) {
+                if (change.wasRemoved()) {
+                    for (BillingViewController.BillingEntry entry : change.getRemoved()) {
+                        apply(entry, -1);
+                    }
+                }
+                if (change.wasAdded()) {
+                    if (columns != null) {
+                        applyRows(columns.image(), rows.rowAt(change.getFrom()), rows.rowAt(change.getTo()));
+                    } else {
+                        for (BillingViewController.BillingEntry entry : change.getAddedSubList()) {
+                            apply(entry, 1);
+                        }
+                    }
+                }
+            }
+            revision.set(revision.get() + 1);
+        });
+    }
+
+    private void applyRows(LedgerColumns.Image columns, int from, int to) {
+        if (to - from >= BULK_ROWS && applyRowsDense(columns, from, to)) {
+            return;
+        }
+        for (int row = from; row < to; row++) {
+            add(columns.epochDay(row), columns.categoryCode(row), columns.cents(row), 1);
+        }
+    }
+
+    /**
+     * Bulk path for loads and imports: sum into dense day x category arrays first, then merge one
+     * bucket per day, so the TreeMap is touched per day instead of per row.
+     */
+    private boolean applyRowsDense(LedgerColumns.Image columns, int from, int to) {
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        int codes = 0;
+        for (int row = from; row < to; row++) {
+            int day = columns.epochDay(row);
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+            codes = Math.max(codes, columns.categoryCode(row) + 1);
+        }
+        long span = (long) maxDay - minDay + 1;
+        if (span * codes > MAX_DENSE_CELLS) {
+            return false;
+        }
+
+        int width = codes;
+        long[] expense = new long[(int) span * width];
+        long[] income = new long[(int) span * width];
+        int[] counts = new int[(int) span];
+        for (int row = from; row < to; row++) {
+            int code = columns.categoryCode(row);
+            int day = columns.epochDay(row) - minDay;
+            long cents = columns.cents(row);
+            if (cents < 0) {
+                expense[day * width + code] -= cents;
+            } else {
+                income[day * width + code] += cents;
+            }
+            counts[day]++;
+        }
+
+        for (int day = 0; day < span; day++) {
+            if (counts[day] == 0) {
+                continue;
+            }
+            DayBucket bucket = days.computeIfAbsent((long) minDay + day, d -> new DayBucket());
+            for (int code = 0; code < width; code++) {
+                int cell = day * width + code;
+                if (expense[cell] != 0 || income[cell] != 0) {
+                    bucket.addTotals(code, expense[cell], income[cell]);
+                }
+            }
+            bucket.count += counts[day];
+        }
+        return true;
+    }
+
+    private void apply(BillingViewController.BillingEntry entry, int sign) {
+        LocalDate date = entry.getDate();
+        if (date == null) {
+            return;
+        }
+        add(date.toEpochDay(), categories.idOf(entry.getCategory()), entry.getCents(), sign);
+    }
+
+    private void add(long day, int category, long cents, int sign) {
+        DayBucket bucket = days.get(day);
+        if (bucket == null) {
+            bucket = new DayBucket();
+            days.put(day, bucket);
+        }
+        bucket.add(category, cents, sign);
+        if (bucket.count == 0) {
+            days.remove(day);
+        }
+    }
+
+    public ReadOnlyLongProperty revisionProperty() {
+        return revision.getReadOnlyProperty();
+    }
+
+    /**
+     * The date windows are anchored on: today, or the latest entry if the ledger ends earlier
+     * (e.g. an imported statement from last year).
+     */
+    public LocalDate anchorDate() {
+        LocalDate today = LocalDate.now();
+        Map.Entry<Long, DayBucket> last = days.floorEntry(today.toEpochDay());
+        return last != null ? LocalDate.ofEpochDay(last.getKey()) : today;
+    }
+
+    /**
+     * Totals for the calendar week, month or year containing the anchor date.
+     */
+    public Totals totals(Period period, LocalDate anchor) {
+        return totals(windowStart(period, anchor), windowEnd(period, anchor));
+    }
+
+    /**
+     * First day of the calendar week (starting Monday), month or year containing the date.
+     */
+    public static LocalDate windowStart(Period period, LocalDate date) {
+        switch (period) {
+            case MONTH:
+                return date.withDayOfMonth(1);
+            case YEAR:
+                return date.withDayOfYear(1);
+            default: // Week
+                return date.with(DayOfWeek.MONDAY);
+        }
+    }
+
+    /**
+     * Last day of the calendar week, month or year containing the date.
+     */
+    public static LocalDate windowEnd(Period period, LocalDate date) {
+        LocalDate from = windowStart(period, date);
+        switch (period) {
+            case MONTH:
+                return from.plusMonths(1).minusDays(1);
+            case YEAR:
+                return from.plusYears(1).minusDays(1);
+            default: // Week
+                return from.plusDays(6);
+        }
+    }
+
+    /**
+     * Totals for an inclusive date range.
+     */
+    public Totals totals(LocalDate from, LocalDate to) {
+        // Taken first, so it names every category the buckets can hold
+        List<String> names = categories != null ? categories.names() : fixedNames;
+        long[] expense = new long[names.size()];
+        long[] income = new long[names.size()];
+        for (DayBucket bucket : days.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+            for (int i = 0; i < bucket.expense.length; i++) {
+                expense[i] += bucket.expense[i];
+                income[i] += bucket.income[i];
+            }
+        }
+        return new Totals(from, to, names, expense, income);
+    }
+
+    /**
+     * Expense of one category over an inclusive date range, in cents (a positive amount).
+     */
+    public long expense(String category, LocalDate from, LocalDate to) {
+        int id = categories != null ? categories.indexOf(category) : fixedNames.indexOf(category);
+        return id >= 0 ? expense(id, from, to) : 0;
+    }
+
+    /**
+     * Expense of the category with the given id over an inclusive date range, in cents.
+     */
+    public long expense(int category, LocalDate from, LocalDate to) {
+        long total = 0;
+        for (DayBucket bucket : days.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+            if (category < bucket.expense.length) {
+                total += bucket.expense[category];
+            }
+        }
+        return total;
+    }
+
+    private static class DayBucket {
+        long[] expense = new long[0];
+        long[] income = new long[0];
+        int count;
+
+        // sign is +1 when an entry is added and -1 when it is removed
+        void add(int category, long cents, int sign) {
+            if (category >= expense.length) {
+                expense = Arrays.copyOf(expense, category + 1);
+                income = Arrays.copyOf(income, category + 1);
+            }
+            if (cents < 0) {
+                expense[category] -= cents * sign;
+            } else {
+                income[category] += cents * sign;
+            }
+            count += sign;
+        }
+
+        void addTotals(int category, long expenseAmount, long incomeAmount) {
+            if (category >= expense.length) {
+                expense = Arrays.copyOf(expense, category + 1);
+                income = Arrays.copyOf(income, category + 1);
+            }
+            expense[category] += expenseAmount;
+            income[category] += incomeAmount;
+        }
+    }
+
+    /**
+     * Expense and income per category for one window, in cents. Expenses are positive amounts.
+     */
+    public static class Totals {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final List<String> categories;
+        private final long[] expense;
+        private final long[] income;
+
+        Totals(LocalDate from, LocalDate to, List<String> categories, long[] expense, long[] income) {
+            this.from = from;
+            this.to = to;
+            this.categories = categories;
+            this.expense = expense;
+            this.income = income;
+        }
+
+        public LocalDate getFrom() { return from; }
+        public LocalDate getTo() { return to; }
+
+        public Map<String, Long> getExpenses() {
+            return nonZero(expense);
+        }
+
+        public Map<String, Long> getIncome() {
+            return nonZero(income);
+        }
+
+        public long getTotalExpense() {
+            return Arrays.stream(expense).sum();
+        }
+
+        public long getTotalIncome() {
+            return Arrays.stream(income).sum();
+        }
+
+        private Map<String, Long> nonZero(long[] values) {
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                // Categories whose entries were all removed again
+                if (values[i] != 0) {
+                    result.put(categories.get(i), values[i]);
+                }
+            }
+            return result;
+        }
+    }
+}
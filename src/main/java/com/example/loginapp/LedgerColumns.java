@@ -0,0 +1,720 @@
+package com.example.loginapp;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented storage for ledger rows.
+ *
+ * Each field lives in its own primitive array (epoch day, amount in cents, minute of day,
+ * category code) and product/remark text is dictionary-encoded, so a row costs a few dozen bytes
+ * instead of a graph of JavaFX property objects. Category codes are the ids of the ledger's
+ * {@link CategoryRegistry}. BillingEntry instances handed out by
+ * {@link LedgerRowList} are views over a row of these columns.
+ *
+ * The columns are versioned so that other threads can read while rows are being added. Rows
+ * are never modified once appended, growing replaces the arrays, and dictionary entries are
+ * only ever added, so a version is just the current arrays and counts: after every append an
+ * immutable {@link Image} of them is published through a volatile field, and any thread can
+ * take the latest one with {@link #image()} without locking and read it while the writer goes
+ * on. Appends are serialized by the columns' monitor and publish once per call; a batch built
+ * on another thread as a {@link Segment} becomes visible all at once. The row accessors below
+ * read the latest version; {@link #size()} is the writing thread's (the FX thread in the app).
+ *
+ * With a {@link LedgerPageCache} the columns keep only about the most recent rows of a budget
+ * in memory. Once appends take the resident rows past it, a background task writes the oldest
+ * full pages of {@link #PAGE_ROWS} rows to the page file and publishes a version without them;
+ * the arrays then start at a page-aligned base row, and rows below it are read back a page at a
+ * time through the cache. The dictionaries stay in memory, so text ids keep their meaning.
+ */
+public class LedgerColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Remark column value meaning "same text as the product"
+    static final int SAME_AS_PRODUCT = -1;
+    private static final short NO_TIME = -1;
+
+    // Rows per page spilled to disk, and bytes per row across the columns
+    static final int PAGE_SHIFT = 14;
+    static final int PAGE_ROWS = 1 << PAGE_SHIFT;
+    static final int PAGE_MASK = PAGE_ROWS - 1;
+    static final int ROW_BYTES = 4 + 8 + 2 + 1 + 4 + 4;
+
+    private int size;
+    // Rows below this are in the page file; the arrays hold rows [base, size) at row - base
+    private int base;
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private long[] cents = new long[INITIAL_CAPACITY];
+    private short[] minutes = new short[INITIAL_CAPACITY];
+    private byte[] categoryCodes = new byte[INITIAL_CAPACITY];
+    private int[] productIds = new int[INITIAL_CAPACITY];
+    private int[] remarkIds = new int[INITIAL_CAPACITY];
+
+    private final CategoryRegistry categories;
+    private final StringDictionary texts = new StringDictionary();
+
+    private LedgerPageCache pages;
+    private int residentRows;
+    private volatile boolean spilling;
+    private volatile boolean spillFailed;
+
+    // The latest published version
+    private volatile Image published = new Image(0, 0, epochDays, cents, minutes, categoryCodes, productIds,
+            remarkIds, List.of(), List.of(), null);
+
+    /**
+     * Empty columns with a registry of the built-in categories, kept in memory only.
+     */
+    public LedgerColumns() {
+        this(new CategoryRegistry());
+    }
+
+    public LedgerColumns(CategoryRegistry categories) {
+        this.categories = categories;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append a row, publish it and return its index.
+     */
+    public synchronized int append(String category, String product, long amountCents, LocalDate date,
+                                   String timeHour, String remark) {
+        int row = appendRow(category, product, amountCents, date, timeHour, remark);
+        publish();
+        return row;
+    }
+
+    /**
+     * Append entries and publish them as one version.
+     */
+    synchronized void appendAll(Collection<? extends BillingViewController.BillingEntry> entries) {
+        for (BillingViewController.BillingEntry entry : entries) {
+            appendRow(entry.getCategory(), entry.getProduct(), entry.getCents(), entry.getDate(),
+                    entry.getTimeHour(), entry.getRemark());
+        }
+        publish();
+    }
+
+    private int appendRow(String category, String product, long amountCents, LocalDate date, String timeHour,
+                          String remark) {
+        int i = size - base;
+        if (i == epochDays.length) {
+            grow(i + 1);
+        }
+        epochDays[i] = (int) date.toEpochDay();
+        cents[i] = amountCents;
+        minutes[i] = parseMinutes(timeHour);
+        categoryCodes[i] = (byte) categories.idOf(category);
+        productIds[i] = texts.idOf(product);
+        remarkIds[i] = remark == null || remark.equals(product) ? SAME_AS_PRODUCT : texts.idOf(remark);
+        return size++;
+    }
+
+    /**
+     * Append the rows of a segment in bulk and publish them as one version. Returns the index
+     * of the segment's first row.
+     */
+    public synchronized int append(Segment segment) {
+        int first = size;
+        int at = first - base;
+        int count = segment.size;
+        if (at + count > epochDays.length) {
+            grow(at + count);
+        }
+        // The segment's dictionary ids mapped to ours, one lookup per distinct value
+        byte[] codes = new byte[segment.categories.size()];
+        for (int id = 0; id < codes.length; id++) {
+            codes[id] = (byte) categories.idOf(segment.categories.get(id));
+        }
+        int[] textIds = new int[segment.texts.size()];
+        for (int id = 0; id < textIds.length; id++) {
+            textIds[id] = texts.idOf(segment.texts.get(id));
+        }
+
+        System.arraycopy(segment.epochDays, 0, epochDays, at, count);
+        System.arraycopy(segment.cents, 0, cents, at, count);
+        System.arraycopy(segment.minutes, 0, minutes, at, count);
+        for (int i = 0; i < count; i++) {
+            categoryCodes[at + i] = codes[segment.categoryCodes[i]];
+            productIds[at + i] = textIds[segment.productIds[i]];
+            int remark = segment.remarkIds[i];
+            remarkIds[at + i] = remark == SAME_AS_PRODUCT ? SAME_AS_PRODUCT : textIds[remark];
+        }
+        size += count;
+        publish();
+        return first;
+    }
+
+    /**
+     * Make everything appended so far visible to readers on other threads. The volatile write
+     * orders all the writes to the arrays and dictionaries before it.
+     */
+    private void publish() {
+        published = new Image(size, base, epochDays, cents, minutes, categoryCodes, productIds, remarkIds,
+                categories.names(), texts.view(), pages);
+        // Spill a quarter of the budget at a time, so the resident rows are not copied on every page
+        if (pages != null && !spilling && !spillFailed
+                && size - base >= residentRows + Math.max(PAGE_ROWS, residentRows >> 2)) {
+            spilling = true;
+            TaskScheduler.executor().execute(this::spill);
+        }
+    }
+
+    /**
+     * Keep about the given number of the most recent rows in memory and spill older ones to the
+     * page cache's file. Call before any rows are added.
+     */
+    synchronized void spillTo(LedgerPageCache cache, int resident) {
+        if (size != 0) {
+            throw new IllegalStateException("Ledger already has rows");
+        }
+        pages = cache;
+        residentRows = Math.max(PAGE_ROWS, resident);
+    }
+
+    LedgerPageCache getPageCache() {
+        return pages;
+    }
+
+    /**
+     * How many of the first rows of a ledger of the given size belong on disk rather than in
+     * memory (whole pages).
+     */
+    synchronized int rowsToSpill(int rows) {
+        return pages == null ? 0 : Math.max(0, rows - residentRows) & ~PAGE_MASK;
+    }
+
+    /**
+     * Write the oldest resident pages to disk, from the latest version and without holding the
+     * lock, then drop them from the arrays.
+     */
+    private void spill() {
+        try {
+            Image image = published;
+            int newBase = Math.max(0, image.size - residentRows) & ~PAGE_MASK;
+            for (int page = image.base >>> PAGE_SHIFT; page < newBase >>> PAGE_SHIFT; page++) {
+                pages.write(page, image.resident);
+            }
+            evict(newBase);
+        } catch (IOException e) {
+            // Keep the rows in memory from now on
+            spillFailed = true;
+            if (pages.isOpen()) {
+                e.printStackTrace();
+            }
+        } finally {
+            spilling = false;
+        }
+    }
+
+    private synchronized void evict(int newBase) {
+        if (newBase <= base) {
+            return;
+        }
+        int dropped = newBase - base;
+        int resident = size - newBase;
+        int capacity = Math.max(INITIAL_CAPACITY, resident + (resident >> 1));
+        epochDays = Arrays.copyOfRange(epochDays, dropped, dropped + capacity);
+        cents = Arrays.copyOfRange(cents, dropped, dropped + capacity);
+        minutes = Arrays.copyOfRange(minutes, dropped, dropped + capacity);
+        categoryCodes = Arrays.copyOfRange(categoryCodes, dropped, dropped + capacity);
+        productIds = Arrays.copyOfRange(productIds, dropped, dropped + capacity);
+        remarkIds = Arrays.copyOfRange(remarkIds, dropped, dropped + capacity);
+        base = newBase;
+        publish();
+    }
+
+    private void grow(int needed) {
+        int capacity = Math.max(needed, epochDays.length + (epochDays.length >> 1));
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        cents = Arrays.copyOf(cents, capacity);
+        minutes = Arrays.copyOf(minutes, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        productIds = Arrays.copyOf(productIds, capacity);
+        remarkIds = Arrays.copyOf(remarkIds, capacity);
+    }
+
+    public int epochDay(int row) {
+        return published.epochDay(row);
+    }
+
+    public LocalDate date(int row) {
+        return LocalDate.ofEpochDay(published.epochDay(row));
+    }
+
+    public long cents(int row) {
+        return published.cents(row);
+    }
+
+    public String category(int row) {
+        return published.category(row);
+    }
+
+    public int categoryCode(int row) {
+        return published.categoryCode(row);
+    }
+
+    public String product(int row) {
+        return published.product(row);
+    }
+
+    public String remark(int row) {
+        return published.remark(row);
+    }
+
+    /**
+     * Dictionary id of the product text.
+     */
+    int productId(int row) {
+        return published.productId(row);
+    }
+
+    /**
+     * Dictionary id of the remark text (the product's id when the remark is the same).
+     */
+    int remarkId(int row) {
+        return published.remarkId(row);
+    }
+
+    /**
+     * The registry whose ids are the category codes of the rows.
+     */
+    public CategoryRegistry getCategories() {
+        return categories;
+    }
+
+    int categoryCount() {
+        return categories.size();
+    }
+
+    String categoryName(int code) {
+        return categories.name(code);
+    }
+
+    int textCount() {
+        return texts.size();
+    }
+
+    String text(int id) {
+        return texts.get(id);
+    }
+
+    public String timeHour(int row) {
+        return published.timeHour(row);
+    }
+
+    /**
+     * Minute of day, or -1 if the row has no time.
+     */
+    public int minuteOfDay(int row) {
+        return published.minuteOfDay(row);
+    }
+
+    /**
+     * The latest published version: a consistent, immutable image of the rows appended so far
+     * that any thread may read. Costs a volatile read; nothing is copied.
+     */
+    Image image() {
+        return published;
+    }
+
+    /**
+     * Replace the (empty) columns with previously persisted content. Rows below the image's base
+     * must already be in this ledger's page file, and category codes must be ids of this
+     * ledger's registry.
+     */
+    synchronized void restore(Image image) {
+        if (size != 0) {
+            throw new IllegalStateException("Ledger already has rows");
+        }
+        if (image.base > 0 && image.pages != pages) {
+            throw new IllegalArgumentException("Spilled rows are not in this ledger's page file");
+        }
+        int resident = image.size - image.base;
+        int capacity = Math.max(INITIAL_CAPACITY, resident + (resident >> 1));
+        size = image.size;
+        base = image.base;
+        epochDays = Arrays.copyOf(image.epochDays, capacity);
+        cents = Arrays.copyOf(image.cents, capacity);
+        minutes = Arrays.copyOf(image.minutes, capacity);
+        categoryCodes = Arrays.copyOf(image.categoryCodes, capacity);
+        productIds = Arrays.copyOf(image.productIds, capacity);
+        remarkIds = Arrays.copyOf(image.remarkIds, capacity);
+        texts.restore(image.texts);
+        publish();
+    }
+
+    /**
+     * Approximate heap used by the columns, dictionaries and cached pages, for diagnostics and
+     * benchmarks.
+     */
+    public long estimatedBytes() {
+        long columns = (long) epochDays.length * ROW_BYTES;
+        long cached = pages != null ? pages.estimatedBytes() : 0;
+        return columns + cached + categories.estimatedBytes() + texts.estimatedBytes();
+    }
+
+    /**
+     * "HH:mm" (or "H:mm", optionally followed by seconds) to minute of day, or -1 if unparseable.
+     */
+    static short parseMinutes(String timeHour) {
+        if (timeHour == null) {
+            return NO_TIME;
+        }
+        int colon = timeHour.indexOf(':');
+        if (colon <= 0 || colon + 3 > timeHour.length()) {
+            return NO_TIME;
+        }
+        try {
+            int hour = Integer.parseInt(timeHour.substring(0, colon).trim());
+            int minute = Integer.parseInt(timeHour.substring(colon + 1, colon + 3));
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+                return NO_TIME;
+            }
+            return (short) (hour * 60 + minute);
+        } catch (NumberFormatException e) {
+            return NO_TIME;
+        }
+    }
+
+    static String formatMinutes(int minuteOfDay) {
+        if (minuteOfDay < 0) {
+            return "";
+        }
+        int hour = minuteOfDay / 60;
+        int minute = minuteOfDay % 60;
+        return new String(new char[] {
+                (char) ('0' + hour / 10), (char) ('0' + hour % 10), ':',
+                (char) ('0' + minute / 10), (char) ('0' + minute % 10)});
+    }
+
+    /**
+     * Interns strings to dense int ids so repeated merchant names are stored once.
+     *
+     * Values are only ever added, and growing copies them to a new array, so a {@link #view()}
+     * of the first values stays valid while more are added.
+     */
+    static class StringDictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] values = new String[16];
+        private int size;
+        private long chars;
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = size;
+                ids.put(value, id);
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = value;
+                chars += value.length();
+            }
+            return id;
+        }
+
+        String get(int id) {
+            if (id >= size) {
+                throw new IndexOutOfBoundsException("Id: " + id + ", size: " + size);
+            }
+            return values[id];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Make an id stand for another value; if the dictionary already has it, it then has two ids.
+         */
+        void replace(int id, String value) {
+            String old = get(id);
+            ids.remove(old);
+            ids.putIfAbsent(value, id);
+            values[id] = value;
+            chars += value.length() - old.length();
+        }
+
+        /**
+         * Read-only list of the values added so far; later additions do not show up in it.
+         */
+        List<String> view() {
+            return Collections.unmodifiableList(Arrays.asList(values).subList(0, size));
+        }
+
+        void restore(List<String> restored) {
+            ids.clear();
+            values = new String[Math.max(16, restored.size())];
+            size = 0;
+            chars = 0;
+            for (String value : restored) {
+                idOf(value);
+            }
+        }
+
+        long estimatedBytes() {
+            // String + backing array, HashMap node, boxed id and array slot per distinct value
+            return size * (40L + 32 + 16 + 8) + chars;
+        }
+    }
+
+    /**
+     * Read-only column arrays for rows [base, size), i.e. one published version of the columns,
+     * with the rows below base in the page file. Arrays may be longer than size - base; what
+     * lies beyond belongs to later versions.
+     */
+    static class Image {
+        final int size;
+        final int base;
+        final int[] epochDays;
+        final long[] cents;
+        final short[] minutes;
+        final byte[] categoryCodes;
+        final int[] productIds;
+        final int[] remarkIds;
+        final List<String> categories;
+        final List<String> texts;
+        final LedgerPageCache pages;
+        // The resident rows as a page, for code that walks the rows a page at a time
+        final Page resident;
+        // The spilled page read last, so reading the cells of nearby rows skips the cache. Racy,
+        // but pages are immutable and their fields final, so any thread may see any of them
+        private Page recent;
+
+        Image(int size, int base, int[] epochDays, long[] cents, short[] minutes, byte[] categoryCodes,
+              int[] productIds, int[] remarkIds, List<String> categories, List<String> texts,
+              LedgerPageCache pages) {
+            this.size = size;
+            this.base = base;
+            this.epochDays = epochDays;
+            this.cents = cents;
+            this.minutes = minutes;
+            this.categoryCodes = categoryCodes;
+            this.productIds = productIds;
+            this.remarkIds = remarkIds;
+            this.categories = categories;
+            this.texts = texts;
+            this.pages = pages;
+            this.resident = new Page(base, size, epochDays, cents, minutes, categoryCodes, productIds, remarkIds);
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * The page holding a row, for reading the rows around it; spilled pages go through the
+         * cache. Its rows run from the given row to {@code page.end}, capped at size.
+         */
+        Page page(int row) {
+            if (row >= base) {
+                return resident;
+            }
+            Page page = recent;
+            if (page == null || row < page.first || row >= page.end) {
+                page = pages.page(row >>> PAGE_SHIFT);
+                recent = page;
+            }
+            return page;
+        }
+
+        /**
+         * Like {@link #page(int)}, for a scan of many pages that should not displace what is
+         * cached.
+         */
+        Page scan(int row) {
+            return row >= base ? resident : pages.scan(row >>> PAGE_SHIFT);
+        }
+
+        int epochDay(int row) {
+            if (row >= base) {
+                return epochDays[row - base];
+            }
+            return page(row).epochDays[row & PAGE_MASK];
+        }
+
+        long cents(int row) {
+            if (row >= base) {
+                return cents[row - base];
+            }
+            return page(row).cents[row & PAGE_MASK];
+        }
+
+        int categoryCode(int row) {
+            if (row >= base) {
+                return categoryCodes[row - base] & 0xFF;
+            }
+            return page(row).categoryCodes[row & PAGE_MASK] & 0xFF;
+        }
+
+        String category(int row) {
+            return categories.get(categoryCode(row));
+        }
+
+        int productId(int row) {
+            if (row >= base) {
+                return productIds[row - base];
+            }
+            return page(row).productIds[row & PAGE_MASK];
+        }
+
+        int remarkId(int row) {
+            Page page = page(row);
+            int id = page.remarkIds[row - page.first];
+            return id == SAME_AS_PRODUCT ? page.productIds[row - page.first] : id;
+        }
+
+        String product(int row) {
+            return texts.get(productId(row));
+        }
+
+        String remark(int row) {
+            return texts.get(remarkId(row));
+        }
+
+        int minuteOfDay(int row) {
+            if (row >= base) {
+                return minutes[row - base];
+            }
+            return page(row).minutes[row & PAGE_MASK];
+        }
+
+        String timeHour(int row) {
+            return formatMinutes(minuteOfDay(row));
+        }
+    }
+
+    /**
+     * Column arrays for the rows [first, end), indexed by row - first: a page read back from the
+     * page file, or the resident rows of a version. Never modified.
+     */
+    static final class Page {
+        final int first;
+        final int end;
+        final int[] epochDays;
+        final long[] cents;
+        final short[] minutes;
+        final byte[] categoryCodes;
+        final int[] productIds;
+        final int[] remarkIds;
+
+        Page(int first, int end, int[] epochDays, long[] cents, short[] minutes, byte[] categoryCodes,
+             int[] productIds, int[] remarkIds) {
+            this.first = first;
+            this.end = end;
+            this.epochDays = epochDays;
+            this.cents = cents;
+            this.minutes = minutes;
+            this.categoryCodes = categoryCodes;
+            this.productIds = productIds;
+            this.remarkIds = remarkIds;
+        }
+    }
+
+    /**
+     * Rows prepared by one thread (an import, say) outside the columns, with dictionaries of
+     * their own. Nothing else sees a segment until it is appended with
+     * {@link LedgerColumns#append(Segment)}, which copies it in bulk and publishes it as one
+     * version. Not thread-safe; hand it over once it is filled.
+     */
+    public static final class Segment {
+        private int size;
+        private int[] epochDays;
+        private long[] cents;
+        private short[] minutes;
+        private int[] categoryCodes;
+        private int[] productIds;
+        private int[] remarkIds;
+        private final StringDictionary categories = new StringDictionary();
+        private final StringDictionary texts = new StringDictionary();
+
+        public Segment(int capacity) {
+            capacity = Math.max(16, capacity);
+            epochDays = new int[capacity];
+            cents = new long[capacity];
+            minutes = new short[capacity];
+            categoryCodes = new int[capacity];
+            productIds = new int[capacity];
+            remarkIds = new int[capacity];
+        }
+
+        public void add(String category, String product, long amountCents, LocalDate date, String timeHour,
+                        String remark) {
+            if (size == epochDays.length) {
+                int capacity = size * 2;
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                minutes = Arrays.copyOf(minutes, capacity);
+                categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+                productIds = Arrays.copyOf(productIds, capacity);
+                remarkIds = Arrays.copyOf(remarkIds, capacity);
+            }
+            epochDays[size] = (int) date.toEpochDay();
+            cents[size] = amountCents;
+            minutes[size] = parseMinutes(timeHour);
+            categoryCodes[size] = categories.idOf(category);
+            productIds[size] = texts.idOf(product);
+            remarkIds[size] = remark == null || remark.equals(product) ? SAME_AS_PRODUCT : texts.idOf(remark);
+            size++;
+        }
+
+        public void add(BillingViewController.BillingEntry entry) {
+            add(entry.getCategory(), entry.getProduct(), entry.getCents(), entry.getDate(), entry.getTimeHour(),
+                    entry.getRemark());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        int epochDay(int i) {
+            return epochDays[i];
+        }
+
+        long cents(int i) {
+            return cents[i];
+        }
+
+        int minuteOfDay(int i) {
+            return minutes[i];
+        }
+
+        String product(int i) {
+            return texts.get(productIds[i]);
+        }
+
+        /**
+         * The distinct categories of the rows added so far.
+         */
+        List<String> categoryNames() {
+            return categories.view();
+        }
+
+        /**
+         * Give every row of one of the segment's categories another one.
+         *
+         * @return the number of rows changed
+         */
+        int replaceCategory(String name, String replacement) {
+            int id = categories.idOf(name);
+            categories.replace(id, replacement);
+            int changed = 0;
+            for (int i = 0; i < size; i++) {
+                if (categoryCodes[i] == id) {
+                    changed++;
+                }
+            }
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.loginapp;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Rows of {@link LedgerColumns} by date: a sorted map from epoch day to the ids of that day's
+ * rows, so the rows of a day, week, month or any span are found with a logarithmic lookup plus
+ * the days in the range, instead of a scan of the ledger.
+ *
+ * Like {@link LedgerSortIndex}, the index catches up with rows appended since the last query
+ * when it is next asked; rows usually arrive in date order, so consecutive rows mostly land in
+ * the bucket that was just used and skip the map lookup.
+ */
+public class LedgerDateIndex {
+
+    private final LedgerColumns columns;
+    private final NavigableMap<Integer, DayRows> days = new TreeMap<>();
+    private int indexedRows;
+
+    public LedgerDateIndex(LedgerColumns columns) {
+        this.columns = columns;
+    }
+
+    private void catchUp() {
+        int size = columns.size();
+        DayRows bucket = null;
+        int bucketDay = 0;
+        for (int row = indexedRows; row < size; row++) {
+            int day = columns.epochDay(row);
+            if (bucket == null || day != bucketDay) {
+                bucket = days.computeIfAbsent(day, d -> new DayRows());
+                bucketDay = day;
+            }
+            bucket.add(row);
+        }
+        indexedRows = size;
+    }
+
+    /**
+     * Ids of the rows dated in an inclusive range, ascending.
+     */
+    public int[] rows(LocalDate from, LocalDate to) {
+        catchUp();
+        NavigableMap<Integer, DayRows> range = subMap(from, to);
+        int count = 0;
+        for (DayRows bucket : range.values()) {
+            count += bucket.size;
+        }
+        int[] rows = new int[count];
+        int k = 0;
+        boolean ascending = true;
+        for (DayRows bucket : range.values()) {
+            ascending &= k == 0 || bucket.rows[0] > rows[k - 1];
+            System.arraycopy(bucket.rows, 0, rows, k, bucket.size);
+            k += bucket.size;
+        }
+        // Each bucket is in row order; only rows added out of date order need sorting
+        if (!ascending) {
+            Arrays.sort(rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Number of rows dated in an inclusive range.
+     */
+    public int count(LocalDate from, LocalDate to) {
+        catchUp();
+        int count = 0;
+        for (DayRows bucket : subMap(from, to).values()) {
+            count += bucket.size;
+        }
+        return count;
+    }
+
+    private NavigableMap<Integer, DayRows> subMap(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new TreeMap<>();
+        }
+        return days.subMap(clamp(from.toEpochDay()), true, clamp(to.toEpochDay()), true);
+    }
+
+    // LocalDate.MIN and MAX stand for open ends
+    private static int clamp(long epochDay) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, epochDay));
+    }
+
+    private static class DayRows {
+        int[] rows = new int[4];
+        int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+}
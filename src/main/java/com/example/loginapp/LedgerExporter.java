@@ -0,0 +1,561 @@
+package com.example.loginapp;
+
+import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Streams the rows of a ledger to a CSV file or to a compact columnar file on a background
+ * thread, optionally only those in a date range, of some categories or matching a search.
+ *
+ * The exporter works on the version of the columns that was published when it was created, so
+ * the user can keep adding entries meanwhile. Rows are encoded in chunks of {@link #CHUNK_ROWS}
+ * on the shared executor, with up to one chunk per core in flight, and the encoded chunks are
+ * written to the file in row order; memory use therefore depends on the chunk size and the core
+ * count but not on the size of the ledger. Spilled pages are scanned without displacing what the
+ * page cache holds. The file is written under a temporary name and moved into place when it is
+ * complete, so a cancelled or failed export leaves nothing behind.
+ *
+ * CSV files have a header row and the columns date, time, category, product, price and remark,
+ * so {@link CsvImporter} reads them back as they were; the remark is left empty when it is the
+ * same as the product. The importer reads a line at a time, so line breaks inside texts are
+ * written as spaces.
+ *
+ * Columnar files ({@code .pcol}, big-endian) are laid out as:
+ * <ul>
+ *     <li>header - magic "PAIX", version, the category names (count, then length-prefixed UTF-8)</li>
+ *     <li>blocks - for each chunk with rows: its length in bytes and row count, then the columns
+ *     epoch day (int), cents (long), minute of day (short, -1 for none), category index (byte),
+ *     product and remark (int indexes into the block's own text table, remark -1 when it is the
+ *     product), and the text table (count, then length-prefixed UTF-8)</li>
+ *     <li>trailer - -1, the block count and each block's file offset, the row count, the
+ *     trailer's offset and the magic again, so a reader can find any block without a scan</li>
+ * </ul>
+ */
+public class LedgerExporter extends Task<LedgerExporter.ExportReport> {
+
+    public enum Format {
+        CSV("CSV files", "*.csv"),
+        COLUMNAR("PurseAI columnar files", "*.pcol");
+
+        private final String description;
+        private final String pattern;
+
+        Format(String description, String pattern) {
+            this.description = description;
+            this.pattern = pattern;
+        }
+
+        public String getDescription() { return description; }
+
+        /**
+         * File name pattern for file choosers, e.g. "*.csv".
+         */
+        public String getPattern() { return pattern; }
+    }
+
+    static final int CHUNK_ROWS = 1 << 16;
+    static final int COLUMNAR_MAGIC = 0x50414958; // "PAIX"
+    static final int COLUMNAR_VERSION = 1;
+    private static final byte[] CSV_HEADER = "date,time,category,product,price,remark\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int END_OF_BLOCKS = -1;
+
+    private final LedgerColumns.Image image;
+    private final Path file;
+    private final Format format;
+    private int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    // Optional filters; the defaults accept everything
+    private long fromDay = Long.MIN_VALUE;
+    private long toDay = Long.MAX_VALUE;
+    private boolean[] categoryMatch;
+    private RowFilter filter;
+
+    // Category names as they appear in a CSV row, by category code
+    private byte[][] csvCategories;
+    // Chunks being encoded, oldest first
+    private final ArrayDeque<Future<Chunk>> encoding = new ArrayDeque<>();
+
+    /**
+     * Export the rows the columns have now.
+     */
+    public LedgerExporter(LedgerColumns columns, Path file, Format format) {
+        this.image = columns.image();
+        this.file = file;
+        this.format = format;
+    }
+
+    /**
+     * Only export rows dated in an inclusive range (nulls leave that end open). Call before the
+     * export starts, like the other filters.
+     */
+    public void setDateRange(LocalDate from, LocalDate to) {
+        fromDay = from != null ? from.toEpochDay() : Long.MIN_VALUE;
+        toDay = to != null ? to.toEpochDay() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Only export rows of the named categories (null exports every category).
+     */
+    public void setCategories(Collection<String> names) {
+        if (names == null) {
+            categoryMatch = null;
+            return;
+        }
+        categoryMatch = new boolean[image.categories.size()];
+        for (int code = 0; code < categoryMatch.length; code++) {
+            categoryMatch[code] = names.contains(image.categories.get(code));
+        }
+    }
+
+    /**
+     * Only export rows matching a search or query, e.g. what the table shows (null exports
+     * every row).
+     */
+    public void setFilter(RowFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Chunks encoded at the same time; defaults to the core count.
+     */
+    void setParallelism(int chunks) {
+        parallelism = Math.max(1, chunks);
+    }
+
+    @Override
+    protected ExportReport call() throws Exception {
+        return export(true);
+    }
+
+    /**
+     * Run the export on the calling thread. Without progress updates this needs no FX toolkit,
+     * so benchmarks can run it headless.
+     */
+    ExportReport export(boolean showProgress) throws Exception {
+        ExportReport report = new ExportReport(file, format);
+        long start = System.nanoTime();
+        int size = image.size();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<Long> blockOffsets = new ArrayList<>();
+        boolean complete = false;
+
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, format == Format.CSV ? ByteBuffer.wrap(CSV_HEADER) : columnarHeader(), report);
+            if (format == Format.CSV) {
+                csvCategories = new byte[image.categories.size()][];
+                for (int code = 0; code < csvCategories.length; code++) {
+                    csvCategories[code] = csvField(image.categories.get(code));
+                }
+            }
+
+            for (int first = 0; first < size && !isCancelled(); first += CHUNK_ROWS) {
+                int chunkFirst = first;
+                int chunkEnd = Math.min(size, first + CHUNK_ROWS);
+                encoding.add(TaskScheduler.executor().submit(() -> format == Format.CSV
+                        ? encodeCsv(chunkFirst, chunkEnd) : encodeColumnar(chunkFirst, chunkEnd)));
+                writeEncoded(out, report, blockOffsets, parallelism - 1);
+                if (showProgress) {
+                    updateStatus(report, chunkFirst, size, start);
+                }
+            }
+            writeEncoded(out, report, blockOffsets, 0);
+
+            if (!isCancelled()) {
+                if (format == Format.COLUMNAR) {
+                    write(out, columnarTrailer(blockOffsets, report), report);
+                }
+                out.force(true);
+                complete = true;
+            }
+        } finally {
+            for (Future<?> pending : encoding) {
+                pending.cancel(true);
+            }
+            if (!complete) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        if (complete) {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (showProgress) {
+                updateStatus(report, size, size, start);
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        report.cancelled = !complete;
+        return report;
+    }
+
+    /**
+     * Write finished chunks in order until at most {@code inFlight} are still being encoded.
+     */
+    private void writeEncoded(FileChannel out, ExportReport report, List<Long> blockOffsets, int inFlight)
+            throws IOException, InterruptedException, ExecutionException {
+        while (encoding.size() > inFlight) {
+            Chunk chunk = encoding.poll().get();
+            if (isCancelled()) {
+                return;
+            }
+            if (chunk.rows > 0) {
+                if (format == Format.COLUMNAR) {
+                    blockOffsets.add(report.bytesWritten);
+                }
+                write(out, chunk.bytes, report);
+                report.rowsExported += chunk.rows;
+            }
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer, ExportReport report) throws IOException {
+        report.bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private void updateStatus(ExportReport report, int rowsScanned, int totalRows, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        updateProgress(rowsScanned, Math.max(1, totalRows));
+        updateMessage(String.format("%,d rows exported (%,.0f rows/s)", report.rowsExported,
+                seconds > 0 ? report.rowsExported / seconds : 0));
+    }
+
+    private boolean accepts(int row, int epochDay, int categoryCode) {
+        return epochDay >= fromDay && epochDay <= toDay
+                && (categoryMatch == null || categoryMatch[categoryCode])
+                && (filter == null || filter.distanceOfRow(row) >= 0);
+    }
+
+    // ---- CSV ----
+
+    private Chunk encodeCsv(int first, int end) {
+        ByteBuffer out = ByteBuffer.allocate((end - first) * 64);
+        byte[] scratch = new byte[24];
+        int lastDay = Integer.MIN_VALUE;
+        byte[] date = null;
+        int rows = 0;
+        LedgerColumns.Page page = image.scan(first);
+        for (int row = first; row < end; row++) {
+            if (row >= page.end) {
+                page = image.scan(row);
+            }
+            int i = row - page.first;
+            int day = page.epochDays[i];
+            int code = page.categoryCodes[i] & 0xFF;
+            if (!accepts(row, day, code)) {
+                continue;
+            }
+            String product = image.texts.get(page.productIds[i]);
+            int remarkId = page.remarkIds[i];
+            String remark = remarkId == LedgerColumns.SAME_AS_PRODUCT ? null : image.texts.get(remarkId);
+            // Worst case: every char a quoted 3-byte sequence
+            int needed = 64 + csvCategories[code].length + 6 * (product.length() + (remark != null ? remark.length() : 0));
+            if (out.remaining() < needed) {
+                out = grow(out, needed);
+            }
+
+            // Rows are mostly in date order, so the date text is reused
+            if (day != lastDay) {
+                date = LocalDate.ofEpochDay(day).toString().getBytes(StandardCharsets.US_ASCII);
+                lastDay = day;
+            }
+            out.put(date).put((byte) ',');
+            int minute = page.minutes[i];
+            if (minute >= 0) {
+                out.put((byte) ('0' + minute / 600)).put((byte) ('0' + minute / 60 % 10)).put((byte) ':')
+                        .put((byte) ('0' + minute % 60 / 10)).put((byte) ('0' + minute % 10));
+            }
+            out.put((byte) ',').put(csvCategories[code]).put((byte) ',');
+            putCsvText(out, product);
+            out.put((byte) ',');
+            putCents(out, page.cents[i], scratch);
+            out.put((byte) ',');
+            if (remark != null) {
+                putCsvText(out, remark);
+            }
+            out.put((byte) '\n');
+            rows++;
+        }
+        out.flip();
+        return new Chunk(out, rows);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        return grown.put(buffer);
+    }
+
+    private static byte[] csvField(String text) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 6 * text.length());
+        putCsvText(buffer, text);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * A text field, quoted if it contains a separator or quote.
+     */
+    private static void putCsvText(ByteBuffer out, String text) {
+        if (text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+            text = text.replace("\r\n", " ").replace('\r', ' ').replace('\n', ' ');
+        }
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"';
+        }
+        if (!quote) {
+            putUtf8(out, text);
+            return;
+        }
+        out.put((byte) '"');
+        int start = 0;
+        for (int i = text.indexOf('"'); i >= 0; i = text.indexOf('"', start)) {
+            putUtf8(out, text.substring(start, i + 1));
+            out.put((byte) '"');
+            start = i + 1;
+        }
+        putUtf8(out, start == 0 ? text : text.substring(start));
+        out.put((byte) '"');
+    }
+
+    /**
+     * UTF-8 encode straight into the buffer, without an intermediate byte array. Unpaired
+     * surrogates become '?', as with String.getBytes.
+     */
+    private static void putUtf8(ByteBuffer out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(++i));
+                out.put((byte) (0xF0 | code >> 18)).put((byte) (0x80 | code >> 12 & 0x3F))
+                        .put((byte) (0x80 | code >> 6 & 0x3F)).put((byte) (0x80 | code & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * The amount as plain decimal yuan, e.g. "-200.00", which {@link Money#parse} reads back.
+     * Works on the negative magnitude so that Long.MIN_VALUE needs no special case.
+     */
+    private static void putCents(ByteBuffer out, long cents, byte[] scratch) {
+        long rest = cents < 0 ? cents : -cents;
+        int pos = scratch.length;
+        scratch[--pos] = (byte) ('0' - rest % 10);
+        rest /= 10;
+        scratch[--pos] = (byte) ('0' - rest % 10);
+        rest /= 10;
+        scratch[--pos] = '.';
+        do {
+            scratch[--pos] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (cents < 0) {
+            scratch[--pos] = '-';
+        }
+        out.put(scratch, pos, scratch.length - pos);
+    }
+
+    // ---- columnar ----
+
+    private ByteBuffer columnarHeader() {
+        List<byte[]> names = new ArrayList<>();
+        int bytes = 12;
+        for (String name : image.categories) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            names.add(encoded);
+            bytes += 4 + encoded.length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(bytes);
+        header.putInt(COLUMNAR_MAGIC).putInt(COLUMNAR_VERSION).putInt(names.size());
+        for (byte[] name : names) {
+            header.putInt(name.length).put(name);
+        }
+        return header.flip();
+    }
+
+    private static ByteBuffer columnarTrailer(List<Long> blockOffsets, ExportReport report) {
+        long position = report.bytesWritten;
+        ByteBuffer trailer = ByteBuffer.allocate(4 + 4 + blockOffsets.size() * 8 + 8 + 8 + 4);
+        trailer.putInt(END_OF_BLOCKS).putInt(blockOffsets.size());
+        for (long offset : blockOffsets) {
+            trailer.putLong(offset);
+        }
+        trailer.putLong(report.rowsExported).putLong(position).putInt(COLUMNAR_MAGIC);
+        return trailer.flip();
+    }
+
+    private Chunk encodeColumnar(int first, int end) {
+        int capacity = end - first;
+        int[] epochDays = new int[capacity];
+        long[] cents = new long[capacity];
+        short[] minutes = new short[capacity];
+        byte[] codes = new byte[capacity];
+        int[] productIds = new int[capacity];
+        int[] remarkIds = new int[capacity];
+        TextTable texts = new TextTable(capacity);
+
+        int rows = 0;
+        LedgerColumns.Page page = image.scan(first);
+        for (int row = first; row < end; row++) {
+            if (row >= page.end) {
+                page = image.scan(row);
+            }
+            int i = row - page.first;
+            int day = page.epochDays[i];
+            int code = page.categoryCodes[i] & 0xFF;
+            if (!accepts(row, day, code)) {
+                continue;
+            }
+            epochDays[rows] = day;
+            cents[rows] = page.cents[i];
+            minutes[rows] = page.minutes[i];
+            codes[rows] = page.categoryCodes[i];
+            productIds[rows] = texts.idOf(page.productIds[i]);
+            int remark = page.remarkIds[i];
+            remarkIds[rows] = remark == LedgerColumns.SAME_AS_PRODUCT ? LedgerColumns.SAME_AS_PRODUCT : texts.idOf(remark);
+            rows++;
+        }
+        if (rows == 0) {
+            return new Chunk(ByteBuffer.allocate(0), 0);
+        }
+
+        byte[][] encoded = new byte[texts.size][];
+        int textBytes = 4;
+        for (int id = 0; id < texts.size; id++) {
+            encoded[id] = image.texts.get(texts.ledgerIds[id]).getBytes(StandardCharsets.UTF_8);
+            textBytes += 4 + encoded[id].length;
+        }
+        int length = 4 + rows * LedgerColumns.ROW_BYTES + textBytes;
+        ByteBuffer out = ByteBuffer.allocate(4 + length);
+        out.putInt(length).putInt(rows);
+        out.asIntBuffer().put(epochDays, 0, rows);
+        out.position(out.position() + rows * 4);
+        out.asLongBuffer().put(cents, 0, rows);
+        out.position(out.position() + rows * 8);
+        out.asShortBuffer().put(minutes, 0, rows);
+        out.position(out.position() + rows * 2);
+        out.put(codes, 0, rows);
+        out.asIntBuffer().put(productIds, 0, rows);
+        out.position(out.position() + rows * 4);
+        out.asIntBuffer().put(remarkIds, 0, rows);
+        out.position(out.position() + rows * 4);
+        out.putInt(texts.size);
+        for (byte[] text : encoded) {
+            out.putInt(text.length).put(text);
+        }
+        out.flip();
+        return new Chunk(out, rows);
+    }
+
+    /**
+     * The ledger's text ids used by one block, numbered in order of first use. An open-addressing
+     * table, since a block has at most a chunk's worth of distinct texts.
+     */
+    private static final class TextTable {
+        private final int[] keys;
+        private final int[] values;
+        private final int mask;
+        final int[] ledgerIds;
+        int size;
+
+        TextTable(int rows) {
+            int capacity = Integer.highestOneBit(Math.max(16, rows * 4) - 1) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            // Both columns of every row may be distinct
+            ledgerIds = new int[rows * 2];
+            Arrays.fill(keys, -1);
+        }
+
+        int idOf(int ledgerId) {
+            int hash = ledgerId * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (keys[slot] != -1) {
+                if (keys[slot] == ledgerId) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = ledgerId;
+            values[slot] = size;
+            ledgerIds[size] = ledgerId;
+            return size++;
+        }
+    }
+
+    private static final class Chunk {
+        final ByteBuffer bytes;
+        final int rows;
+
+        Chunk(ByteBuffer bytes, int rows) {
+            this.bytes = bytes;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Outcome of an export: where it went, how many rows and bytes, and how fast.
+     */
+    public static class ExportReport {
+        private final Path file;
+        private final Format format;
+        private long rowsExported;
+        private long bytesWritten;
+        private long elapsedNanos;
+        private boolean cancelled;
+
+        ExportReport(Path file, Format format) {
+            this.file = file;
+            this.format = format;
+        }
+
+        public Path getFile() { return file; }
+        public Format getFormat() { return format; }
+        public long getRowsExported() { return rowsExported; }
+        public long getBytesWritten() { return bytesWritten; }
+        public long getElapsedNanos() { return elapsedNanos; }
+
+        /**
+         * Whether the export was cancelled (or failed) before the file was complete, in which
+         * case nothing was written.
+         */
+        public boolean isCancelled() { return cancelled; }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos > 0 ? rowsExported / (elapsedNanos / 1e9) : 0;
+        }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNanos > 0 ? bytesWritten / 1048576.0 / (elapsedNanos / 1e9) : 0;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.loginapp;
+
+import javafx.collections.ListChangeListener;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Fingerprints of the ledger's entries for spotting rows that a re-imported, overlapping bank
+ * statement already brought in.
+ *
+ * An entry's fingerprint is a 32-bit hash of its date, amount and product with case, spaces
+ * and punctuation removed (exports of the same account disagree on those, and on the time of
+ * day). Fingerprints are kept with their number of occurrences in an open-addressing table of
+ * 5-byte slots at most 60% full, 8 to 17 bytes per distinct entry, so a million-row ledger
+ * costs about 10 MB and a lookup is O(1). Two different entries can share a fingerprint, so
+ * matches are only suspected duplicates for the user to review, never dropped silently.
+ *
+ * An import matches against a {@link Matcher}, a copy of the table taken when it starts; every
+ * match uses up one occurrence, so an export with two identical coffees on a day is only
+ * flagged twice if the ledger already has two of them.
+ */
+public class LedgerFingerprints {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Keys are never 0, which marks an empty slot
+    private static final int EMPTY = 0;
+    private static final int MAX_COUNT = 0xFF;
+
+    private final LedgerColumns columns;
+    // Normalized product hash per dictionary text of the columns, 0 until first used
+    private long[] textHashes = new long[0];
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private byte[] counts = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param loadedRows rows that came from disk; later additions are fingerprinted as they arrive
+     */
+    LedgerFingerprints(LedgerRowList entries, int loadedRows) {
+        columns = entries.getColumns();
+        addRows(0, loadedRows);
+        entries.addListener((ListChangeListener<BillingViewController.BillingEntry>) change -> {
+            while (change.next()) {
+                int from = entries.rowAt(change.getFrom());
+                // Older history being revealed was fingerprinted when the ledger was opened
+                if (change.wasAdded() && from >= loadedRows) {
+                    addRows(from, entries.rowAt(change.getTo()));
+                }
+            }
+        });
+    }
+
+    private synchronized void addRows(int from, int to) {
+        if (columns.textCount() > textHashes.length) {
+            textHashes = Arrays.copyOf(textHashes, columns.textCount());
+        }
+        for (int row = from; row < to; row++) {
+            int text = columns.productId(row);
+            long productHash = textHashes[text];
+            if (productHash == 0) {
+                productHash = productHash(columns.text(text));
+                textHashes[text] = productHash;
+            }
+            add(fingerprint(columns.epochDay(row), columns.cents(row), productHash));
+        }
+    }
+
+    private void add(int fingerprint) {
+        if (size + 1 > keys.length * 3 / 5) {
+            rehash(keys.length * 2);
+        }
+        int slot = slot(keys, fingerprint);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = fingerprint;
+            size++;
+        }
+        // Saturates; a count that high means the entry is clearly a regular one
+        if ((counts[slot] & 0xFF) < MAX_COUNT) {
+            counts[slot]++;
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        byte[] oldCounts = counts;
+        keys = new int[capacity];
+        counts = new byte[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * The slot holding the fingerprint, or the empty slot where it would go.
+     */
+    private static int slot(int[] keys, int fingerprint) {
+        int mask = keys.length - 1;
+        // Fingerprints are well mixed already, so the low bits can be used as they are
+        int slot = fingerprint & mask;
+        while (keys[slot] != EMPTY && keys[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Start matching an import against the entries in the ledger now.
+     */
+    public synchronized Matcher newImport() {
+        return new Matcher(keys.clone(), counts.clone());
+    }
+
+    static int fingerprint(LocalDate date, long cents, String product) {
+        return fingerprint((int) date.toEpochDay(), cents, productHash(product));
+    }
+
+    private static int fingerprint(int epochDay, long cents, long productHash) {
+        long hash = productHash;
+        hash = mix(hash ^ epochDay);
+        hash = mix(hash ^ cents);
+        int fingerprint = (int) (hash >>> 32);
+        return fingerprint != EMPTY ? fingerprint : 1;
+    }
+
+    /**
+     * Hash of the product's letters and digits, lower-cased; never 0.
+     */
+    static long productHash(String product) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < product.length(); i++) {
+            char c = product.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                hash = 31 * hash + Character.toLowerCase(c);
+            }
+        }
+        hash = mix(hash);
+        return hash != 0 ? hash : 1;
+    }
+
+    // Finalizer of MurmurHash3's 64-bit variant
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * The ledger's fingerprints as of the start of one import. Use from one thread.
+     */
+    public static final class Matcher {
+        private final int[] keys;
+        private final byte[] counts;
+
+        private Matcher(int[] keys, byte[] counts) {
+            this.keys = keys;
+            this.counts = counts;
+        }
+
+        /**
+         * Whether the entry looks like one the ledger already had; each existing entry can only
+         * match one imported entry.
+         */
+        public boolean claim(BillingViewController.BillingEntry entry) {
+            int slot = slot(keys, fingerprint(entry.getDate(), entry.getCents(), entry.getProduct()));
+            if (keys[slot] == EMPTY || counts[slot] == 0) {
+                return false;
+            }
+            counts[slot]--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.loginapp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cold ledger rows on disk: full pages of {@link LedgerColumns} spilled to a page file, and a
+ * least-recently-used cache of the pages read back from it.
+ *
+ * Rows never change once appended, so a page is written once, at a fixed offset, and can be
+ * read by any thread at any time. The file only holds rows for as long as the ledger is open
+ * (the store's snapshot is the durable copy) and is deleted when the cache is closed.
+ *
+ * Pages the table scrolls to or a summary needs are looked up through the cache. Queries and
+ * snapshots scan every page instead: they use a page that is already cached but do not cache
+ * what they read, so one scan does not push out the pages the table is showing. Hits, misses
+ * and scan reads are counted for tuning the budget.
+ */
+public class LedgerPageCache implements Closeable {
+
+    static final int PAGE_BYTES = LedgerColumns.PAGE_ROWS * LedgerColumns.ROW_BYTES;
+
+    private final FileChannel file;
+    private final int capacity;
+    private final Map<Integer, LedgerColumns.Page> pages;
+
+    // Guarded by this
+    private int spilledPages;
+    private long hits;
+    private long misses;
+    private long scanReads;
+
+    private LedgerPageCache(FileChannel file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+        this.pages = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, LedgerColumns.Page> eldest) {
+                return size() > LedgerPageCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Create an empty page file (replacing one left behind by a crash) with a cache of the given
+     * number of pages.
+     */
+    public static LedgerPageCache open(Path path, int capacityPages) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+        return new LedgerPageCache(file, Math.max(1, capacityPages));
+    }
+
+    /**
+     * Write the rows of the page with the given index, taken from arrays that hold them, to the
+     * file.
+     */
+    void write(int index, LedgerColumns.Page page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_BYTES).order(ByteOrder.nativeOrder());
+        int offset = (index << LedgerColumns.PAGE_SHIFT) - page.first;
+        int rows = LedgerColumns.PAGE_ROWS;
+        buffer.asIntBuffer().put(page.epochDays, offset, rows);
+        buffer.position(rows * 4);
+        buffer.asLongBuffer().put(page.cents, offset, rows);
+        buffer.position(rows * 12);
+        buffer.asShortBuffer().put(page.minutes, offset, rows);
+        buffer.position(rows * 14);
+        buffer.put(page.categoryCodes, offset, rows);
+        buffer.asIntBuffer().put(page.productIds, offset, rows);
+        buffer.position(rows * 19);
+        buffer.asIntBuffer().put(page.remarkIds, offset, rows);
+        buffer.clear();
+        long position = (long) index * PAGE_BYTES;
+        while (buffer.hasRemaining()) {
+            file.write(buffer, position + buffer.position());
+        }
+        synchronized (this) {
+            spilledPages = Math.max(spilledPages, index + 1);
+        }
+    }
+
+    /**
+     * The page with the given index, from the cache or read from disk and cached.
+     */
+    LedgerColumns.Page page(int index) {
+        synchronized (this) {
+            LedgerColumns.Page page = pages.get(index);
+            if (page != null) {
+                hits++;
+                return page;
+            }
+            misses++;
+        }
+        // Read outside the lock; if two threads miss the same page, the first one cached wins
+        LedgerColumns.Page read = read(index);
+        synchronized (this) {
+            LedgerColumns.Page raced = pages.putIfAbsent(index, read);
+            return raced != null ? raced : read;
+        }
+    }
+
+    /**
+     * The page with the given index for a sequential scan: from the cache if it is there,
+     * otherwise read from disk without caching it.
+     */
+    LedgerColumns.Page scan(int index) {
+        synchronized (this) {
+            LedgerColumns.Page page = pages.get(index);
+            if (page != null) {
+                hits++;
+                return page;
+            }
+            scanReads++;
+        }
+        return read(index);
+    }
+
+    private LedgerColumns.Page read(int index) {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_BYTES).order(ByteOrder.nativeOrder());
+        long position = (long) index * PAGE_BYTES;
+        try {
+            while (buffer.hasRemaining()) {
+                if (file.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Ledger page " + index + " is missing");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int rows = LedgerColumns.PAGE_ROWS;
+        int[] epochDays = new int[rows];
+        long[] cents = new long[rows];
+        short[] minutes = new short[rows];
+        byte[] categoryCodes = new byte[rows];
+        int[] productIds = new int[rows];
+        int[] remarkIds = new int[rows];
+        buffer.flip();
+        buffer.asIntBuffer().get(epochDays);
+        buffer.position(rows * 4);
+        buffer.asLongBuffer().get(cents);
+        buffer.position(rows * 12);
+        buffer.asShortBuffer().get(minutes);
+        buffer.position(rows * 14);
+        buffer.get(categoryCodes);
+        buffer.asIntBuffer().get(productIds);
+        buffer.position(rows * 19);
+        buffer.asIntBuffer().get(remarkIds);
+        int first = index << LedgerColumns.PAGE_SHIFT;
+        return new LedgerColumns.Page(first, first + rows, epochDays, cents, minutes, categoryCodes,
+                productIds, remarkIds);
+    }
+
+    boolean isOpen() {
+        return file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            pages.clear();
+        }
+        file.close();
+    }
+
+    public synchronized int getSpilledPages() {
+        return spilledPages;
+    }
+
+    public synchronized int getCachedPages() {
+        return pages.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getScanReads() {
+        return scanReads;
+    }
+
+    /**
+     * Approximate heap used by the cached pages.
+     */
+    public synchronized long estimatedBytes() {
+        return (long) pages.size() * PAGE_BYTES;
+    }
+
+    /**
+     * One-line summary of the counters, for the diagnostics report.
+     */
+    public synchronized String summary() {
+        long lookups = hits + misses;
+        return String.format("%,d pages of %,d rows on disk (%.1f MB), %d of %d cached; "
+                        + "%,d hits, %,d misses (%.1f%% hit rate), %,d uncached scan reads",
+                spilledPages, LedgerColumns.PAGE_ROWS, spilledPages * (double) PAGE_BYTES / (1 << 20),
+                pages.size(), capacity, hits, misses, lookups == 0 ? 0.0 : hits * 100.0 / lookups, scanReads);
+    }
+}
@@ -0,0 +1,656 @@
+package com.example.loginapp;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A structured search over the ledger, as typed into the header search box:
+ * <pre>
+ *   category:Salary amount&lt;-100 date:2024-11..2024-12 coffee
+ * </pre>
+ * <ul>
+ * <li>{@code category:name} matches categories starting with the name, ignoring case; a comma
+ * separates alternatives ({@code category:salary,cosmetics}) and quotes allow spaces
+ * ({@code category:"living costs"}).</li>
+ * <li>{@code amount} takes {@code < <= > >= =} or {@code :} with an amount in yuan, where
+ * expenses are negative, or a range {@code amount:-500..-100}.</li>
+ * <li>{@code date} takes the same operators with a year, month or day ({@code 2024},
+ * {@code 2024-11}, {@code 2024-11-03}), a range of those with optional ends
+ * ({@code date:2024-11..}), or {@code today}, {@code yesterday}, {@code week},
+ * {@code month} and {@code year} for the current calendar windows.</li>
+ * <li>Any other words are searched for in the product and remark through the
+ * {@link LedgerSearchIndex}, typo-tolerant as before.</li>
+ * </ul>
+ * All terms must hold.
+ *
+ * The text is parsed once into a plan of plain bounds per column (a day range, a cents range
+ * and a table of accepted category codes), which is evaluated over a snapshot of the
+ * {@link LedgerColumns} 64 rows at a time, one column after the other, into a bitmap of
+ * matching row ids; a block no row of which is left is skipped for the remaining columns.
+ * Large ledgers are split into chunks evaluated by the shared executor's threads alongside the
+ * caller. The {@link Result} is a {@link RowFilter} for the table and also totals its rows for
+ * the charts.
+ */
+public final class LedgerQuery {
+
+    // Ledgers smaller than this are evaluated on the calling thread only
+    private static final int PARALLEL_ROWS = 1 << 18;
+    // Rows per parallel chunk, a multiple of 64
+    private static final int CHUNK_ROWS = 1 << 16;
+    // Rows left in a block below which the next column is only read for those rows
+    private static final int SPARSE_ROWS = 8;
+    // The text part only checks the rows left by the other terms when they are at most this share
+    private static final int ON_DEMAND_TEXT_SHARE = 8;
+
+    private final String source;
+    private int minDay = Integer.MIN_VALUE;
+    private int maxDay = Integer.MAX_VALUE;
+    private long minCents = Long.MIN_VALUE;
+    private long maxCents = Long.MAX_VALUE;
+    // Lower-cased category prefixes; one list of alternatives per category term
+    private final List<List<String>> categoryTerms = new ArrayList<>();
+    private String text = "";
+
+    private LedgerQuery(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Parse a query, with date keywords relative to today.
+     *
+     * @throws IllegalArgumentException if a category, amount or date term is malformed
+     */
+    public static LedgerQuery parse(String query) {
+        return parse(query, LocalDate.now());
+    }
+
+    static LedgerQuery parse(String query, LocalDate today) {
+        LedgerQuery parsed = new LedgerQuery(query);
+        StringBuilder text = new StringBuilder();
+        for (String term : terms(query)) {
+            int op = 0;
+            while (op < term.length() && Character.isLetter(term.charAt(op))) {
+                op++;
+            }
+            String field = term.substring(0, op).toLowerCase(Locale.ROOT);
+            String operator = operator(term, op);
+            if (operator == null || !(field.equals("category") || field.equals("amount") || field.equals("date"))) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(term);
+                continue;
+            }
+            String value = unquote(term.substring(op + operator.length()));
+            if (value.isEmpty()) {
+                throw new IllegalArgumentException("Missing value after " + field + operator);
+            }
+            switch (field) {
+                case "category":
+                    if (!operator.equals(":") && !operator.equals("=")) {
+                        throw new IllegalArgumentException("category takes : or =");
+                    }
+                    parsed.addCategoryTerm(value);
+                    break;
+                case "amount":
+                    parsed.addAmountTerm(operator, value);
+                    break;
+                default:
+                    parsed.addDateTerm(operator, value, today);
+                    break;
+            }
+        }
+        parsed.text = text.toString();
+        return parsed;
+    }
+
+    /**
+     * Split on whitespace, keeping quoted parts (which may contain spaces) together.
+     */
+    private static List<String> terms(String query) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                term.append(c);
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (term.length() > 0) {
+                    terms.add(term.toString());
+                    term.setLength(0);
+                }
+            } else {
+                term.append(c);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString());
+        }
+        return terms;
+    }
+
+    private static String operator(String term, int at) {
+        for (String operator : new String[] {"<=", ">=", "<", ">", "=", ":"}) {
+            if (term.startsWith(operator, at)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    private static String unquote(String value) {
+        return value.replace("\"", "").trim();
+    }
+
+    private void addCategoryTerm(String value) {
+        List<String> alternatives = new ArrayList<>();
+        for (String name : value.split(",")) {
+            if (!name.trim().isEmpty()) {
+                alternatives.add(name.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        if (alternatives.isEmpty()) {
+            throw new IllegalArgumentException("Missing category name");
+        }
+        categoryTerms.add(alternatives);
+    }
+
+    private void addAmountTerm(String operator, String value) {
+        try {
+            int range = value.indexOf("..");
+            if (range >= 0) {
+                requireColon(operator, "amount");
+                String from = value.substring(0, range);
+                String to = value.substring(range + 2);
+                narrowCents(from.isEmpty() ? Long.MIN_VALUE : Money.parse(from), to.isEmpty() ? Long.MAX_VALUE : Money.parse(to));
+                return;
+            }
+            long cents = Money.parse(value);
+            switch (operator) {
+                case "<":
+                    narrowCents(Long.MIN_VALUE, cents - 1);
+                    break;
+                case "<=":
+                    narrowCents(Long.MIN_VALUE, cents);
+                    break;
+                case ">":
+                    narrowCents(cents + 1, Long.MAX_VALUE);
+                    break;
+                case ">=":
+                    narrowCents(cents, Long.MAX_VALUE);
+                    break;
+                default:
+                    narrowCents(cents, cents);
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an amount: " + value);
+        }
+    }
+
+    private void addDateTerm(String operator, String value, LocalDate today) {
+        int range = value.indexOf("..");
+        if (range >= 0) {
+            requireColon(operator, "date");
+            String from = value.substring(0, range);
+            String to = value.substring(range + 2);
+            narrowDays(from.isEmpty() ? Integer.MIN_VALUE : dateSpan(from, today)[0],
+                    to.isEmpty() ? Integer.MAX_VALUE : dateSpan(to, today)[1]);
+            return;
+        }
+        int[] span = dateSpan(value, today);
+        switch (operator) {
+            case "<":
+                narrowDays(Integer.MIN_VALUE, span[0] - 1);
+                break;
+            case "<=":
+                narrowDays(Integer.MIN_VALUE, span[1]);
+                break;
+            case ">":
+                narrowDays(span[1] + 1, Integer.MAX_VALUE);
+                break;
+            case ">=":
+                narrowDays(span[0], Integer.MAX_VALUE);
+                break;
+            default:
+                narrowDays(span[0], span[1]);
+                break;
+        }
+    }
+
+    private static void requireColon(String operator, String field) {
+        if (!operator.equals(":")) {
+            throw new IllegalArgumentException("A range takes " + field + ":from..to");
+        }
+    }
+
+    /**
+     * First and last epoch day of a year, month, day or keyword.
+     */
+    private static int[] dateSpan(String value, LocalDate today) {
+        LocalDate from;
+        LocalDate to;
+        String date = value.toLowerCase(Locale.ROOT).replace('/', '-').replace('.', '-');
+        try {
+            switch (date) {
+                case "today":
+                    from = to = today;
+                    break;
+                case "yesterday":
+                    from = to = today.minusDays(1);
+                    break;
+                case "week":
+                case "month":
+                case "year":
+                    LedgerAggregator.Period period = LedgerAggregator.Period.valueOf(date.toUpperCase(Locale.ROOT));
+                    from = LedgerAggregator.windowStart(period, today);
+                    to = LedgerAggregator.windowEnd(period, today);
+                    break;
+                default:
+                    String[] parts = date.split("-");
+                    if (parts.length == 1) {
+                        from = LocalDate.of(Integer.parseInt(parts[0]), 1, 1);
+                        to = from.plusYears(1).minusDays(1);
+                    } else if (parts.length == 2) {
+                        from = LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), 1);
+                        to = from.plusMonths(1).minusDays(1);
+                    } else if (parts.length == 3) {
+                        from = to = LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                                Integer.parseInt(parts[2]));
+                    } else {
+                        throw new IllegalArgumentException("Not a date: " + value);
+                    }
+                    break;
+            }
+        } catch (NumberFormatException | DateTimeException e) {
+            throw new IllegalArgumentException("Not a date: " + value);
+        }
+        return new int[] {(int) from.toEpochDay(), (int) to.toEpochDay()};
+    }
+
+    private void narrowDays(int from, int to) {
+        minDay = Math.max(minDay, from);
+        maxDay = Math.min(maxDay, to);
+    }
+
+    private void narrowCents(long from, long to) {
+        minCents = Math.max(minCents, from);
+        maxCents = Math.min(maxCents, to);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * The free-text part handed to the search index, or "" if there is none.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Whether the query has no terms at all and so would match every row.
+     */
+    public boolean isEmpty() {
+        return text.isEmpty() && categoryTerms.isEmpty() && !hasDateBounds() && !hasAmountBounds();
+    }
+
+    /**
+     * The date moved into the query's date bounds, if it lies outside them.
+     */
+    public LocalDate clamp(LocalDate date) {
+        long day = Math.max(minDay, Math.min(maxDay, date.toEpochDay()));
+        return LocalDate.ofEpochDay(day);
+    }
+
+    private boolean hasDateBounds() {
+        return minDay != Integer.MIN_VALUE || maxDay != Integer.MAX_VALUE;
+    }
+
+    private boolean hasAmountBounds() {
+        return minCents != Long.MIN_VALUE || maxCents != Long.MAX_VALUE;
+    }
+
+    /**
+     * Whether a category satisfies every category term.
+     */
+    private boolean acceptsCategory(String category) {
+        String name = category.toLowerCase(Locale.ROOT);
+        for (List<String> alternatives : categoryTerms) {
+            boolean any = false;
+            for (String prefix : alternatives) {
+                any |= name.startsWith(prefix);
+            }
+            if (!any) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run the query on the calling thread.
+     */
+    public Result evaluate(LedgerColumns columns, LedgerSearchIndex searchIndex) {
+        try {
+            return evaluateLater(columns, searchIndex).call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prepare the query to run on a background thread. The query sees the latest version of
+     * the columns at the time of this call, and the search index catches up with the same
+     * version when the query runs.
+     */
+    public Callable<Result> evaluateLater(LedgerColumns columns, LedgerSearchIndex searchIndex) {
+        LedgerColumns.Image image = columns.image();
+        return () -> new Result(this, columns, image, searchIndex);
+    }
+
+    /**
+     * Evaluate the column bounds for the rows of words [fromWord, toWord) of the bitmap and
+     * return how many rows matched.
+     */
+    private int evaluate(LedgerColumns.Image image, boolean[] categoryMatch, long[] bits, int fromWord, int toWord) {
+        if (minDay > maxDay || minCents > maxCents) {
+            return 0;
+        }
+        boolean dates = hasDateBounds();
+        boolean amounts = hasAmountBounds();
+        int matches = 0;
+        // Pages start and end on word boundaries
+        LedgerColumns.Page page = null;
+        for (int w = fromWord; w < toWord; w++) {
+            int row = w << 6;
+            if (page == null || row >= page.end) {
+                page = image.scan(row);
+            }
+            int base = row - page.first;
+            int n = Math.min(64, image.size - row);
+            long word = n == 64 ? -1L : (1L << n) - 1;
+            if (dates) {
+                word = days(page.epochDays, base, n, word);
+            }
+            if (word != 0 && categoryMatch != null) {
+                word = categories(page.categoryCodes, categoryMatch, base, n, word);
+            }
+            if (word != 0 && amounts) {
+                word = amounts(page.cents, base, n, word);
+            }
+            bits[w] = word;
+            matches += Long.bitCount(word);
+        }
+        return matches;
+    }
+
+    // Each column is checked for the whole block of 64 rows in a loop without branches on the
+    // values, unless the columns before it left only a few rows; then just those are checked.
+
+    private long days(int[] days, int base, int n, long word) {
+        // The day's offset from the lower bound, taken unsigned, is in range when it is below
+        // the limit; the sign of the difference is the match bit, with no comparison at all
+        long limit = ((maxDay - minDay) & 0xFFFFFFFFL) + 1;
+        long mask = 0;
+        if (Long.bitCount(word) <= SPARSE_ROWS) {
+            for (long rest = word; rest != 0; rest &= rest - 1) {
+                int i = Long.numberOfTrailingZeros(rest);
+                mask |= (((days[base + i] - minDay) & 0xFFFFFFFFL) - limit >>> 63) << i;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                mask |= (((days[base + i] - minDay) & 0xFFFFFFFFL) - limit >>> 63) << i;
+            }
+        }
+        return word & mask;
+    }
+
+    private static long categories(byte[] codes, boolean[] categoryMatch, int base, int n, long word) {
+        long mask = 0;
+        if (Long.bitCount(word) <= SPARSE_ROWS) {
+            for (long rest = word; rest != 0; rest &= rest - 1) {
+                int i = Long.numberOfTrailingZeros(rest);
+                mask |= (categoryMatch[codes[base + i] & 0xFF] ? 1L : 0L) << i;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                mask |= (categoryMatch[codes[base + i] & 0xFF] ? 1L : 0L) << i;
+            }
+        }
+        return word & mask;
+    }
+
+    private long amounts(long[] cents, int base, int n, long word) {
+        long mask = 0;
+        if (Long.bitCount(word) <= SPARSE_ROWS) {
+            for (long rest = word; rest != 0; rest &= rest - 1) {
+                int i = Long.numberOfTrailingZeros(rest);
+                long amount = cents[base + i];
+                mask |= (amount >= minCents & amount <= maxCents ? 1L : 0L) << i;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                long amount = cents[base + i];
+                mask |= (amount >= minCents & amount <= maxCents ? 1L : 0L) << i;
+            }
+        }
+        return word & mask;
+    }
+
+    /**
+     * Evaluate the column bounds over the whole snapshot, in parallel chunks when it is large.
+     * The calling thread works through the chunks too, so the result never waits on a worker
+     * that the executor has not started. If a chunk fails (e.g. a spilled page can no longer be
+     * read), the rest are skipped and the first failure is thrown on the calling thread.
+     */
+    private int evaluate(LedgerColumns.Image image, boolean[] categoryMatch, long[] bits) throws InterruptedException {
+        int words = bits.length;
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (image.size < PARALLEL_ROWS || threads < 2) {
+            return evaluate(image, categoryMatch, bits, 0, words);
+        }
+        int chunkWords = CHUNK_ROWS >>> 6;
+        int chunks = (words + chunkWords - 1) / chunkWords;
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicInteger matches = new AtomicInteger();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(chunks);
+        Runnable worker = () -> {
+            int chunk;
+            while (!abandoned.get() && (chunk = nextChunk.getAndIncrement()) < chunks) {
+                try {
+                    int from = chunk * chunkWords;
+                    matches.addAndGet(evaluate(image, categoryMatch, bits, from, Math.min(words, from + chunkWords)));
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                    abandoned.set(true);
+                    // Every chunk is handed out once; count the ones nobody will evaluate as done
+                    while (nextChunk.getAndIncrement() < chunks) {
+                        done.countDown();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        for (int i = 1; i < Math.min(threads, chunks); i++) {
+            TaskScheduler.executor().execute(worker);
+        }
+        try {
+            worker.run();
+            done.await();
+        } finally {
+            // A cancelled search stops handing out chunks
+            abandoned.set(true);
+        }
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error != null) {
+            throw (Error) error;
+        }
+        return matches.get();
+    }
+
+    /**
+     * The rows a query matched, as a bitmap of row ids. Rows added to the ledger after the
+     * query ran are matched on first access, like text search results.
+     */
+    public static final class Result implements RowFilter {
+        private final LedgerQuery query;
+        private final LedgerColumns columns;
+        private final LedgerSearchIndex.Result textResult;
+        private final int size;
+        private final long[] bits;
+        private final int matchCount;
+
+        private Result(LedgerQuery query, LedgerColumns columns, LedgerColumns.Image image,
+                       LedgerSearchIndex searchIndex) throws InterruptedException {
+            this.query = query;
+            this.columns = columns;
+            this.size = image.size;
+            this.bits = new long[(size + 63) >>> 6];
+
+            boolean[] categoryMatch = null;
+            if (!query.categoryTerms.isEmpty()) {
+                categoryMatch = new boolean[256];
+                for (int code = 0; code < image.categories.size(); code++) {
+                    categoryMatch[code] = query.acceptsCategory(image.categories.get(code));
+                }
+            }
+            int matches = query.evaluate(image, categoryMatch, bits);
+            if (query.text.isEmpty()) {
+                textResult = null;
+            } else {
+                // Text last. A fuzzy search of the whole index costs about as much per candidate
+                // as checking one row, so when the columns left few rows only those are checked
+                boolean onDemand = (long) matches * ON_DEMAND_TEXT_SHARE < size;
+                textResult = searchIndex.search(query.text, image, onDemand);
+                for (int w = 0; w < bits.length; w++) {
+                    long word = bits[w];
+                    for (long rest = word; rest != 0; rest &= rest - 1) {
+                        int bit = Long.numberOfTrailingZeros(rest);
+                        if (textResult.distanceOfRow((w << 6) + bit) < 0) {
+                            word &= ~(1L << bit);
+                            matches--;
+                        }
+                    }
+                    bits[w] = word;
+                }
+            }
+            this.matchCount = matches;
+        }
+
+        public LedgerQuery getQuery() {
+            return query;
+        }
+
+        @Override
+        public int getMatchCount() {
+            return matchCount;
+        }
+
+        public boolean contains(int row) {
+            return distanceOfRow(row) >= 0;
+        }
+
+        /**
+         * The text search distance of a matching row (0 without a text part), or -1.
+         */
+        @Override
+        public int distanceOfRow(int row) {
+            if (row < 0) {
+                return -1;
+            }
+            if (row < size) {
+                if ((bits[row >>> 6] & (1L << row)) == 0) {
+                    return -1;
+                }
+                return textResult != null ? textResult.distanceOfRow(row) : 0;
+            }
+            // Added since the query ran; read from the latest version of the columns
+            LedgerColumns.Image latest = columns.image();
+            if (row >= latest.size || !matches(latest, row)) {
+                return -1;
+            }
+            return textResult != null ? textResult.distanceOfRow(row) : 0;
+        }
+
+        private boolean matches(LedgerColumns.Image latest, int row) {
+            int day = latest.epochDay(row);
+            long cents = latest.cents(row);
+            return day >= query.minDay && day <= query.maxDay
+                    && cents >= query.minCents && cents <= query.maxCents
+                    && (query.categoryTerms.isEmpty() || query.acceptsCategory(latest.category(row)));
+        }
+
+        /**
+         * Ids of the matching rows as of the query, ascending.
+         */
+        public int[] rows() {
+            int[] rows = new int[matchCount];
+            int k = 0;
+            for (int w = 0; w < bits.length; w++) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    rows[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Expense and income per category of the matching rows dated in an inclusive range,
+         * the same totals the aggregator gives for the whole ledger.
+         */
+        public LedgerAggregator.Totals totals(LocalDate from, LocalDate to) {
+            long fromDay = Math.max(from.toEpochDay(), query.minDay);
+            long toDay = Math.min(to.toEpochDay(), query.maxDay);
+            LedgerColumns.Image latest = columns.image();
+            List<String> names = latest.categories;
+            long[] expense = new long[names.size()];
+            long[] income = new long[expense.length];
+            if (fromDay <= toDay) {
+                for (int w = 0; w < bits.length; w++) {
+                    for (long word = bits[w]; word != 0; word &= word - 1) {
+                        add(latest, expense, income, (w << 6) + Long.numberOfTrailingZeros(word), fromDay, toDay);
+                    }
+                }
+                for (int row = size; row < latest.size; row++) {
+                    if (distanceOfRow(row) >= 0) {
+                        add(latest, expense, income, row, fromDay, toDay);
+                    }
+                }
+            }
+            return new LedgerAggregator.Totals(from, to, names, expense, income);
+        }
+
+        private static void add(LedgerColumns.Image latest, long[] expense, long[] income, int row,
+                                long fromDay, long toDay) {
+            int day = latest.epochDay(row);
+            if (day >= fromDay && day <= toDay) {
+                long cents = latest.cents(row);
+                if (cents < 0) {
+                    expense[latest.categoryCode(row)] -= cents;
+                } else {
+                    income[latest.categoryCode(row)] += cents;
+                }
+            }
+        }
+    }
+
+}
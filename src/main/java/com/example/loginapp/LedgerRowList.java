@@ -0,0 +1,132 @@
+package com.example.loginapp;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.Collection;
+
+/**
+ * Observable, append-only list of ledger rows backed by {@link LedgerColumns}.
+ *
+ * Added entries are copied into the columns; {@link #get(int)} hands out a lightweight
+ * BillingEntry view of the row, so only rows that are actually looked at (e.g. the ones the
+ * TableView renders) ever allocate objects or JavaFX properties.
+ *
+ * Rows loaded from disk can be held back and revealed later, newest first: the list then covers
+ * only the rows from {@link #getFirstRow()} on, and revealing older rows inserts them at the
+ * front. List indices and row ids therefore differ by {@code getFirstRow()}; listeners that work
+ * on the columns translate with {@link #rowAt(int)}.
+ */
+public class LedgerRowList extends ObservableListBase<BillingViewController.BillingEntry> {
+
+    private final LedgerColumns columns;
+
+    // Rows below this are loaded but not revealed yet
+    private int firstRow;
+
+    public LedgerRowList() {
+        this(new CategoryRegistry());
+    }
+
+    public LedgerRowList(CategoryRegistry categories) {
+        columns = new LedgerColumns(categories);
+    }
+
+    public LedgerColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Row id of the first row in the list.
+     */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * Row id in the columns of the entry at the given list index (or of the end of the list).
+     */
+    public int rowAt(int index) {
+        return firstRow + index;
+    }
+
+    /**
+     * Hide every row currently in the columns, without firing a change. Only for a list nobody
+     * observes yet, right after it was loaded.
+     */
+    void holdBackLoadedRows() {
+        firstRow = columns.size();
+    }
+
+    /**
+     * Reveal up to {@code count} of the held-back rows (the most recent ones first) at the front
+     * of the list.
+     *
+     * @return the number of rows still held back
+     */
+    public int revealOlder(int count) {
+        int revealed = Math.min(count, firstRow);
+        if (revealed > 0) {
+            firstRow -= revealed;
+            beginChange();
+            nextAdd(0, revealed);
+            endChange();
+        }
+        return firstRow;
+    }
+
+    @Override
+    public BillingViewController.BillingEntry get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+        return new BillingViewController.BillingEntry(columns, firstRow + index);
+    }
+
+    @Override
+    public int size() {
+        return columns.size() - firstRow;
+    }
+
+    @Override
+    public boolean add(BillingViewController.BillingEntry entry) {
+        int index = appendRow(entry) - firstRow;
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends BillingViewController.BillingEntry> entries) {
+        if (entries.isEmpty()) {
+            return false;
+        }
+        int from = size();
+        columns.appendAll(entries);
+        beginChange();
+        nextAdd(from, size());
+        endChange();
+        return true;
+    }
+
+    /**
+     * Append rows prepared on another thread, e.g. by an import, as one change and one
+     * published version of the columns.
+     */
+    public boolean addSegment(LedgerColumns.Segment segment) {
+        if (segment.size() == 0) {
+            return false;
+        }
+        int from = size();
+        columns.append(segment);
+        beginChange();
+        nextAdd(from, size());
+        endChange();
+        return true;
+    }
+
+    private int appendRow(BillingViewController.BillingEntry entry) {
+        return columns.append(entry.getCategory(), entry.getProduct(), entry.getCents(),
+                entry.getDate(), entry.getTimeHour(), entry.getRemark());
+    }
+}
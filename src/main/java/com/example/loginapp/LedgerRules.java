@@ -0,0 +1,450 @@
+package com.example.loginapp;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.ListChangeListener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recurring entries and per-category budgets of one ledger, persisted to {@code rules.bin} in the
+ * ledger's directory.
+ *
+ * Recurring entries are not generated ahead of time: {@link #materializeThrough} adds the
+ * occurrences up to a date when a view shows the ledger up to that date, and each rule remembers
+ * how far it has been materialized, so every occurrence is added exactly once. Occurrences that
+ * are still in the future are only computed, never stored.
+ *
+ * Budgets are checked as entries are added: only the rows of each change are looked at, and the
+ * spent amount of an affected budget window is taken from the {@link LedgerAggregator}'s day
+ * buckets, so nothing rescans the ledger. When an addition takes the current window of a budget
+ * over its limit, {@link #alertProperty()} is set. Use from the FX thread only.
+ */
+public class LedgerRules {
+
+    public enum Frequency {
+        WEEKLY(ChronoUnit.WEEKS), MONTHLY(ChronoUnit.MONTHS), YEARLY(ChronoUnit.YEARS);
+
+        private final ChronoUnit unit;
+
+        Frequency(ChronoUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    private static final int FILE_MAGIC = 0x50414952; // "PAIR"
+    private static final int FILE_VERSION = 1;
+    private static final String FILE_NAME = "rules.bin";
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    // Time of day given to materialized occurrences
+    private static final String RECURRING_TIME = "00:00";
+    static final String RECURRING_REMARK = "Recurring";
+
+    private final Path file;
+    private final LedgerRowList entries;
+    private final LedgerAggregator aggregator;
+    private final List<Recurring> recurring = new ArrayList<>();
+    private final List<Budget> budgets = new ArrayList<>();
+    // Budgets by category id, rebuilt when budgets change; null where a category has none
+    private List<List<Budget>> budgetsByCategory;
+    private int nextId = 1;
+
+    private final ReadOnlyObjectWrapper<BudgetAlert> alert = new ReadOnlyObjectWrapper<>(this, "alert");
+
+    // Saves are written in the background in order; older snapshots that lose the race are dropped
+    private long savesRequested;
+    private long savedSequence;
+
+    /**
+     * @param directory the ledger directory, or null to keep the rules in memory only
+     * @param loadedRows rows that came from disk; they were checked when they were first added
+     */
+    LedgerRules(Path directory, LedgerRowList entries, LedgerAggregator aggregator, int loadedRows) {
+        this.file = directory != null ? directory.resolve(FILE_NAME) : null;
+        this.entries = entries;
+        this.aggregator = aggregator;
+        if (file != null) {
+            try {
+                load();
+            } catch (IOException e) {
+                // Start without rules rather than refusing to open the ledger
+                e.printStackTrace();
+            }
+        }
+        indexBudgets();
+
+        // Registered after the aggregator's listener, so its day buckets already include the change
+        entries.addListener((ListChangeListener<BillingViewController.BillingEntry>) change -> {
+            while (change.next()) {
+                int from = entries.rowAt(change.getFrom());
+                if (change.wasAdded() && from >= loadedRows && !budgets.isEmpty()) {
+                    checkBudgets(from, entries.rowAt(change.getTo()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Add the occurrences of all recurring rules up to and including the given date that have not
+     * been added yet.
+     *
+     * @return the number of entries added
+     */
+    public int materializeThrough(LocalDate date) {
+        List<BillingViewController.BillingEntry> added = new ArrayList<>();
+        for (Recurring rule : recurring) {
+            if (rule.materializedThrough.isBefore(date)) {
+                for (LocalDate day : rule.occurrences(rule.materializedThrough.plusDays(1), date)) {
+                    added.add(new BillingViewController.BillingEntry(rule.category, rule.product, rule.cents,
+                            day, RECURRING_TIME, RECURRING_REMARK));
+                }
+                rule.materializedThrough = date;
+            }
+        }
+        if (!added.isEmpty()) {
+            entries.addAll(added);
+            save();
+        }
+        return added.size();
+    }
+
+    private void checkBudgets(int from, int to) {
+        LedgerColumns columns = entries.getColumns();
+        LocalDate today = LocalDate.now();
+        // Expense added to each budget's current window by this change
+        Map<Budget, long[]> added = new HashMap<>();
+        for (int row = from; row < to; row++) {
+            long cents = columns.cents(row);
+            if (cents >= 0) {
+                continue;
+            }
+            int category = columns.categoryCode(row);
+            List<Budget> candidates = category < budgetsByCategory.size() ? budgetsByCategory.get(category) : null;
+            if (candidates == null) {
+                continue;
+            }
+            LocalDate date = columns.date(row);
+            for (Budget budget : candidates) {
+                // Only the window that is running now raises alerts
+                if (!date.isBefore(budget.windowStart(today)) && !date.isAfter(budget.windowEnd(today))) {
+                    added.computeIfAbsent(budget, b -> new long[1])[0] -= cents;
+                }
+            }
+        }
+        added.forEach((budget, amount) -> {
+            long spent = spent(budget, today);
+            if (spent > budget.limitCents && spent - amount[0] <= budget.limitCents) {
+                alert.set(new BudgetAlert(budget, budget.windowStart(today), budget.windowEnd(today), spent));
+            }
+        });
+    }
+
+    /**
+     * Expense so far in the budget's window containing the given date, in cents.
+     */
+    public long spent(Budget budget, LocalDate date) {
+        return aggregator.expense(budget.category, budget.windowStart(date), budget.windowEnd(date));
+    }
+
+    /**
+     * The most recent budget overrun. A new alert object is set for every overrun.
+     */
+    public ReadOnlyObjectProperty<BudgetAlert> alertProperty() {
+        return alert.getReadOnlyProperty();
+    }
+
+    public List<Recurring> getRecurring() {
+        return Collections.unmodifiableList(new ArrayList<>(recurring));
+    }
+
+    public List<Budget> getBudgets() {
+        return Collections.unmodifiableList(new ArrayList<>(budgets));
+    }
+
+    /**
+     * Add a recurring entry. Nothing is added to the ledger until it is materialized.
+     *
+     * @param cents the amount in cents, negative for an expense
+     * @param end the last day an occurrence may fall on, or null for no end
+     */
+    public Recurring addRecurring(String category, String product, long cents, LocalDate start,
+                                  Frequency frequency, LocalDate end) {
+        Recurring rule = new Recurring(nextId++, category, product, cents, start, frequency, end,
+                start.minusDays(1));
+        recurring.add(rule);
+        save();
+        return rule;
+    }
+
+    /**
+     * Stop a recurring entry. Occurrences already in the ledger stay there.
+     */
+    public void removeRecurring(Recurring rule) {
+        if (recurring.remove(rule)) {
+            save();
+        }
+    }
+
+    /**
+     * Set the limit of a category for a period, replacing the existing one for the same pair.
+     */
+    public Budget setBudget(String category, LedgerAggregator.Period period, long limitCents) {
+        budgets.removeIf(budget -> budget.category.equals(category) && budget.period == period);
+        Budget budget = new Budget(category, period, limitCents);
+        budgets.add(budget);
+        indexBudgets();
+        save();
+        return budget;
+    }
+
+    public void removeBudget(Budget budget) {
+        if (budgets.remove(budget)) {
+            indexBudgets();
+            save();
+        }
+    }
+
+    private void indexBudgets() {
+        CategoryRegistry categories = entries.getColumns().getCategories();
+        List<List<Budget>> index = new ArrayList<>();
+        for (Budget budget : budgets) {
+            int id = categories.idOf(budget.category);
+            while (id >= index.size()) {
+                index.add(null);
+            }
+            if (index.get(id) == null) {
+                index.set(id, new ArrayList<>());
+            }
+            index.get(id).add(budget);
+        }
+        budgetsByCategory = index;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unrecognized rules file: " + file);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                int id = in.readInt();
+                String category = in.readUTF();
+                String product = in.readUTF();
+                long cents = in.readLong();
+                LocalDate start = LocalDate.ofEpochDay(in.readInt());
+                Frequency frequency = Frequency.values()[in.readUnsignedByte()];
+                int end = in.readInt();
+                LocalDate materializedThrough = LocalDate.ofEpochDay(in.readInt());
+                recurring.add(new Recurring(id, category, product, cents, start, frequency,
+                        end != NO_DATE ? LocalDate.ofEpochDay(end) : null, materializedThrough));
+                nextId = Math.max(nextId, id + 1);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String category = in.readUTF();
+                LedgerAggregator.Period period = LedgerAggregator.Period.values()[in.readUnsignedByte()];
+                budgets.add(new Budget(category, period, in.readLong()));
+            }
+        } catch (NoSuchFileException e) {
+            // No rules yet
+        }
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        // Snapshot on the FX thread, write and fsync in the background
+        byte[] snapshot = snapshot();
+        long sequence = ++savesRequested;
+        TaskScheduler.executor().execute(() -> {
+            try {
+                write(sequence, snapshot);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private byte[] snapshot() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(recurring.size());
+            for (Recurring rule : recurring) {
+                out.writeInt(rule.id);
+                out.writeUTF(rule.category);
+                out.writeUTF(rule.product);
+                out.writeLong(rule.cents);
+                out.writeInt((int) rule.start.toEpochDay());
+                out.writeByte(rule.frequency.ordinal());
+                out.writeInt(rule.end != null ? (int) rule.end.toEpochDay() : NO_DATE);
+                out.writeInt((int) rule.materializedThrough.toEpochDay());
+            }
+            out.writeInt(budgets.size());
+            for (Budget budget : budgets) {
+                out.writeUTF(budget.category);
+                out.writeByte(budget.period.ordinal());
+                out.writeLong(budget.limitCents);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writers are serialized; the file is replaced atomically so a crash never leaves it half written
+    private synchronized void write(long sequence, byte[] snapshot) throws IOException {
+        if (sequence < savedSequence) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        savedSequence = sequence;
+    }
+
+    /**
+     * An entry that repeats every week, month or year from its start date. Monthly and yearly
+     * occurrences keep the start's day, clamped to the length of shorter months.
+     */
+    public static final class Recurring {
+        private final int id;
+        private final String category;
+        private final String product;
+        private final long cents;
+        private final LocalDate start;
+        private final Frequency frequency;
+        private final LocalDate end;
+        // Last day whose occurrences are in the ledger; FX thread only
+        private LocalDate materializedThrough;
+
+        Recurring(int id, String category, String product, long cents, LocalDate start, Frequency frequency,
+                  LocalDate end, LocalDate materializedThrough) {
+            this.id = id;
+            this.category = category;
+            this.product = product;
+            this.cents = cents;
+            this.start = start;
+            this.frequency = frequency;
+            this.end = end;
+            this.materializedThrough = materializedThrough;
+        }
+
+        /**
+         * Dates of the occurrences in an inclusive range, computed without walking the ones before it.
+         */
+        public List<LocalDate> occurrences(LocalDate from, LocalDate to) {
+            LocalDate last = end != null && end.isBefore(to) ? end : to;
+            List<LocalDate> dates = new ArrayList<>();
+            // Counted from the start every time so clamped months do not drift (Jan 31, Feb 28, Mar 31)
+            long n = from.isAfter(start) ? Math.max(0, frequency.unit.between(start, from) - 1) : 0;
+            for (LocalDate date = start.plus(n, frequency.unit); !date.isAfter(last);
+                 date = start.plus(++n, frequency.unit)) {
+                if (!date.isBefore(from)) {
+                    dates.add(date);
+                }
+            }
+            return dates;
+        }
+
+        /**
+         * The first occurrence after the given date, or null if the rule has ended by then.
+         */
+        public LocalDate nextAfter(LocalDate date) {
+            // Two periods ahead, in case the start was clamped to a short month
+            LocalDate horizon = date.plus(2, frequency.unit);
+            List<LocalDate> next = occurrences(date.plusDays(1), horizon);
+            return next.isEmpty() ? null : next.get(0);
+        }
+
+        public String getCategory() { return category; }
+        public String getProduct() { return product; }
+        public long getCents() { return cents; }
+        public LocalDate getStart() { return start; }
+        public Frequency getFrequency() { return frequency; }
+        public LocalDate getEnd() { return end; }
+    }
+
+    /**
+     * A limit on the expense of one category per calendar week, month or year.
+     */
+    public static final class Budget {
+        private final String category;
+        private final LedgerAggregator.Period period;
+        private final long limitCents;
+
+        Budget(String category, LedgerAggregator.Period period, long limitCents) {
+            this.category = category;
+            this.period = period;
+            this.limitCents = limitCents;
+        }
+
+        LocalDate windowStart(LocalDate date) {
+            return LedgerAggregator.windowStart(period, date);
+        }
+
+        LocalDate windowEnd(LocalDate date) {
+            return LedgerAggregator.windowEnd(period, date);
+        }
+
+        public String getCategory() { return category; }
+        public LedgerAggregator.Period getPeriod() { return period; }
+        public long getLimitCents() { return limitCents; }
+    }
+
+    /**
+     * A budget whose window went over its limit.
+     */
+    public static final class BudgetAlert {
+        private final Budget budget;
+        private final LocalDate from;
+        private final LocalDate to;
+        private final long spentCents;
+
+        BudgetAlert(Budget budget, LocalDate from, LocalDate to, long spentCents) {
+            this.budget = budget;
+            this.from = from;
+            this.to = to;
+            this.spentCents = spentCents;
+        }
+
+        public Budget getBudget() { return budget; }
+        public LocalDate getFrom() { return from; }
+        public LocalDate getTo() { return to; }
+        public long getSpentCents() { return spentCents; }
+
+        public String getMessage() {
+            return String.format("Over budget: %s this %s (%s of %s)", budget.category,
+                    budget.period.name().toLowerCase(), Money.format(spentCents), Money.format(budget.limitCents));
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.loginapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * In-memory trigram index over the product and remark text of the ledger.
+ *
+ * Product and remark are dictionary-encoded in {@link LedgerColumns}, so the index works on the
+ * dictionary's text ids rather than on rows: each distinct text is lowercased and indexed once,
+ * however many rows use it, and a query finds the matching texts, then maps rows to them through
+ * their product and remark ids. A row matches if either of its texts does, ranked by the better
+ * of the two.
+ *
+ * The index is built on the first query and then catches up with texts added since the last
+ * one, so loading a large ledger at startup does not pay for indexing, and a query only touches
+ * the posting lists of its own trigrams instead of lowercasing every text. Candidates are
+ * verified with a bounded edit distance (best match of the query against any substring of the
+ * text), which gives typo-tolerant matching ranked by distance.
+ *
+ * Queries may run on a background thread through {@link #searchLater}; the index state is
+ * guarded by the index's monitor. Rows are read from a published version of the columns
+ * ({@link LedgerColumns#image()}), never from the live arrays, so the index may be queried from
+ * any thread while rows are being added.
+ */
+public class LedgerSearchIndex {
+
+    private static final int GRAM = 3;
+
+    // Lowercased text per dictionary text id of the columns
+    private final List<String> texts = new ArrayList<>();
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    // Per-query scratch space, reused to avoid allocating per keystroke
+    private int[] hitCounts = new int[0];
+
+    private final LedgerColumns columns;
+
+    public LedgerSearchIndex(LedgerRowList ledger) {
+        this.columns = ledger.getColumns();
+    }
+
+    /**
+     * Index the texts of a snapshot of the columns added since the last query; safe on any
+     * thread. Includes rows not revealed in the list yet; they only match once they are shown.
+     */
+    private synchronized void catchUp(LedgerColumns.Image image) {
+        for (int id = texts.size(); id < image.texts.size(); id++) {
+            add(id, image.texts.get(id));
+        }
+    }
+
+    private void add(int id, String original) {
+        String text = original.toLowerCase(Locale.ROOT);
+        texts.add(text);
+
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            IntList list = postings.computeIfAbsent(gramKey(text, i), k -> new IntList());
+            // A gram repeated within one text only needs one posting
+            if (list.size == 0 || list.last() != id) {
+                list.add(id);
+            }
+        }
+    }
+
+    /**
+     * Run a query over the rows added so far and return its ranked matches; on any thread.
+     */
+    public Result search(String query) {
+        return search(query, columns.image(), false);
+    }
+
+    /**
+     * Prepare a query to run on a background thread. The rows added so far are captured here,
+     * as the latest version of the columns, and indexed by the returned work along with the
+     * query itself.
+     */
+    public Callable<Result> searchLater(String query) {
+        LedgerColumns.Image image = columns.image();
+        return () -> search(query, image, false);
+    }
+
+    /**
+     * Run a query on any thread, over the rows up to the end of a snapshot of the columns. With
+     * {@code onDemand} texts are only matched when the result is asked about a row that uses
+     * them, which is cheaper for callers that look at a few rows, such as the ones a
+     * {@link LedgerQuery}'s other terms left; the match count is then unknown (-1).
+     */
+    Result search(String query, LedgerColumns.Image image, boolean onDemand) {
+        catchUp(image);
+        String q = query.trim().toLowerCase(Locale.ROOT);
+        if (onDemand) {
+            return new Result(q, image, new int[0], new int[0], -1, maxEdits(q.length()));
+        }
+        int maxEdits = maxEdits(q.length());
+        int[] textDistances = matchTexts(q, maxEdits);
+        // Rows by their texts, read a page at a time
+        int[] rowDistances = new int[image.size];
+        int matches = 0;
+        for (int row = 0; row < image.size; ) {
+            LedgerColumns.Page page = image.scan(row);
+            int end = Math.min(image.size, page.end);
+            for (; row < end; row++) {
+                int at = row - page.first;
+                int remark = page.remarkIds[at];
+                int distance = best(textDistances[page.productIds[at]],
+                        remark == LedgerColumns.SAME_AS_PRODUCT ? -1 : textDistances[remark]);
+                rowDistances[row] = distance;
+                if (distance >= 0) {
+                    matches++;
+                }
+            }
+        }
+        return new Result(q, image, textDistances, rowDistances, matches, maxEdits);
+    }
+
+    /**
+     * Edit distance of each indexed text's best match, or -1 where it did not match.
+     */
+    private synchronized int[] matchTexts(String q, int maxEdits) {
+        int[] distances = new int[texts.size()];
+        Arrays.fill(distances, -1);
+        if (q.isEmpty()) {
+            return distances;
+        }
+        int grams = q.length() - GRAM + 1;
+
+        if (grams <= 0) {
+            // Too short for trigrams: plain substring test on the pre-lowercased texts
+            for (int id = 0; id < texts.size(); id++) {
+                if (texts.get(id).contains(q)) {
+                    distances[id] = 0;
+                }
+            }
+            return distances;
+        }
+
+        // Count shared trigrams per text; a text within k edits shares at least grams - 3k of them
+        if (hitCounts.length < texts.size()) {
+            hitCounts = new int[Math.max(texts.size(), hitCounts.length * 2)];
+        }
+        IntList touched = new IntList();
+        for (int i = 0; i < grams; i++) {
+            IntList list = postings.get(gramKey(q, i));
+            if (list == null) {
+                continue;
+            }
+            for (int p = 0; p < list.size; p++) {
+                int id = list.values[p];
+                if (hitCounts[id]++ == 0) {
+                    touched.add(id);
+                }
+            }
+        }
+
+        int minShared = grams - GRAM * maxEdits;
+        for (int t = 0; t < touched.size; t++) {
+            int id = touched.values[t];
+            if (hitCounts[id] >= minShared) {
+                int distance = substringDistance(q, texts.get(id), maxEdits);
+                if (distance <= maxEdits) {
+                    distances[id] = distance;
+                }
+            }
+            hitCounts[id] = 0;
+        }
+        return distances;
+    }
+
+    private int matchDistance(String q, int maxEdits, int id) {
+        String text = texts.get(id);
+        if (q.length() < GRAM) {
+            return text.contains(q) ? 0 : -1;
+        }
+        int distance = substringDistance(q, text, maxEdits);
+        return distance <= maxEdits ? distance : -1;
+    }
+
+    /**
+     * The better of two distances, where -1 means no match.
+     */
+    private static int best(int a, int b) {
+        return a < 0 ? b : (b < 0 ? a : Math.min(a, b));
+    }
+
+    /**
+     * Allowed typos for a query length, capped so the trigram filter still needs at least one shared gram.
+     */
+    static int maxEdits(int length) {
+        int wanted = length <= 4 ? 0 : (length <= 8 ? 1 : 2);
+        int grams = length - GRAM + 1;
+        return Math.max(0, Math.min(wanted, (grams - 1) / GRAM));
+    }
+
+    /**
+     * Smallest edit distance between the query and any substring of the text (Sellers' algorithm).
+     * Distances above the limit are reported as limit + 1.
+     */
+    static int substringDistance(String query, String text, int limit) {
+        if (text.contains(query)) {
+            return 0;
+        }
+        int m = query.length();
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int i = 0; i <= m; i++) {
+            previous[i] = i;
+        }
+        int best = m;
+        for (int j = 1; j <= text.length(); j++) {
+            char c = text.charAt(j - 1);
+            current[0] = 0;
+            for (int i = 1; i <= m; i++) {
+                int cost = query.charAt(i - 1) == c ? 0 : 1;
+                current[i] = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+            }
+            best = Math.min(best, current[m]);
+            if (best == 0) {
+                return 0;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return best <= limit ? best : limit + 1;
+    }
+
+    private static long gramKey(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    /**
+     * Matches of one query by row id, usable as the table's {@link RowFilter} and for ranking
+     * the matches.
+     */
+    public class Result implements RowFilter {
+        private static final int UNKNOWN = -2;
+
+        private final String query;
+        private final int maxEdits;
+        private final int matchCount;
+        // Per row of the image the query ran over, and per text id; rows and texts added later
+        // are matched on first access
+        private final int[] rowDistances;
+        private int[] textDistances;
+        private volatile LedgerColumns.Image image;
+
+        private Result(String query, LedgerColumns.Image image, int[] textDistances, int[] rowDistances,
+                       int matchCount, int maxEdits) {
+            this.query = query;
+            this.image = image;
+            this.textDistances = textDistances;
+            this.rowDistances = rowDistances;
+            this.matchCount = matchCount;
+            this.maxEdits = maxEdits;
+        }
+
+        public String getQuery() { return query; }
+        @Override
+        public int getMatchCount() { return matchCount; }
+
+        /**
+         * Edit distance of the entry's best match, or -1 if it did not match.
+         * Entries added after the query ran are matched on first access, so a live search
+         * keeps up with imports without refiltering the whole ledger.
+         */
+        public int distanceOf(BillingViewController.BillingEntry entry) {
+            return distanceOfRow(entry.getRow());
+        }
+
+        /**
+         * {@link #distanceOf} by row id.
+         */
+        @Override
+        public int distanceOfRow(int row) {
+            if (row < 0 || query.isEmpty()) {
+                return -1;
+            }
+            // Rows the query itself covered need no lock
+            if (row < rowDistances.length) {
+                return rowDistances[row];
+            }
+            LedgerColumns.Image rows = image;
+            if (row >= rows.size) {
+                rows = columns.image();
+                image = rows;
+            }
+            int product = rows.productId(row);
+            int remark = rows.remarkId(row);
+            return best(textDistance(product), remark == product ? -1 : textDistance(remark));
+        }
+
+        private int textDistance(int id) {
+            int[] distances = textDistances;
+            if (id < distances.length && distances[id] != UNKNOWN) {
+                return distances[id];
+            }
+            synchronized (LedgerSearchIndex.this) {
+                if (id >= texts.size()) {
+                    catchUp(columns.image());
+                }
+                if (id >= textDistances.length) {
+                    int oldLength = textDistances.length;
+                    textDistances = Arrays.copyOf(textDistances, Math.max(id + 1, oldLength * 2));
+                    Arrays.fill(textDistances, oldLength, textDistances.length, UNKNOWN);
+                }
+                if (textDistances[id] == UNKNOWN) {
+                    textDistances[id] = matchDistance(query, maxEdits, id);
+                }
+                return textDistances[id];
+            }
+        }
+    }
+
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int last() {
+            return values[size - 1];
+        }
+    }
+}
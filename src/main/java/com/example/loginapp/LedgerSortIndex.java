@@ -0,0 +1,214 @@
+package com.example.loginapp;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Precomputed sort orders over the rows of {@link LedgerColumns}, one per sortable column.
+ *
+ * An order is an array of row ids, ascending by the column's key with ties in row order, built
+ * the first time it is asked for. Later requests only sort the rows appended since and merge
+ * them in, so sorting a large table never compares BillingEntry objects or their properties.
+ * Text columns are ordered by the rank of their dictionary ids; new strings do not change the
+ * relative order of existing ones, so merging stays valid as the dictionaries grow.
+ */
+public class LedgerSortIndex {
+
+    public enum Key {
+        TIME, PRICE, CATEGORY, PRODUCT, REMARK
+    }
+
+    private final LedgerColumns columns;
+    private final Map<Key, Order> orders = new EnumMap<>(Key.class);
+
+    // Dictionary id -> position in sorted text order, rebuilt when the dictionary grows
+    private int[] categoryRanks = new int[0];
+    private int[] textRanks = new int[0];
+
+    public LedgerSortIndex(LedgerColumns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Row ids of all rows in ascending key order. The array is owned by the index and only valid
+     * up to {@code columns.size()} and until the next call.
+     */
+    public int[] order(Key key) {
+        Order order = orders.computeIfAbsent(key, k -> new Order());
+        int size = columns.size();
+        if (order.indexedRows < size) {
+            updateRanks(key);
+            order.rows = merge(key, order.rows, order.indexedRows, sortedRange(key, order.indexedRows, size));
+            order.indexedRows = size;
+        }
+        return order.rows;
+    }
+
+    /**
+     * Sort a subset of the rows (ascending row ids) by key, e.g. the rows of a date range, without
+     * building the full order. Ties stay in row order.
+     */
+    public int[] sort(Key key, int[] rows) {
+        updateRanks(key);
+        return sortRows(key, rows.clone());
+    }
+
+    private void updateRanks(Key key) {
+        if (key == Key.CATEGORY && categoryRanks.length < columns.categoryCount()) {
+            categoryRanks = ranks(columns.categoryCount(), columns::categoryName);
+        } else if ((key == Key.PRODUCT || key == Key.REMARK) && textRanks.length < columns.textCount()) {
+            textRanks = ranks(columns.textCount(), columns::text);
+        }
+    }
+
+    private static int[] ranks(int count, IntFunction<String> values) {
+        Integer[] ids = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+        }
+        Comparator<String> textOrder = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+        Arrays.sort(ids, (a, b) -> textOrder.compare(values.apply(a), values.apply(b)));
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            ranks[ids[i]] = i;
+        }
+        return ranks;
+    }
+
+    long keyOf(Key key, int row) {
+        switch (key) {
+            case TIME:
+                return columns.epochDay(row) * 1440L + columns.minuteOfDay(row);
+            case PRICE:
+                return columns.cents(row);
+            case CATEGORY:
+                return categoryRanks[columns.categoryCode(row)];
+            case PRODUCT:
+                return textRanks[columns.productId(row)];
+            default: // REMARK
+                return textRanks[columns.remarkId(row)];
+        }
+    }
+
+    /**
+     * Rows [from, to) sorted by key (stable, so ties stay in row order).
+     */
+    private int[] sortedRange(Key key, int from, int to) {
+        int[] rows = new int[to - from];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = from + i;
+        }
+        return sortRows(key, rows);
+    }
+
+    /**
+     * Sort ascending row ids by key in place (stable, so ties stay in row order).
+     */
+    private int[] sortRows(Key key, int[] rows) {
+        int n = rows.length;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = keyOf(key, rows[i]);
+        }
+        // Bottom-up merge sort of (key, row) pairs held in parallel primitive arrays
+        int[] rowBuffer = new int[n];
+        long[] keyBuffer = new long[n];
+        for (int width = 1; width < n; width <<= 1) {
+            for (int lo = 0; lo < n - width; lo += width << 1) {
+                int mid = lo + width;
+                int hi = Math.min(lo + (width << 1), n);
+                if (keys[mid - 1] <= keys[mid]) {
+                    continue; // already in order
+                }
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    if (keys[j] < keys[i]) {
+                        keyBuffer[k] = keys[j];
+                        rowBuffer[k++] = rows[j++];
+                    } else {
+                        keyBuffer[k] = keys[i];
+                        rowBuffer[k++] = rows[i++];
+                    }
+                }
+                while (i < mid) {
+                    keyBuffer[k] = keys[i];
+                    rowBuffer[k++] = rows[i++];
+                }
+                while (j < hi) {
+                    keyBuffer[k] = keys[j];
+                    rowBuffer[k++] = rows[j++];
+                }
+                System.arraycopy(keyBuffer, lo, keys, lo, hi - lo);
+                System.arraycopy(rowBuffer, lo, rows, lo, hi - lo);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Merge newly sorted rows into an existing order; existing rows win ties (they are older).
+     */
+    private int[] merge(Key key, int[] existing, int existingSize, int[] added) {
+        if (existingSize == 0) {
+            return added;
+        }
+        if ((long) added.length * (32 - Integer.numberOfLeadingZeros(existingSize)) < existingSize) {
+            return insert(key, existing, existingSize, added);
+        }
+        int[] merged = new int[existingSize + added.length];
+        int i = 0, j = 0, k = 0;
+        long addedKey = added.length > 0 ? keyOf(key, added[0]) : 0;
+        while (i < existingSize && j < added.length) {
+            if (addedKey < keyOf(key, existing[i])) {
+                merged[k++] = added[j++];
+                if (j < added.length) {
+                    addedKey = keyOf(key, added[j]);
+                }
+            } else {
+                merged[k++] = existing[i++];
+            }
+        }
+        System.arraycopy(existing, i, merged, k, existingSize - i);
+        k += existingSize - i;
+        System.arraycopy(added, j, merged, k, added.length - j);
+        return merged;
+    }
+
+    /**
+     * Merge a few newly sorted rows by binary search for their places, which reads the keys of
+     * a logarithmic number of existing rows (possibly spilled to disk) rather than all of them.
+     */
+    private int[] insert(Key key, int[] existing, int existingSize, int[] added) {
+        int[] merged = new int[existingSize + added.length];
+        int from = 0;
+        int k = 0;
+        for (int row : added) {
+            long addedKey = keyOf(key, row);
+            // After every existing row with the same key
+            int lo = from;
+            int hi = existingSize;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keyOf(key, existing[mid]) <= addedKey) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            System.arraycopy(existing, from, merged, k, lo - from);
+            k += lo - from;
+            merged[k++] = row;
+            from = lo;
+        }
+        System.arraycopy(existing, from, merged, k, existingSize - from);
+        return merged;
+    }
+
+    private static class Order {
+        int[] rows = new int[0];
+        int indexedRows;
+    }
+}
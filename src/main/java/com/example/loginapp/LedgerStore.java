@@ -0,0 +1,608 @@
+package com.example.loginapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe on-disk storage for the ledger columns.
+ *
+ * Layout of the store directory:
+ * <ul>
+ *     <li>{@code snapshot-G.bin} - all rows up to and including journal generation G, written to a
+ *     temporary file, fsynced and atomically renamed into place; the highest G wins</li>
+ *     <li>{@code journal-N.bin} - append-only records for generations N &gt; G, each record framed
+ *     by its length and a CRC so a torn write at the tail is detected and dropped</li>
+ * </ul>
+ *
+ * Opening the store memory-maps the snapshot, bulk-copies the columns (moving the oldest pages
+ * of a ledger with a heap budget straight to its page file) and replays only the journal tail. Appends are encoded on the caller's thread and written by a single writer thread
+ * that fsyncs once per drained batch (group commit). Snapshots are written by the same thread, so
+ * they are ordered with the appends that precede them.
+ *
+ * If the writer fails to write, nothing appended afterwards reaches the disk. The failure is
+ * passed once to the failure listener and thrown by {@link #flush} and {@link #close}.
+ */
+public class LedgerStore implements Closeable {
+
+    private static final int SNAPSHOT_MAGIC = 0x50414953; // "PAIS"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    // Compact once this many rows have been journaled since the last snapshot
+    private static final int SNAPSHOT_THRESHOLD = 50_000;
+    private static final int MAX_GROUP_COMMIT = 256;
+
+    private final Path directory;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    // Owned by the writer thread after open()
+    private FileChannel journal;
+    private long generation;
+
+    private int rowsSinceSnapshot;
+    private long loadNanos;
+    private int replayedRows;
+    private volatile IOException failure;
+    private volatile Consumer<IOException> failureListener;
+
+    private LedgerStore(Path directory) {
+        this.directory = directory;
+        this.writer = new Thread(this::writeLoop, "ledger-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Open (or create) the store in the given directory and load its content into the empty columns.
+     */
+    public static LedgerStore open(Path directory, LedgerColumns columns) throws IOException {
+        Files.createDirectories(directory);
+        LedgerStore store = new LedgerStore(directory);
+        long start = System.nanoTime();
+
+        TreeMap<Long, Path> snapshots = store.listFiles(SNAPSHOT_PREFIX);
+        long snapshotGeneration = 0;
+        if (!snapshots.isEmpty()) {
+            snapshotGeneration = snapshots.lastKey();
+            store.loadSnapshot(snapshots.lastEntry().getValue(), columns);
+            for (Path older : snapshots.headMap(snapshotGeneration).values()) {
+                deleteQuietly(older);
+            }
+        }
+
+        TreeMap<Long, Path> journals = store.listFiles(JOURNAL_PREFIX);
+        long lastGeneration = snapshotGeneration + 1;
+        for (Map.Entry<Long, Path> entry : journals.entrySet()) {
+            if (entry.getKey() <= snapshotGeneration) {
+                // Already folded into the snapshot; left behind by a crash during compaction
+                deleteQuietly(entry.getValue());
+                continue;
+            }
+            store.replayedRows += store.replayJournal(entry.getValue(), columns);
+            lastGeneration = entry.getKey();
+        }
+
+        store.generation = lastGeneration;
+        store.journal = FileChannel.open(store.journalPath(lastGeneration),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        store.rowsSinceSnapshot = store.replayedRows;
+        store.loadNanos = System.nanoTime() - start;
+        store.writer.start();
+        return store;
+    }
+
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public int getReplayedRows() {
+        return replayedRows;
+    }
+
+    /**
+     * Called on the writer thread with the first write failure.
+     */
+    public void setFailureListener(Consumer<IOException> listener) {
+        this.failureListener = listener;
+    }
+
+    /**
+     * Journal rows [from, to) of the columns. Returns immediately; the write is group-committed.
+     * Does nothing once the writer has failed.
+     */
+    public void append(LedgerColumns columns, int from, int to) {
+        if (failure != null) {
+            return;
+        }
+        queue.add(Job.records(encodeRows(columns, from, to)));
+        rowsSinceSnapshot += to - from;
+        if (rowsSinceSnapshot >= SNAPSHOT_THRESHOLD) {
+            requestSnapshot(columns);
+        }
+    }
+
+    /**
+     * Write a compacted snapshot of everything appended so far and start a fresh journal.
+     */
+    public void requestSnapshot(LedgerColumns columns) {
+        if (failure != null) {
+            return;
+        }
+        rowsSinceSnapshot = 0;
+        queue.add(Job.snapshot(columns.image()));
+    }
+
+    /**
+     * Wait until everything queued so far is on disk.
+     *
+     * @throws IOException if the writer has failed, with the failure as its cause
+     */
+    public void flush() throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        queue.add(Job.flush(done));
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing ledger", e);
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            queue.add(Job.STOP);
+            try {
+                writer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            journal.close();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Ledger storage failed", failure);
+        }
+    }
+
+    // ---- writer thread ----
+
+    private void writeLoop() {
+        List<Job> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_GROUP_COMMIT - 1);
+            try {
+                boolean dirty = false;
+                for (Job job : batch) {
+                    if (job == Job.STOP) {
+                        if (dirty) {
+                            journal.force(false);
+                        }
+                        return;
+                    } else if (job.records != null) {
+                        while (job.records.hasRemaining()) {
+                            journal.write(job.records);
+                        }
+                        dirty = true;
+                    } else if (job.image != null) {
+                        if (dirty) {
+                            journal.force(false);
+                            dirty = false;
+                        }
+                        writeSnapshot(job.image);
+                    } else if (job.flushed != null) {
+                        if (dirty) {
+                            journal.force(false);
+                            dirty = false;
+                        }
+                        job.flushed.countDown();
+                    }
+                }
+                // One fsync for every record in the batch
+                if (dirty) {
+                    journal.force(false);
+                }
+            } catch (IOException e) {
+                boolean first = failure == null;
+                if (first) {
+                    failure = e;
+                }
+                e.printStackTrace();
+                for (Job job : batch) {
+                    if (job.flushed != null) {
+                        job.flushed.countDown();
+                    }
+                }
+                Consumer<IOException> listener = failureListener;
+                if (first && listener != null) {
+                    listener.accept(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void writeSnapshot(LedgerColumns.Image image) throws IOException {
+        long coveredGeneration = generation;
+        Path target = directory.resolve(SNAPSHOT_PREFIX + coveredGeneration + FILE_SUFFIX);
+        Path tmp = directory.resolve(SNAPSHOT_PREFIX + coveredGeneration + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(coveredGeneration).putInt(image.size);
+            buffer = writeStrings(out, buffer, image.categories);
+            buffer = writeStrings(out, buffer, image.texts);
+
+            drain(out, buffer);
+
+            // The columns follow one after the other. They are filled in a page of rows at a
+            // time, so each page spilled to disk is read once
+            long start = out.position();
+            int n = image.size;
+            ByteBuffer block = ByteBuffer.allocate(LedgerColumns.PAGE_ROWS * 8);
+            for (int row = 0; row < n; ) {
+                LedgerColumns.Page page;
+                try {
+                    page = image.scan(row);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                int count = Math.min(Math.min(n, page.end), row + LedgerColumns.PAGE_ROWS) - row;
+                int at = row - page.first;
+                block.clear();
+                block.asIntBuffer().put(page.epochDays, at, count);
+                writeAt(out, block, count * 4, start + row * 4L);
+                block.asLongBuffer().put(page.cents, at, count);
+                writeAt(out, block, count * 8, start + n * 4L + row * 8L);
+                block.asShortBuffer().put(page.minutes, at, count);
+                writeAt(out, block, count * 2, start + n * 12L + row * 2L);
+                block.put(page.categoryCodes, at, count);
+                writeAt(out, block, count, start + n * 14L + row);
+                block.asIntBuffer().put(page.productIds, at, count);
+                writeAt(out, block, count * 4, start + n * 15L + row * 4L);
+                block.asIntBuffer().put(page.remarkIds, at, count);
+                writeAt(out, block, count * 4, start + n * 19L + row * 4L);
+                row += count;
+            }
+            out.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        // The snapshot now covers the current journal; continue in a new generation
+        journal.close();
+        generation = coveredGeneration + 1;
+        journal = FileChannel.open(journalPath(generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        deleteQuietly(journalPath(coveredGeneration));
+        for (Path older : listFiles(SNAPSHOT_PREFIX).headMap(coveredGeneration).values()) {
+            deleteQuietly(older);
+        }
+    }
+
+    // A snapshot that is still memory-mapped cannot be deleted on some platforms; it is retried on the next start
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static ByteBuffer writeStrings(FileChannel out, ByteBuffer buffer, List<String> values) throws IOException {
+        buffer = ensure(out, buffer, 4);
+        buffer.putInt(values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer = ensure(out, buffer, 4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer ensure(FileChannel out, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        drain(out, buffer);
+        buffer.clear();
+        return buffer.capacity() >= bytes ? buffer : ByteBuffer.allocate(bytes);
+    }
+
+    /**
+     * Write the first bytes of the block at a position of the file and clear the block.
+     */
+    private static void writeAt(FileChannel out, ByteBuffer block, int bytes, long position) throws IOException {
+        block.position(0);
+        block.limit(bytes);
+        while (block.hasRemaining()) {
+            out.write(block, position + block.position());
+        }
+        block.clear();
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    // ---- loading ----
+
+    private void loadSnapshot(Path file, LedgerColumns columns) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt() != SNAPSHOT_MAGIC || map.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognised ledger snapshot: " + file);
+            }
+            map.getLong(); // generation, already known from the file name
+            int n = map.getInt();
+            byte[] codes = categoryCodes(readStrings(map), columns.getCategories());
+            List<String> texts = readStrings(map);
+            int start = map.position();
+
+            // With a heap budget the oldest rows go from the mapping to the page file a page at a
+            // time and only the rest is loaded, so the whole ledger is never in memory at once
+            int base = columns.rowsToSpill(n);
+            LedgerPageCache pages = columns.getPageCache();
+            for (int first = 0; first < base; first += LedgerColumns.PAGE_ROWS) {
+                pages.write(first >>> LedgerColumns.PAGE_SHIFT,
+                        readRows(map, start, n, first, LedgerColumns.PAGE_ROWS, codes));
+            }
+            LedgerColumns.Page resident = readRows(map, start, n, base, n - base, codes);
+
+            columns.restore(new LedgerColumns.Image(n, base, resident.epochDays, resident.cents, resident.minutes,
+                    resident.categoryCodes, resident.productIds, resident.remarkIds,
+                    columns.getCategories().names(), texts, pages));
+        }
+    }
+
+    /**
+     * The registry id of each of a snapshot's category codes, or null if they are the same (as
+     * they are unless the categories file was lost or the snapshot is older than it).
+     */
+    private static byte[] categoryCodes(List<String> names, CategoryRegistry categories) {
+        byte[] codes = new byte[names.size()];
+        boolean same = true;
+        for (int code = 0; code < codes.length; code++) {
+            int id = categories.idOf(names.get(code));
+            codes[code] = (byte) id;
+            same &= id == code;
+        }
+        return same ? null : codes;
+    }
+
+    /**
+     * Rows [first, first + count) of a snapshot of n rows whose columns start at the given
+     * position, in bulk copies straight out of the mapping, with category codes translated
+     * through the given table unless it is null.
+     */
+    private static LedgerColumns.Page readRows(ByteBuffer map, int start, int n, int first, int count, byte[] codes) {
+        int[] epochDays = new int[count];
+        long[] cents = new long[count];
+        short[] minutes = new short[count];
+        byte[] categoryCodes = new byte[count];
+        int[] productIds = new int[count];
+        int[] remarkIds = new int[count];
+        map.position(start + first * 4);
+        map.asIntBuffer().get(epochDays);
+        map.position(start + n * 4 + first * 8);
+        map.asLongBuffer().get(cents);
+        map.position(start + n * 12 + first * 2);
+        map.asShortBuffer().get(minutes);
+        map.position(start + n * 14 + first);
+        map.get(categoryCodes);
+        if (codes != null) {
+            for (int i = 0; i < count; i++) {
+                categoryCodes[i] = codes[categoryCodes[i] & 0xFF];
+            }
+        }
+        map.position(start + n * 15 + first * 4);
+        map.asIntBuffer().get(productIds);
+        map.position(start + n * 19 + first * 4);
+        map.asIntBuffer().get(remarkIds);
+        return new LedgerColumns.Page(first, first + count, epochDays, cents, minutes, categoryCodes,
+                productIds, remarkIds);
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> values = new ArrayList<>(count);
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            if (scratch.length < length) {
+                scratch = new byte[length];
+            }
+            buffer.get(scratch, 0, length);
+            values.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    /**
+     * Files named prefix-N.bin, keyed by generation N.
+     */
+    private TreeMap<Long, Path> listFiles(String prefix) throws IOException {
+        TreeMap<Long, Path> result = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    result.put(Long.parseLong(name.substring(prefix.length(), name.length() - FILE_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replay complete records and cut off a torn or corrupt tail left by a crash.
+     */
+    private int replayJournal(Path file, LedgerColumns columns) throws IOException {
+        int rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Journals are bounded by the snapshot threshold, so the tail is read into the heap
+            // rather than mapped (a mapped file could not be truncated on every platform)
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading
+            }
+            buffer.flip();
+            CRC32 crc = new CRC32();
+            long valid = 0;
+            while (buffer.remaining() >= 8) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length <= 0 || buffer.remaining() < length + 4) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice();
+                payload.limit(length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                buffer.position(buffer.position() + length);
+                if ((int) crc.getValue() != buffer.getInt()) {
+                    buffer.position(start);
+                    break;
+                }
+                decodeRow(payload, columns);
+                rows++;
+                valid = buffer.position();
+            }
+            if (valid < size) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return rows;
+    }
+
+    // ---- record encoding ----
+
+    private static ByteBuffer encodeRows(LedgerColumns columns, int from, int to) {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(64, (to - from) * 96));
+        CRC32 crc = new CRC32();
+        for (int row = from; row < to; row++) {
+            byte[] category = columns.category(row).getBytes(StandardCharsets.UTF_8);
+            byte[] product = columns.product(row).getBytes(StandardCharsets.UTF_8);
+            String remarkText = columns.remark(row);
+            byte[] remark = remarkText.equals(columns.product(row)) ? null : remarkText.getBytes(StandardCharsets.UTF_8);
+
+            int length = 4 + 8 + 2 + 4 + category.length + 4 + product.length + 4 + (remark != null ? remark.length : 0);
+            if (buffer.remaining() < length + 8) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length + 8));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            buffer.putInt(length);
+            int payloadStart = buffer.position();
+            buffer.putInt(columns.epochDay(row))
+                  .putLong(columns.cents(row))
+                  .putShort((short) columns.minuteOfDay(row))
+                  .putInt(category.length).put(category)
+                  .putInt(product.length).put(product)
+                  .putInt(remark != null ? remark.length : -1);
+            if (remark != null) {
+                buffer.put(remark);
+            }
+            crc.reset();
+            crc.update(buffer.array(), payloadStart, length);
+            buffer.putInt((int) crc.getValue());
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void decodeRow(ByteBuffer payload, LedgerColumns columns) {
+        int epochDay = payload.getInt();
+        long cents = payload.getLong();
+        short minutes = payload.getShort();
+        String category = readString(payload);
+        String product = readString(payload);
+        int remarkLength = payload.getInt();
+        String remark = product;
+        if (remarkLength >= 0) {
+            byte[] bytes = new byte[remarkLength];
+            payload.get(bytes);
+            remark = new String(bytes, StandardCharsets.UTF_8);
+        }
+        columns.append(category, product, cents, LocalDate.ofEpochDay(epochDay), LedgerColumns.formatMinutes(minutes), remark);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return directory.resolve(JOURNAL_PREFIX + journalGeneration + FILE_SUFFIX);
+    }
+
+    /**
+     * Unit of work for the writer thread: journal records, a snapshot, a flush barrier or stop.
+     */
+    private static class Job {
+        static final Job STOP = new Job(null, null, null);
+
+        final ByteBuffer records;
+        final LedgerColumns.Image image;
+        final CountDownLatch flushed;
+
+        private Job(ByteBuffer records, LedgerColumns.Image image, CountDownLatch flushed) {
+            this.records = records;
+            this.image = image;
+            this.flushed = flushed;
+        }
+
+        static Job records(ByteBuffer records) {
+            return new Job(records, null, null);
+        }
+
+        static Job snapshot(LedgerColumns.Image image) {
+            return new Job(null, image, null);
+        }
+
+        static Job flush(CountDownLatch flushed) {
+            return new Job(null, null, flushed);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.example.loginapp;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * What the billing table shows: the ledger rows in sort order, optionally narrowed by a search
+ * and a date range.
+ *
+ * The model holds row ids, not entries. Sorting takes a precomputed order from
+ * {@link LedgerSortIndex}, filtering walks that order and checks each row against the search
+ * result by id, and a search without a sorted column is ranked with a primitive sort. Entries
+ * are only created in {@link #get(int)}, i.e. for the rows the TableView actually renders, and a
+ * small window of them is cached so the same visible row keeps the same entry (and its
+ * properties) while it stays on screen. In the natural order with no search the model is a
+ * pass-through view of the ledger and needs no array at all. A date range starts from the rows
+ * that {@link LedgerDateIndex} has for it, so a narrow range never walks the whole ledger.
+ */
+public class LedgerTableModel extends ObservableListBase<BillingViewController.BillingEntry> {
+
+    // Recently rendered rows; a power of two well above a screenful
+    private static final int WINDOW = 512;
+
+    private final LedgerRowList ledger;
+    private final LedgerSortIndex sortIndex;
+    // Built on first use of a date range
+    private LedgerDateIndex dateIndex;
+    private final BillingViewController.BillingEntry[] window = new BillingViewController.BillingEntry[WINDOW];
+
+    private LedgerSortIndex.Key sortKey;
+    private boolean ascending = true;
+    private RowFilter filter;
+    private LocalDate rangeFrom;
+    private LocalDate rangeTo;
+
+    // Row ids in display order, or null while the model passes the ledger through unchanged
+    private int[] rows;
+    private int size;
+    // The ledger's first row when the rows were last computed
+    private int firstRowShown;
+
+    public LedgerTableModel(LedgerRowList ledger) {
+        this.ledger = ledger;
+        this.sortIndex = new LedgerSortIndex(ledger.getColumns());
+        this.size = ledger.size();
+        this.firstRowShown = ledger.getFirstRow();
+        ledger.addListener((ListChangeListener<BillingViewController.BillingEntry>) this::ledgerChanged);
+    }
+
+    /**
+     * Sort by a column, or restore the natural (or search rank) order with a null key.
+     */
+    public void sortBy(LedgerSortIndex.Key key, boolean ascending) {
+        if (key == sortKey && (key == null || ascending == this.ascending)) {
+            return;
+        }
+        this.sortKey = key;
+        this.ascending = ascending;
+        update(true);
+    }
+
+    /**
+     * Only show rows matching a search or query (null shows everything).
+     */
+    public void setFilter(RowFilter filter) {
+        this.filter = filter;
+        update(false);
+    }
+
+    /**
+     * Only show rows dated in an inclusive range (nulls show every date).
+     */
+    public void setDateRange(LocalDate from, LocalDate to) {
+        if (Objects.equals(from, rangeFrom) && Objects.equals(to, rangeTo)) {
+            return;
+        }
+        rangeFrom = from;
+        rangeTo = to;
+        update(false);
+    }
+
+    public LocalDate getRangeFrom() {
+        return rangeFrom;
+    }
+
+    public LocalDate getRangeTo() {
+        return rangeTo;
+    }
+
+    @Override
+    public BillingViewController.BillingEntry get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return entry(rows != null ? rows[index] : ledger.rowAt(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private BillingViewController.BillingEntry entry(int row) {
+        int slot = row & (WINDOW - 1);
+        BillingViewController.BillingEntry entry = window[slot];
+        if (entry == null || entry.getRow() != row) {
+            entry = new BillingViewController.BillingEntry(ledger.getColumns(), row);
+            window[slot] = entry;
+        }
+        return entry;
+    }
+
+    private void ledgerChanged(ListChangeListener.Change<? extends BillingViewController.BillingEntry> change) {
+        if (sortKey == null && filter == null && !hasDateRange()) {
+            // Pass-through: the ledger's own change applies as is
+            size = ledger.size();
+            firstRowShown = ledger.getFirstRow();
+            beginChange();
+            while (change.next()) {
+                if (change.wasAdded()) {
+                    nextAdd(change.getFrom(), change.getTo());
+                }
+            }
+            endChange();
+        } else {
+            update(false);
+        }
+    }
+
+    /**
+     * Recompute the displayed rows. A pure reordering is reported as a permutation (keeping the
+     * selection); anything else as a replacement of the whole list.
+     */
+    private void update(boolean reorderOnly) {
+        int[] oldRows = rows;
+        int oldSize = size;
+        int oldFirstRow = firstRowShown;
+        firstRowShown = ledger.getFirstRow();
+        rows = computeRows();
+        size = rows != null ? rows.length : ledger.size();
+
+        if (reorderOnly && size == oldSize) {
+            fireChange(new PermutationChange(permutation(oldRows, oldSize)));
+        } else {
+            fireChange(new ReplaceAllChange(oldRows, oldSize, oldFirstRow));
+        }
+    }
+
+    private int[] computeRows() {
+        int firstRow = ledger.getFirstRow();
+        int end = ledger.getColumns().size();
+        if (sortKey == null && filter == null && !hasDateRange()) {
+            return null;
+        }
+        // Rows in the date range, or null for all rows
+        int[] candidates = hasDateRange() ? rowsInRange(firstRow) : null;
+        if (sortKey == null) {
+            return filter != null ? rankedMatches(candidates, firstRow, end) : candidates;
+        }
+
+        if (candidates != null && candidates.length < (end - firstRow) / 4) {
+            // A narrow range: sorting its rows beats walking the full order
+            int[] sorted = sortIndex.sort(sortKey, matching(candidates));
+            if (!ascending) {
+                for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+                    int row = sorted[i];
+                    sorted[i] = sorted[j];
+                    sorted[j] = row;
+                }
+            }
+            return sorted;
+        }
+
+        int[] order = sortIndex.order(sortKey);
+        int[] result = new int[end - firstRow];
+        int count = 0;
+        long fromDay = rangeFrom != null ? rangeFrom.toEpochDay() : Long.MIN_VALUE;
+        long toDay = rangeTo != null ? rangeTo.toEpochDay() : Long.MAX_VALUE;
+        LedgerColumns columns = ledger.getColumns();
+        for (int i = 0; i < end; i++) {
+            int row = order[ascending ? i : end - 1 - i];
+            // Rows held back while the ledger is still streaming in are not shown yet
+            if (row >= firstRow && (filter == null || filter.distanceOfRow(row) >= 0)
+                    && columns.epochDay(row) >= fromDay && columns.epochDay(row) <= toDay) {
+                result[count++] = row;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private boolean hasDateRange() {
+        return rangeFrom != null || rangeTo != null;
+    }
+
+    private int[] rowsInRange(int firstRow) {
+        if (dateIndex == null) {
+            dateIndex = new LedgerDateIndex(ledger.getColumns());
+        }
+        int[] rows = dateIndex.rows(rangeFrom != null ? rangeFrom : LocalDate.MIN, rangeTo != null ? rangeTo : LocalDate.MAX);
+        // Ascending, so the rows still held back are a prefix
+        int start = 0;
+        while (start < rows.length && rows[start] < firstRow) {
+            start++;
+        }
+        return start == 0 ? rows : Arrays.copyOfRange(rows, start, rows.length);
+    }
+
+    /**
+     * The candidate rows that also match the search, if there is one.
+     */
+    private int[] matching(int[] candidates) {
+        if (filter == null) {
+            return candidates;
+        }
+        int[] result = new int[candidates.length];
+        int count = 0;
+        for (int row : candidates) {
+            if (filter.distanceOfRow(row) >= 0) {
+                result[count++] = row;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Search matches among the candidates (or all rows), closest first and then most recently
+     * added.
+     */
+    private int[] rankedMatches(int[] candidates, int firstRow, int end) {
+        int total = candidates != null ? candidates.length : end - firstRow;
+        long[] keys = new long[Math.min(total, Math.max(16, filter.getMatchCount()))];
+        int count = 0;
+        for (int i = 0; i < total; i++) {
+            int row = candidates != null ? candidates[i] : firstRow + i;
+            int distance = filter.distanceOfRow(row);
+            if (distance >= 0) {
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, keys.length * 2);
+                }
+                keys[count++] = (long) distance << 32 | (Integer.MAX_VALUE - row);
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = Integer.MAX_VALUE - (int) keys[i];
+        }
+        return result;
+    }
+
+    private int rowAt(int[] rowIds, int index) {
+        return rowIds != null ? rowIds[index] : ledger.rowAt(index);
+    }
+
+    /**
+     * For each old index, its index in the current order.
+     */
+    private int[] permutation(int[] oldRows, int oldSize) {
+        int firstRow = ledger.getFirstRow();
+        int[] indexOfRow = new int[ledger.getColumns().size() - firstRow];
+        for (int i = 0; i < size; i++) {
+            indexOfRow[rowAt(rows, i) - firstRow] = i;
+        }
+        int[] permutation = new int[oldSize];
+        for (int i = 0; i < oldSize; i++) {
+            permutation[i] = indexOfRow[rowAt(oldRows, i) - firstRow];
+        }
+        return permutation;
+    }
+
+    /**
+     * The previous content, materialized only if a listener actually looks at it.
+     */
+    private class RemovedRows extends AbstractList<BillingViewController.BillingEntry> {
+        private final int[] oldRows;
+        private final int oldSize;
+        private final int oldFirstRow;
+
+        RemovedRows(int[] oldRows, int oldSize, int oldFirstRow) {
+            this.oldRows = oldRows;
+            this.oldSize = oldSize;
+            this.oldFirstRow = oldFirstRow;
+        }
+
+        @Override
+        public BillingViewController.BillingEntry get(int index) {
+            int row = oldRows != null ? oldRows[index] : oldFirstRow + index;
+            return new BillingViewController.BillingEntry(ledger.getColumns(), row);
+        }
+
+        @Override
+        public int size() {
+            return oldSize;
+        }
+    }
+
+    /**
+     * One sub-change replacing everything. Built by hand because the change builder would copy
+     * every removed element.
+     */
+    private class ReplaceAllChange extends ListChangeListener.Change<BillingViewController.BillingEntry> {
+        private final List<BillingViewController.BillingEntry> removed;
+        private boolean onChange;
+
+        ReplaceAllChange(int[] oldRows, int oldSize, int oldFirstRow) {
+            super(LedgerTableModel.this);
+            this.removed = new RemovedRows(oldRows, oldSize, oldFirstRow);
+        }
+
+        @Override
+        public boolean next() {
+            if (onChange) {
+                return false;
+            }
+            onChange = true;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            onChange = false;
+        }
+
+        @Override
+        public int getFrom() {
+            return 0;
+        }
+
+        @Override
+        public int getTo() {
+            return size;
+        }
+
+        @Override
+        public List<BillingViewController.BillingEntry> getRemoved() {
+            return removed;
+        }
+
+        @Override
+        protected int[] getPermutation() {
+            return new int[0];
+        }
+    }
+
+    private class PermutationChange extends ListChangeListener.Change<BillingViewController.BillingEntry> {
+        private final int[] permutation;
+        private boolean onChange;
+
+        PermutationChange(int[] permutation) {
+            super(LedgerTableModel.this);
+            this.permutation = permutation;
+        }
+
+        @Override
+        public boolean next() {
+            if (onChange) {
+                return false;
+            }
+            onChange = true;
+            return true;
+        }
+
+        @Override
+        public void reset() {
+            onChange = false;
+        }
+
+        @Override
+        public int getFrom() {
+            return 0;
+        }
+
+        @Override
+        public int getTo() {
+            return size;
+        }
+
+        @Override
+        public List<BillingViewController.BillingEntry> getRemoved() {
+            return List.of();
+        }
+
+        @Override
+        protected int[] getPermutation() {
+            return permutation;
+        }
+    }
+}
@@ -1,26 +1,20 @@
 package com.example.loginapp;
 
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.paint.Color;
-import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
 
 /**
  * 登录和注册界面的控制器类
  */
 public class LoginRegisterController {
 
-    // 用于模拟数据存储的用户映射
-    private static Map<String, UserAccount> userAccounts = new HashMap<>();
-
     // 注册界面组件
     @FXML
     private TextField emailPhone;
@@ -37,17 +31,18 @@ public class LoginRegisterController {
     @FXML
     private Hyperlink verificationLink;
 
+    // 提交按钮（登录界面和注册界面各有一个）
+    @FXML
+    private Button loginButton;
+
+    @FXML
+    private Button createAccountButton;
+
     /**
      * 初始化控制器
-     * 添加一些测试账户
      */
     @FXML
     public void initialize() {
-        // 添加一个测试账户（如果还没有添加）
-        if (userAccounts.isEmpty()) {
-            userAccounts.put("123", new UserAccount("123", "123", "test@example.com"));
-        }
-
         // Add event handler for verification link if it exists (it's only in the login view)
         if (verificationLink != null) {
             verificationLink.setOnAction(this::handleVerificationCode);
@@ -74,18 +69,23 @@ public class LoginRegisterController {
             return;
         }
 
-        if (userAccounts.containsKey(phone)) {
-            showMessage("Account already exists", true);
-            return;
-        }
-
-        // 创建新账户
-        userAccounts.put(phone, new UserAccount(phone, pwd, ""));
-        showMessage("Registration successful!", false);
-        clearFields();
+        // 密码哈希很慢，在后台线程执行
+        runCredentialTask(UiMetrics.Action.REGISTER, new Task<CredentialStore.Account>() {
+            @Override
+            protected CredentialStore.Account call() throws Exception {
+                return CredentialStore.getInstance().register(phone, pwd.toCharArray(), "");
+            }
+        }, account -> {
+            if (account == null) {
+                showMessage("Account already exists", true);
+                return;
+            }
+            showMessage("Registration successful!", false);
+            clearFields();
 
-        // 切换到登录界面
-        navigateToLogin(event);
+            // 切换到登录界面
+            navigateToLogin(event);
+        });
     }
 
     /**
@@ -102,30 +102,63 @@ public class LoginRegisterController {
             return;
         }
 
-        UserAccount account = userAccounts.get(phone);
+        runCredentialTask(UiMetrics.Action.LOGIN, new Task<SignIn>() {
+            @Override
+            protected SignIn call() throws Exception {
+                CredentialStore.Account account = CredentialStore.getInstance().authenticate(phone, pwd.toCharArray());
+                // 验证通过后在同一后台线程加载该用户的账本
+                return account != null ? new SignIn(account, Ledger.open(account.getLedgerDirectory())) : null;
+            }
+        }, signIn -> {
+            if (signIn == null) {
+                showMessage("Invalid phone or password", true);
+                return;
+            }
 
-        if (account == null || !account.getPassword().equals(pwd)) {
-            showMessage("Invalid phone or password", true);
-            return;
-        }
+            // 切换到账单界面
+            try {
+                Ledger.activate(signIn.ledger);
+                Session.getCurrent().setAccount(signIn.account);
+                password.clear();
+                ViewManager.getInstance().show(ViewManager.View.BILLING);
+            } catch (UncheckedIOException e) {
+                e.printStackTrace();
+                showMessage("Error loading billing view", true);
+            }
+        });
+    }
 
-        // 切换到账单界面
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/BillingView.fxml"));
-            Parent billingView = loader.load();
+    /**
+     * Run a register or login check on a background thread, with the submit button disabled,
+     * and hand the result to {@code onSuccess} on the FX thread.
+     */
+    private <T> void runCredentialTask(UiMetrics.Action action, Task<T> task, Consumer<T> onSuccess) {
+        setBusy(true);
+        showMessage("Please wait...", false);
+        long start = System.nanoTime();
+        task.setOnSucceeded(e -> {
+            setBusy(false);
+            showMessage("", false);
+            onSuccess.accept(task.getValue());
+            UiMetrics.recordSince(action, start);
+        });
+        task.setOnFailed(e -> {
+            setBusy(false);
+            Throwable error = task.getException();
+            error.printStackTrace();
+            // e.g. a ledger whose store cannot be read or written; signing in would lose every change
+            showMessage(error instanceof IOException ? "Could not open the ledger: " + error.getMessage()
+                    : "Could not open the account", true);
+        });
 
-            // 获取控制器并设置用户名
-            BillingViewController billingController = loader.getController();
-            billingController.setUsername(phone);
+        TaskScheduler.submit(task);
+    }
 
-            // 切换到账单界面
-            Scene scene = new Scene(billingView, 1000, 600); // Use consistent dimensions
-            Stage stage = (Stage) ((javafx.scene.Node) event.getSource()).getScene().getWindow();
-            stage.setScene(scene);
-            stage.show();
-        } catch (IOException e) {
-            e.printStackTrace();
-            showMessage("Error loading billing view", true);
+    private void setBusy(boolean busy) {
+        for (Button button : new Button[]{loginButton, createAccountButton}) {
+            if (button != null) {
+                button.setDisable(busy);
+            }
         }
     }
 
@@ -135,12 +168,8 @@ public class LoginRegisterController {
     @FXML
     private void switchToRegister(ActionEvent event) {
         try {
-            Parent registerView = FXMLLoader.load(getClass().getResource("/fxml/RegisterView.fxml"));
-            Scene scene = new Scene(registerView, 1000, 600); // Use consistent dimensions
-            Stage stage = (Stage) ((javafx.scene.Node) event.getSource()).getScene().getWindow();
-            stage.setScene(scene);
-            stage.show();
-        } catch (IOException e) {
+            ViewManager.getInstance().show(ViewManager.View.REGISTER);
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
         }
     }
@@ -151,12 +180,8 @@ public class LoginRegisterController {
     @FXML
     private void navigateToLogin(ActionEvent event) {
         try {
-            Parent loginView = FXMLLoader.load(getClass().getResource("/fxml/LoginView.fxml"));
-            Scene scene = new Scene(loginView, 1000, 600); // Use consistent dimensions
-            Stage stage = (Stage) ((javafx.scene.Node) event.getSource()).getScene().getWindow();
-            stage.setScene(scene);
-            stage.show();
-        } catch (IOException e) {
+            ViewManager.getInstance().show(ViewManager.View.LOGIN);
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
         }
     }
@@ -205,29 +230,15 @@ public class LoginRegisterController {
     }
 
     /**
-     * 用户账户类（内部类）
+     * 登录结果：账户和已加载的账本
      */
-    private static class UserAccount {
-        private String username;
-        private String password;
-        private String email;
-
-        public UserAccount(String username, String password, String email) {
-            this.username = username;
-            this.password = password;
-            this.email = email;
-        }
-
-        public String getUsername() {
-            return username;
-        }
-
-        public String getPassword() {
-            return password;
-        }
+    private static class SignIn {
+        final CredentialStore.Account account;
+        final Ledger ledger;
 
-        public String getEmail() {
-            return email;
+        SignIn(CredentialStore.Account account, Ledger ledger) {
+            this.account = account;
+            this.ledger = ledger;
         }
     }
 }
\ No newline at end of file
@@ -1,9 +1,7 @@
 package com.example.loginapp;
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
 /**
@@ -13,19 +11,39 @@ public class MainApp extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
+        StartupTimeline.mark("toolkit started");
+
         // 加载登录界面FXML文件
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/LoginView.fxml"));
-        Parent root = loader.load();
+        // The view manager keeps one scene and swaps its root on navigation
+        ViewManager views = ViewManager.init(primaryStage, ViewManager.View.LOGIN);
+        StartupTimeline.mark("login view loaded");
+        UiMetrics.install(primaryStage.getScene());
 
-        // 设置场景和窗口标题
-        Scene scene = new Scene(root, 1000, 600);
+        // 设置窗口标题
         primaryStage.setTitle("PurseAI");
-        primaryStage.setScene(scene);
         primaryStage.setResizable(false);
+
+        // Nothing else competes with the login screen for the CPU until its first frame is up
+        StartupTimeline.whenFirstFrameShown(primaryStage.getScene(), () -> {
+            // Read the account store and load the password hash classes while the user types
+            TaskScheduler.executor().execute(CredentialStore::getInstance);
+            // Load the views (FXML, images, controllers) the user goes to after logging in
+            views.preload(ViewManager.View.BILLING, ViewManager.View.SUMMARY)
+                    .thenRun(() -> Platform.runLater(StartupTimeline::finish));
+        });
         primaryStage.show();
+        StartupTimeline.mark("stage shown");
+    }
+
+    @Override
+    public void stop() {
+        // Make sure journaled ledger entries reach the disk before exit
+        Ledger.shutdown();
+        TaskScheduler.shutdown();
     }
 
     public static void main(String[] args) {
+        StartupTimeline.mark("main");
         launch(args);
     }
 }
\ No newline at end of file
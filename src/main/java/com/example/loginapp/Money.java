@@ -0,0 +1,130 @@
+package com.example.loginapp;
+
+/**
+ * Amounts of money as a {@code long} count of cents (fen), the representation used by the
+ * ledger columns, the entries, the aggregator and the import.
+ *
+ * Sums of cents are exact at any ledger size, unlike sums of doubles. Parsing works on the
+ * decimal text directly, and formatting writes the digits into a per-thread buffer, so
+ * rendering a price cell allocates nothing but the resulting String.
+ */
+public final class Money {
+
+    public static final char YUAN = '¥';
+
+    // Sign, currency symbol, 19 digits, 6 group separators and the decimal point
+    private static final int MAX_LENGTH = 32;
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MAX_LENGTH]);
+
+    private Money() {
+    }
+
+    /**
+     * Parse an amount such as {@code -200}, {@code 18,800.00}, {@code ¥12.5} or {@code +3.456}
+     * into cents. Currency symbols, thousands separators, whitespace and explicit plus signs are
+     * ignored; more than two decimals are rounded half away from zero.
+     *
+     * @throws NumberFormatException if the text is not a decimal amount or does not fit
+     */
+    public static long parse(CharSequence text) {
+        boolean negative = false;
+        boolean digits = false;
+        boolean point = false;
+        int decimals = 0;
+        long cents = 0;
+        int roundingDigit = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (decimals < 2) {
+                    if (cents > (Long.MAX_VALUE - 9) / 10) {
+                        throw new NumberFormatException("Amount out of range: " + text);
+                    }
+                    cents = cents * 10 + (c - '0');
+                    if (point) {
+                        decimals++;
+                    }
+                } else if (roundingDigit < 0) {
+                    roundingDigit = c - '0';
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if (c == '-' && !digits && !negative) {
+                negative = true;
+            } else if (c != YUAN && c != ',' && c != '+' && !Character.isWhitespace(c)) {
+                throw new NumberFormatException("Invalid amount: " + text);
+            }
+        }
+        if (!digits) {
+            throw new NumberFormatException("Missing amount: " + text);
+        }
+        for (; decimals < 2; decimals++) {
+            if (cents > Long.MAX_VALUE / 10) {
+                throw new NumberFormatException("Amount out of range: " + text);
+            }
+            cents *= 10;
+        }
+        if (roundingDigit >= 5) {
+            cents++;
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * The amount with an explicit sign, as the billing table shows it: {@code +¥18800.00},
+     * {@code -¥200.00}. Zero is shown as an income.
+     */
+    public static String formatSigned(long cents) {
+        char[] buffer = BUFFER.get();
+        int start = write(buffer, cents, false);
+        buffer[--start] = YUAN;
+        buffer[--start] = cents < 0 ? '-' : '+';
+        return new String(buffer, start, MAX_LENGTH - start);
+    }
+
+    /**
+     * The amount with thousands separators, as totals are shown: {@code ¥18,800.00},
+     * {@code -¥1,200.50}.
+     */
+    public static String format(long cents) {
+        char[] buffer = BUFFER.get();
+        int start = write(buffer, cents, true);
+        buffer[--start] = YUAN;
+        if (cents < 0) {
+            buffer[--start] = '-';
+        }
+        return new String(buffer, start, MAX_LENGTH - start);
+    }
+
+    /**
+     * The amount in yuan, for charts and other consumers that need a double. Never sum these.
+     */
+    public static double toYuan(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * Write the unsigned digits of the amount right-aligned into the buffer and return where
+     * they start. Works on the negative magnitude so that Long.MIN_VALUE needs no special case.
+     */
+    private static int write(char[] buffer, long cents, boolean grouped) {
+        long rest = cents < 0 ? cents : -cents;
+        int pos = MAX_LENGTH;
+        buffer[--pos] = (char) ('0' - rest % 10);
+        rest /= 10;
+        buffer[--pos] = (char) ('0' - rest % 10);
+        rest /= 10;
+        buffer[--pos] = '.';
+        int integerDigits = 0;
+        do {
+            if (grouped && integerDigits > 0 && integerDigits % 3 == 0) {
+                buffer[--pos] = ',';
+            }
+            buffer[--pos] = (char) ('0' - rest % 10);
+            rest /= 10;
+            integerDigits++;
+        } while (rest != 0);
+        return pos;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.loginapp;
+
+/**
+ * Ledger rows picked by a search, by row id, each with a rank for ordering the matches.
+ * Implemented by text search results and by structured {@link LedgerQuery} results, so the
+ * table can show either.
+ */
+public interface RowFilter {
+
+    /**
+     * Rank of the row among the matches, lower first, or -1 if it did not match.
+     */
+    int distanceOfRow(int row);
+
+    /**
+     * Number of rows that matched when the search ran.
+     */
+    int getMatchCount();
+}
@@ -0,0 +1,169 @@
+package com.example.loginapp;
+
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Window;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The Saving panel: recurring entries and category budgets of the current ledger.
+ */
+public final class RulesPanel {
+
+    private RulesPanel() {
+    }
+
+    public static void show(Window owner) {
+        LedgerRules rules = Ledger.getCurrent().getRules();
+        // Same categories as the radio buttons of the Billing view
+        List<String> categories = Ledger.getCurrent().getCategories().names();
+        LocalDate today = LocalDate.now();
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.initOwner(owner);
+        dialog.setTitle("Saving");
+        dialog.setHeaderText("Recurring entries and budgets");
+
+        // Recurring entries
+        ListView<LedgerRules.Recurring> recurringList = new ListView<>();
+        recurringList.setPrefHeight(160);
+        recurringList.setCellFactory(list -> new ListCell<LedgerRules.Recurring>() {
+            @Override
+            protected void updateItem(LedgerRules.Recurring rule, boolean empty) {
+                super.updateItem(rule, empty);
+                if (empty || rule == null) {
+                    setText(null);
+                } else {
+                    LocalDate next = rule.nextAfter(today);
+                    setText(String.format("%s  %s, %s  %s  (next: %s)", capitalize(rule.getFrequency().name()),
+                            rule.getCategory(), rule.getProduct(), Money.formatSigned(rule.getCents()),
+                            next != null ? next : "ended"));
+                }
+            }
+        });
+
+        ChoiceBox<String> recurringCategory = new ChoiceBox<>(FXCollections.observableArrayList(categories));
+        recurringCategory.setValue(categories.get(0));
+        TextField product = new TextField();
+        product.setPromptText("Product");
+        TextField amount = new TextField();
+        amount.setPromptText("Amount, - for expense");
+        amount.setPrefColumnCount(10);
+        DatePicker start = new DatePicker(today);
+        ChoiceBox<LedgerRules.Frequency> frequency = new ChoiceBox<>(
+                FXCollections.observableArrayList(LedgerRules.Frequency.values()));
+        frequency.setValue(LedgerRules.Frequency.MONTHLY);
+        Button addRecurring = new Button("Add");
+        Button removeRecurring = new Button("Remove");
+
+        // Budgets
+        ListView<LedgerRules.Budget> budgetList = new ListView<>();
+        budgetList.setPrefHeight(120);
+        budgetList.setCellFactory(list -> new ListCell<LedgerRules.Budget>() {
+            @Override
+            protected void updateItem(LedgerRules.Budget budget, boolean empty) {
+                super.updateItem(budget, empty);
+                if (empty || budget == null) {
+                    setText(null);
+                } else {
+                    long spent = rules.spent(budget, today);
+                    setText(String.format("%s per %s: %s of %s%s", budget.getCategory(),
+                            budget.getPeriod().name().toLowerCase(), Money.format(spent),
+                            Money.format(budget.getLimitCents()), spent > budget.getLimitCents() ? "  (over)" : ""));
+                }
+            }
+        });
+
+        ChoiceBox<String> budgetCategory = new ChoiceBox<>(FXCollections.observableArrayList(categories));
+        budgetCategory.setValue(categories.get(0));
+        ChoiceBox<LedgerAggregator.Period> period = new ChoiceBox<>(
+                FXCollections.observableArrayList(LedgerAggregator.Period.values()));
+        period.setValue(LedgerAggregator.Period.MONTH);
+        TextField limit = new TextField();
+        limit.setPromptText("Limit");
+        limit.setPrefColumnCount(10);
+        Button setBudget = new Button("Set");
+        Button removeBudget = new Button("Remove");
+
+        Runnable refresh = () -> {
+            recurringList.getItems().setAll(rules.getRecurring());
+            budgetList.getItems().setAll(rules.getBudgets());
+        };
+        refresh.run();
+
+        addRecurring.setOnAction(event -> {
+            try {
+                long cents = Money.parse(amount.getText());
+                if (product.getText().trim().isEmpty() || start.getValue() == null) {
+                    dialog.setHeaderText("Please fill in all fields");
+                    return;
+                }
+                rules.addRecurring(recurringCategory.getValue(), product.getText().trim(), cents, start.getValue(),
+                        frequency.getValue(), null);
+                // The ledger is on screen up to today, so past occurrences are due now
+                int added = rules.materializeThrough(today);
+                dialog.setHeaderText(added > 0 ? added + " past occurrences added" : "Recurring entry added");
+                product.clear();
+                amount.clear();
+                refresh.run();
+            } catch (NumberFormatException e) {
+                dialog.setHeaderText("Please enter a valid amount");
+            }
+        });
+        removeRecurring.setOnAction(event -> {
+            LedgerRules.Recurring selected = recurringList.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                rules.removeRecurring(selected);
+                refresh.run();
+            }
+        });
+        setBudget.setOnAction(event -> {
+            try {
+                long cents = Money.parse(limit.getText());
+                if (cents <= 0) {
+                    dialog.setHeaderText("The limit must be positive");
+                    return;
+                }
+                rules.setBudget(budgetCategory.getValue(), period.getValue(), cents);
+                limit.clear();
+                refresh.run();
+            } catch (NumberFormatException e) {
+                dialog.setHeaderText("Please enter a valid limit");
+            }
+        });
+        removeBudget.setOnAction(event -> {
+            LedgerRules.Budget selected = budgetList.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                rules.removeBudget(selected);
+                refresh.run();
+            }
+        });
+
+        VBox content = new VBox(8,
+                new Label("Recurring entries"), recurringList,
+                new HBox(8, recurringCategory, product, amount, start, frequency, addRecurring, removeRecurring),
+                new Label("Budgets"), budgetList,
+                new HBox(8, budgetCategory, period, limit, setBudget, removeBudget));
+        content.setPadding(new Insets(10));
+        dialog.getDialogPane().setContent(content);
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+        dialog.showAndWait();
+    }
+
+    private static String capitalize(String name) {
+        return name.charAt(0) + name.substring(1).toLowerCase();
+    }
+}
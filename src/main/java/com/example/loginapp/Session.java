@@ -0,0 +1,52 @@
+package com.example.loginapp;
+
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+/**
+ * State shared by all views for the signed-in user.
+ */
+public class Session {
+
+    private static final Session current = new Session();
+
+    private final StringProperty username = new SimpleStringProperty("Username");
+    private CredentialStore.Account account;
+
+    public static Session getCurrent() {
+        return current;
+    }
+
+    public StringProperty usernameProperty() {
+        return username;
+    }
+
+    public String getUsername() {
+        return username.get();
+    }
+
+    public void setUsername(String username) {
+        this.username.set(username);
+    }
+
+    /**
+     * The signed-in account, or null before login
+     */
+    public CredentialStore.Account getAccount() {
+        return account;
+    }
+
+    public void setAccount(CredentialStore.Account account) {
+        this.account = account;
+        setUsername(account != null ? account.getUsername() : "Username");
+    }
+
+    /**
+     * Sign out: unload the user's ledger from memory and go back to the login view.
+     */
+    public void logout() {
+        Ledger.unload();
+        setAccount(null);
+        ViewManager.getInstance().show(ViewManager.View.LOGIN);
+    }
+}
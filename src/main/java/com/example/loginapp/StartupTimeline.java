@@ -0,0 +1,77 @@
+package com.example.loginapp;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timestamps of the startup phases, in ms since the JVM started, printed as one line once
+ * startup is complete (the views the user needs after login are loaded).
+ *
+ * With {@code -Dpurseai.exitAfterStartup=true} the app exits at that point, which is how the
+ * CDS training run of the {@code cds} Maven profile and startup measurements use it.
+ */
+public final class StartupTimeline {
+
+    private static final boolean EXIT_AFTER_STARTUP = Boolean.getBoolean("purseai.exitAfterStartup");
+
+    // JVM start on the System.nanoTime() scale; ProcessHandle avoids loading JMX this early
+    private static final long jvmStartNanos = System.nanoTime() - 1_000_000L
+            * (System.currentTimeMillis() - ProcessHandle.current().info().startInstant()
+                    .map(instant -> instant.toEpochMilli()).orElse(System.currentTimeMillis()));
+
+    private static final List<String> phases = new ArrayList<>();
+    private static final List<Long> times = new ArrayList<>();
+    private static boolean firstFrameShown;
+
+    private StartupTimeline() {
+    }
+
+    /**
+     * Note that a startup phase has just completed.
+     */
+    public static synchronized void mark(String phase) {
+        phases.add(phase);
+        times.add(System.nanoTime());
+    }
+
+    /**
+     * Mark the first frame of the scene, then run the deferred startup work on the FX thread
+     * after that pulse has finished.
+     */
+    public static void whenFirstFrameShown(Scene scene, Runnable deferred) {
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                if (!firstFrameShown) {
+                    firstFrameShown = true;
+                    mark("first frame");
+                    Platform.runLater(deferred);
+                }
+            }
+        });
+    }
+
+    /**
+     * Mark the end of startup and log the timeline.
+     */
+    public static void finish() {
+        mark("startup complete");
+        System.out.println(summary());
+        if (EXIT_AFTER_STARTUP) {
+            Platform.exit();
+        }
+    }
+
+    static synchronized String summary() {
+        StringBuilder line = new StringBuilder("Startup timeline (ms since JVM start):");
+        for (int i = 0; i < phases.size(); i++) {
+            line.append(i == 0 ? " " : " | ").append(phases.get(i))
+                    .append(String.format(" %.0f", (times.get(i) - jvmStartNanos) / 1e6));
+        }
+        return line.toString();
+    }
+}
@@ -1,21 +1,31 @@
 package com.example.loginapp;
 
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.WeakInvalidationListener;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
+import javafx.geometry.Pos;
 import javafx.scene.chart.PieChart;
 import javafx.scene.control.Button;
+import javafx.scene.control.Hyperlink;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
-import javafx.stage.Stage;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import java.io.IOException;
+import javafx.util.Duration;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.Map;
 
-public class SummaryViewController {
+public class SummaryViewController implements BoundView {
     @FXML private Label usernameLabel;
+    @FXML private Hyperlink logoutLink;
     @FXML private TextField searchField;
+    @FXML private ProgressIndicator busyIndicator;
 
     // Navigation buttons
     @FXML private Button billingButton;
@@ -29,40 +39,58 @@ public class SummaryViewController {
     @FXML private Button expendMonthButton;
     @FXML private Button expendYearButton;
     @FXML private PieChart expendPieChart;
+    @FXML private Label expendTotalLabel;
+    @FXML private VBox expendLegend;
 
     // Income section
     @FXML private Button incomeWeekButton;
     @FXML private Button incomeMonthButton;
     @FXML private Button incomeYearButton;
     @FXML private PieChart incomePieChart;
-
-    // Data for charts
-    private ObservableList<PieChart.Data> expendWeekData;
-    private ObservableList<PieChart.Data> expendMonthData;
-    private ObservableList<PieChart.Data> expendYearData;
-
-    private ObservableList<PieChart.Data> incomeWeekData;
-    private ObservableList<PieChart.Data> incomeMonthData;
-    private ObservableList<PieChart.Data> incomeYearData;
+    @FXML private Label incomeTotalLabel;
+    @FXML private VBox incomeLegend;
+
+    // Totals come from the signed-in user's ledger, pre-bucketed per day and category
+    private Ledger ledger;
+    private LedgerAggregator aggregator;
+    private String expendPeriod = "Week";
+    private String incomePeriod = "Week";
+
+    // A header query narrows both charts to its rows; null charts the whole ledger
+    // Created in bind(), since the scheduler tracks it on the FX thread
+    private LatestRequestService<LedgerQuery.Result> querySearch;
+    private LedgerQuery.Result queryResult;
+
+    // Set while a chart refresh is queued, so a burst of ledger changes (streaming, imports) redraws once
+    private boolean refreshQueued;
+
+    // Held in a field so the weak listener lives exactly as long as this controller
+    private final InvalidationListener ledgerListener = observable -> {
+        if (!refreshQueued) {
+            refreshQueued = true;
+            Platform.runLater(() -> {
+                refreshQueued = false;
+                updateExpendChart(expendPeriod);
+                updateIncomeChart(incomePeriod);
+            });
+        }
+    };
+    // Registered with the bound ledger's aggregator, and removed from it when another ledger is bound
+    private final WeakInvalidationListener weakLedgerListener = new WeakInvalidationListener(ledgerListener);
 
     @FXML
     public void initialize() {
-        // Set up username (will be set by the calling controller)
-        usernameLabel.setText("Username");
+        logoutLink.setOnAction(event -> Session.getCurrent().logout());
 
-        // Initialize chart data
-        initializeChartData();
-
-        // Set up initial charts
-        updateExpendChart("Week");
-        updateIncomeChart("Week");
+        // Chart only what the header query matches, e.g. "category:Living date:2024 supermarket"
+        searchField.textProperty().addListener((obs, oldText, newText) -> applyQuery(newText));
 
         // Set up button handlers for navigation
         billingButton.setOnAction(event -> navigateToBilling());
         summaryButton.setOnAction(event -> System.out.println("Already on Summary"));
-        savingButton.setOnAction(event -> System.out.println("Saving clicked"));
+        savingButton.setOnAction(event -> RulesPanel.show(savingButton.getScene().getWindow()));
         footprintButton.setOnAction(event -> System.out.println("Footprint clicked"));
-        setButton.setOnAction(event -> System.out.println("Set clicked"));
+        setButton.setOnAction(event -> DiagnosticsPanel.show(setButton.getScene().getWindow()));
 
         // Set up button handlers for expenditure tabs
         expendWeekButton.setOnAction(event -> {
@@ -98,110 +126,158 @@ public class SummaryViewController {
     }
 
     /**
-     * Initialize the chart data for all time periods
+     * Attach to the session, the scheduler and the current ledger; on the FX thread, after
+     * {@link #initialize()}, which may have run on a loader thread.
      */
-    private void initializeChartData() {
-        // Expenditure data
-        expendWeekData = FXCollections.observableArrayList(
-            new PieChart.Data("Cosmetics", 300),
-            new PieChart.Data("Communication", 200),
-            new PieChart.Data("Living Costs", 200)
-        );
-
-        expendMonthData = FXCollections.observableArrayList(
-            new PieChart.Data("Cosmetics", 500),
-            new PieChart.Data("Communication", 300),
-            new PieChart.Data("Living Costs", 400)
-        );
-
-        expendYearData = FXCollections.observableArrayList(
-            new PieChart.Data("Cosmetics", 3000),
-            new PieChart.Data("Communication", 2400),
-            new PieChart.Data("Living Costs", 5000)
-        );
-
-        // Income data
-        incomeWeekData = FXCollections.observableArrayList(
-            new PieChart.Data("Salary", 18800)
-        );
-
-        incomeMonthData = FXCollections.observableArrayList(
-            new PieChart.Data("Salary", 18800)
-        );
-
-        incomeYearData = FXCollections.observableArrayList(
-            new PieChart.Data("Salary", 225600)
-        );
+    @Override
+    public void bind() {
+        // Username follows the signed-in session
+        usernameLabel.textProperty().bind(Session.getCurrent().usernameProperty());
+        TaskScheduler.bindBusyIndicator(busyIndicator);
+
+        querySearch = new LatestRequestService<>(Duration.millis(150));
+        querySearch.setOnSucceeded(event -> showQueryResult(querySearch.getValue()));
+        querySearch.setOnFailed(event -> BillingViewController.showSearchFailure(searchField, querySearch.getException()));
+
+        // Set up initial charts and keep them current as entries are added or imported
+        bindLedger(Ledger.getCurrent());
+        Ledger.currentProperty().addListener((obs, oldLedger, newLedger) -> bindLedger(newLedger));
     }
 
     /**
-     * Update the expenditure chart based on the selected time period
+     * Chart the given ledger from now on. The listener is weak, so an unloaded ledger is not kept
+     * alive by this view.
      */
-    private void updateExpendChart(String period) {
-        ObservableList<PieChart.Data> data;
+    private void bindLedger(Ledger ledger) {
+        if (aggregator != null) {
+            // Late revisions of the previous ledger (an import batch landing after logout) must not redraw
+            aggregator.revisionProperty().removeListener(weakLedgerListener);
+        }
+        this.ledger = ledger;
+        aggregator = ledger.getAggregator();
+        // A query result covers the previous ledger's rows
+        querySearch.discard();
+        queryResult = null;
+        if (!searchField.getText().isEmpty()) {
+            applyQuery(searchField.getText());
+        }
+        aggregator.revisionProperty().addListener(weakLedgerListener);
+        // The charts end at today at the latest, so recurring entries are due up to today
+        ledger.getRules().materializeThrough(LocalDate.now());
+        updateExpendChart(expendPeriod);
+        updateIncomeChart(incomePeriod);
+    }
 
-        switch (period) {
-            case "Month":
-                data = expendMonthData;
-                break;
-            case "Year":
-                data = expendYearData;
-                break;
-            default: // Week
-                data = expendWeekData;
-                break;
+    /**
+     * Run the header query in the background and redraw the charts with its rows. Rows added
+     * later are matched by the result itself, so it stays valid as the ledger grows.
+     */
+    private void applyQuery(String text) {
+        LedgerQuery query;
+        try {
+            query = LedgerQuery.parse(text);
+            BillingViewController.showQueryError(searchField, null);
+        } catch (IllegalArgumentException e) {
+            querySearch.discard();
+            BillingViewController.showQueryError(searchField, e.getMessage());
+            return;
+        }
+        if (query.isEmpty()) {
+            querySearch.discard();
+            showQueryResult(null);
+        } else {
+            querySearch.request(query.evaluateLater(ledger.getColumns(), ledger.getSearchIndex()));
         }
+    }
 
-        expendPieChart.setData(data);
+    private void showQueryResult(LedgerQuery.Result result) {
+        queryResult = result;
+        updateExpendChart(expendPeriod);
+        updateIncomeChart(incomePeriod);
+    }
 
-        // Apply custom colors to match the design
-        applyCustomColors(expendPieChart);
+    /**
+     * Totals for the window of the period containing the anchor date, of the query's rows if
+     * there is a query. A query ending earlier moves the window back to its last day.
+     */
+    private LedgerAggregator.Totals totals(String period) {
+        LedgerAggregator.Period window = toPeriod(period);
+        LocalDate anchor = aggregator.anchorDate();
+        if (queryResult == null) {
+            return aggregator.totals(window, anchor);
+        }
+        anchor = queryResult.getQuery().clamp(anchor);
+        return queryResult.totals(LedgerAggregator.windowStart(window, anchor), LedgerAggregator.windowEnd(window, anchor));
+    }
+
+    /**
+     * Update the expenditure chart based on the selected time period
+     */
+    private void updateExpendChart(String period) {
+        long start = System.nanoTime();
+        expendPeriod = period;
+        LedgerAggregator.Totals totals = totals(period);
+
+        expendPieChart.setData(toChartData(totals.getExpenses()));
+        expendTotalLabel.setText(Money.format(totals.getTotalExpense()));
+        applyCategoryColors(expendPieChart, expendLegend);
+        UiMetrics.recordSince(UiMetrics.Action.CHART_UPDATE, start);
     }
 
     /**
      * Update the income chart based on the selected time period
      */
     private void updateIncomeChart(String period) {
-        ObservableList<PieChart.Data> data;
+        long start = System.nanoTime();
+        incomePeriod = period;
+        LedgerAggregator.Totals totals = totals(period);
+
+        incomePieChart.setData(toChartData(totals.getIncome()));
+        incomeTotalLabel.setText(Money.format(totals.getTotalIncome()));
+        applyCategoryColors(incomePieChart, incomeLegend);
+        UiMetrics.recordSince(UiMetrics.Action.CHART_UPDATE, start);
+    }
 
+    private static LedgerAggregator.Period toPeriod(String period) {
         switch (period) {
             case "Month":
-                data = incomeMonthData;
-                break;
+                return LedgerAggregator.Period.MONTH;
             case "Year":
-                data = incomeYearData;
-                break;
+                return LedgerAggregator.Period.YEAR;
             default: // Week
-                data = incomeWeekData;
-                break;
+                return LedgerAggregator.Period.WEEK;
         }
+    }
 
-        incomePieChart.setData(data);
-
-        // Apply custom colors to match the design
-        for (PieChart.Data slice : incomePieChart.getData()) {
-            if (slice.getName().equals("Salary")) {
-                slice.getNode().setStyle("-fx-pie-color: #FF6B6B;");
-            }
-        }
+    private static ObservableList<PieChart.Data> toChartData(Map<String, Long> totals) {
+        ObservableList<PieChart.Data> data = FXCollections.observableArrayList();
+        totals.forEach((category, cents) -> data.add(new PieChart.Data(category, Money.toYuan(cents))));
+        return data;
     }
 
     /**
-     * Apply custom colors to the expenditure chart
+     * Color each slice with its category's color from the ledger's registry, and list the
+     * charted categories in the legend.
      */
-    private void applyCustomColors(PieChart chart) {
+    private void applyCategoryColors(PieChart chart, VBox legend) {
+        CategoryRegistry categories = ledger.getCategories();
+        legend.getChildren().clear();
         for (PieChart.Data slice : chart.getData()) {
-            switch (slice.getName()) {
-                case "Cosmetics":
-                    slice.getNode().setStyle("-fx-pie-color: #FFE066;");
-                    break;
-                case "Communication":
-                    slice.getNode().setStyle("-fx-pie-color: #70C1FF;");
-                    break;
-                case "Living Costs":
-                    slice.getNode().setStyle("-fx-pie-color: #A9A9A9;");
-                    break;
+            CategoryRegistry.Category category = categories.find(slice.getName());
+            if (category == null) {
+                continue;
             }
+            slice.getNode().setStyle("-fx-pie-color: " + category.getColor() + ";");
+            Region swatch = new Region();
+            swatch.getStyleClass().add("legend-color");
+            swatch.setStyle("-fx-background-color: " + category.getColor() + ";");
+            swatch.setPrefSize(15, 15);
+            Label name = new Label(category.getName());
+            name.getStyleClass().add("legend-text");
+            HBox item = new HBox(5, swatch, name);
+            item.getStyleClass().add("legend-item");
+            item.setAlignment(Pos.CENTER_LEFT);
+            legend.getChildren().add(item);
         }
     }
 
@@ -266,27 +342,9 @@ public class SummaryViewController {
      */
     private void navigateToBilling() {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/BillingView.fxml"));
-            Parent billingView = loader.load();
-
-            // Get the controller and set the username
-            BillingViewController controller = loader.getController();
-            controller.setUsername(usernameLabel.getText());
-
-            // Switch to the billing view
-            Scene scene = new Scene(billingView, 1000, 600); // Use consistent dimensions
-            Stage stage = (Stage) billingButton.getScene().getWindow();
-            stage.setScene(scene);
-            stage.show();
-        } catch (IOException e) {
+            ViewManager.getInstance().show(ViewManager.View.BILLING);
+        } catch (UncheckedIOException e) {
             e.printStackTrace();
         }
     }
-
-    /**
-     * Set the username in the view
-     */
-    public void setUsername(String username) {
-        usernameLabel.setText(username);
-    }
 }
@@ -0,0 +1,112 @@
+package com.example.loginapp;
+
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.concurrent.Worker;
+import javafx.scene.Node;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one place background work runs: credential checks, ledger loads, imports, searches and
+ * view preloading all go through the shared executor here instead of starting their own threads.
+ *
+ * On a JDK with virtual threads each task gets one; otherwise a bounded pool of daemon threads
+ * sized to the machine is used. Work is submitted as JavaFX {@link javafx.concurrent.Task}s or
+ * {@link javafx.concurrent.Service}s (see {@link LatestRequestService}) so results, progress and
+ * errors arrive on the FX thread, which only applies them. Tracked workers drive
+ * {@link #busyProperty()}, which views bind a busy indicator to.
+ */
+public final class TaskScheduler {
+
+    private static final ExecutorService executor = createExecutor();
+
+    // FX thread only
+    private static final ReadOnlyBooleanWrapper busy = new ReadOnlyBooleanWrapper(false);
+    private static int runningWorkers;
+
+    private TaskScheduler() {
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            // Java 21+; looked up reflectively because the app is compiled for Java 11
+            Method virtual = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "purseai-worker-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    public static ExecutorService executor() {
+        return executor;
+    }
+
+    /**
+     * Run a JavaFX Task on the shared executor and count it towards the busy state while it
+     * runs. Call on the FX thread.
+     */
+    public static <W extends Runnable & Worker<?>> W submit(W task) {
+        track(task);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Count a worker (e.g. a Service) towards the busy state whenever it is running.
+     */
+    public static void track(Worker<?> worker) {
+        if (worker.isRunning()) {
+            workerStarted();
+        }
+        worker.runningProperty().addListener((obs, wasRunning, running) -> {
+            if (running) {
+                workerStarted();
+            } else {
+                runningWorkers--;
+                busy.set(runningWorkers > 0);
+            }
+        });
+    }
+
+    private static void workerStarted() {
+        runningWorkers++;
+        busy.set(true);
+    }
+
+    /**
+     * Whether any tracked background work is running. Changes on the FX thread.
+     */
+    public static ReadOnlyBooleanProperty busyProperty() {
+        return busy.getReadOnlyProperty();
+    }
+
+    /**
+     * Show a node (typically a ProgressIndicator) only while background work is running.
+     */
+    public static void bindBusyIndicator(Node indicator) {
+        indicator.visibleProperty().bind(busy);
+        indicator.managedProperty().bind(busy);
+    }
+
+    /**
+     * Stop accepting work and interrupt running tasks, e.g. when the app exits.
+     */
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+}
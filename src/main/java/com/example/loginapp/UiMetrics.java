@@ -0,0 +1,298 @@
+package com.example.loginapp;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Built-in UI latency instrumentation: pulse times, FX thread stalls and per-action latency.
+ *
+ * Pulse times are taken from the scene's pre- and post-layout pulse listeners (the CSS and
+ * layout part of a pulse, which is where our code runs; rendering happens on the render
+ * thread). A watchdog thread posts a probe to the FX thread every few milliseconds; when a probe
+ * waits longer than the stall threshold ({@code -Dpurseai.stall.ms}, default 200) the FX thread's
+ * stack is captured while it is still stuck, so the report shows the handler that blocked it.
+ * Controllers record how long user actions took with {@link #record}. Everything is kept in
+ * fixed-size histograms, and {@link #report()} / {@link #dump()} turn it into text for the
+ * Set panel or a file under the PurseAI home directory, along with the counters of the ledger's
+ * page cache when it has one.
+ */
+public final class UiMetrics {
+
+    public enum Action {
+        LOGIN("Login"),
+        REGISTER("Registration"),
+        NAVIGATION("Navigation"),
+        SEARCH("Search"),
+        SORT("Sort"),
+        IMPORT("CSV import"),
+        LEDGER_LOAD("Ledger load"),
+        LEDGER_HISTORY("Full ledger shown after login"),
+        CHART_UPDATE("Chart update");
+
+        private final String label;
+
+        Action(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final long STALL_NANOS = Long.getLong("purseai.stall.ms", 200) * 1_000_000;
+    private static final long PROBE_INTERVAL_MS = 20;
+    private static final int KEPT_STALLS = 20;
+    private static final int STACK_FRAMES = 40;
+
+    private static final Map<Action, LatencyHistogram> actions = new EnumMap<>(Action.class);
+    private static final LatencyHistogram pulses = new LatencyHistogram();
+    // Most recent stalls first; guarded by itself
+    private static final ArrayDeque<Stall> stalls = new ArrayDeque<>();
+
+    private static volatile Thread fxThread;
+    // Time the outstanding probe was posted, or 0 when the FX thread has run it
+    private static volatile long probePostedAt;
+    private static volatile long probeRanAt;
+    private static long pulseStart;
+
+    static {
+        for (Action action : Action.values()) {
+            actions.put(action, new LatencyHistogram());
+        }
+    }
+
+    private UiMetrics() {
+    }
+
+    /**
+     * Start measuring pulses of the scene and watching the FX thread. Call once, on the FX thread.
+     */
+    public static void install(Scene scene) {
+        if (fxThread != null) {
+            return;
+        }
+        fxThread = Thread.currentThread();
+        scene.addPreLayoutPulseListener(() -> pulseStart = System.nanoTime());
+        scene.addPostLayoutPulseListener(() -> {
+            if (pulseStart != 0) {
+                pulses.record(System.nanoTime() - pulseStart);
+                pulseStart = 0;
+            }
+        });
+
+        Thread watchdog = new Thread(UiMetrics::watch, "fx-stall-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    private static void watch() {
+        Stall current = null;
+        while (true) {
+            try {
+                Thread.sleep(PROBE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long posted = probePostedAt;
+            long now = System.nanoTime();
+            if (posted == 0) {
+                if (current != null) {
+                    finish(current);
+                    current = null;
+                }
+                probePostedAt = now;
+                Platform.runLater(() -> {
+                    probeRanAt = System.nanoTime();
+                    probePostedAt = 0;
+                });
+            } else if (current == null && now - posted > STALL_NANOS) {
+                // Still blocked: whatever is on the stack now is what is holding the thread
+                current = new Stall(posted, fxThread.getStackTrace());
+            }
+        }
+    }
+
+    private static void finish(Stall stall) {
+        stall.nanos = probeRanAt - stall.startNanos;
+        synchronized (stalls) {
+            if (stalls.size() == KEPT_STALLS) {
+                stalls.removeLast();
+            }
+            stalls.addFirst(stall);
+        }
+        System.err.printf("FX thread stalled for %.0f ms at %s%n", stall.nanos / 1e6, stall.culprit());
+    }
+
+    /**
+     * Record how long an action took, from the user's input to its result being shown.
+     */
+    public static void record(Action action, long nanos) {
+        actions.get(action).record(nanos);
+    }
+
+    /**
+     * Record an action that started at the given {@link System#nanoTime()} and just finished.
+     */
+    public static void recordSince(Action action, long startNanos) {
+        record(action, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Human-readable summary of everything measured so far.
+     */
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("PurseAI UI metrics, ").append(LocalDateTime.now().withNano(0)).append('\n');
+        out.append(String.format("Stall threshold %d ms%n%n", STALL_NANOS / 1_000_000));
+        out.append(String.format("%-14s %8s %9s %9s %9s %9s%n", "", "count", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        out.append(pulses.summary("Pulse (layout)"));
+        for (Map.Entry<Action, LatencyHistogram> entry : actions.entrySet()) {
+            out.append(entry.getValue().summary(entry.getKey().label));
+        }
+
+        LedgerPageCache pages = Ledger.getCurrent().getPageCache();
+        if (pages != null) {
+            out.append(String.format("%nLedger pages: %s%n", pages.summary()));
+        }
+
+        List<Stall> recent;
+        synchronized (stalls) {
+            recent = new ArrayList<>(stalls);
+        }
+        out.append(String.format("%nStalls (most recent %d)%n", recent.size()));
+        for (Stall stall : recent) {
+            out.append(String.format("%n%.0f ms, %s ago%n", stall.nanos / 1e6,
+                    formatAge(System.nanoTime() - stall.startNanos)));
+            StackTraceElement[] stack = stall.stack;
+            for (int i = 0; i < Math.min(stack.length, STACK_FRAMES); i++) {
+                out.append("    at ").append(stack[i]).append('\n');
+            }
+            if (stack.length > STACK_FRAMES) {
+                out.append("    ... ").append(stack.length - STACK_FRAMES).append(" more\n");
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write the report to a new file under {@code <home>/diagnostics} and return its path.
+     */
+    public static Path dump() {
+        try {
+            Path directory = Ledger.homeDirectory().resolve("diagnostics");
+            Files.createDirectories(directory);
+            Path file = directory.resolve("ui-metrics-"
+                    + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".txt");
+            Files.write(file, report().getBytes(StandardCharsets.UTF_8));
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String formatAge(long nanos) {
+        long seconds = nanos / 1_000_000_000;
+        return seconds < 120 ? seconds + " s" : seconds / 60 + " min";
+    }
+
+    private static class Stall {
+        final long startNanos;
+        final StackTraceElement[] stack;
+        long nanos;
+
+        Stall(long startNanos, StackTraceElement[] stack) {
+            this.startNanos = startNanos;
+            this.stack = stack;
+        }
+
+        /**
+         * The innermost frame of our own code, or the top frame if the app is not on the stack.
+         */
+        String culprit() {
+            for (StackTraceElement frame : stack) {
+                if (frame.getClassName().startsWith("com.example.loginapp.")) {
+                    return frame.toString();
+                }
+            }
+            return stack.length > 0 ? stack[0].toString() : "unknown";
+        }
+    }
+
+    /**
+     * Log-linear histogram of durations: 8 sub-buckets per power of two of microseconds, so
+     * percentiles are within about 12% at any scale and recording never allocates.
+     */
+    static class LatencyHistogram {
+        private static final int SUB_BUCKETS = 8;
+        private static final int SUB_BITS = 3;
+
+        private final long[] counts = new long[(64 - SUB_BITS) * SUB_BUCKETS];
+        private long total;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            counts[index(micros)]++;
+            total++;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        static int index(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+            int sub = (int) (micros >>> exponent) - SUB_BUCKETS;
+            return (exponent + 1) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Upper bound, in microseconds, of the values in a bucket.
+         */
+        static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS - 1;
+            long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+            return ((sub + 1) << exponent) - 1;
+        }
+
+        synchronized long count() {
+            return total;
+        }
+
+        /**
+         * The value in microseconds below which the given fraction of recorded values fall.
+         */
+        synchronized long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBound(i), maxNanos / 1000);
+                }
+            }
+            return 0;
+        }
+
+        synchronized String summary(String label) {
+            if (total == 0) {
+                return String.format("%-14s %8d %9s %9s %9s %9s%n", label, 0, "-", "-", "-", "-");
+            }
+            return String.format("%-14s %8d %9.1f %9.1f %9.1f %9.1f%n", label, total,
+                    percentile(0.5) / 1e3, percentile(0.9) / 1e3, percentile(0.99) / 1e3, maxNanos / 1e6);
+        }
+    }
+}
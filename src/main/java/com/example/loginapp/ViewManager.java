@@ -0,0 +1,163 @@
+package com.example.loginapp;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Loads each view once and switches between them by swapping the root of a single Scene.
+ *
+ * Views keep their controllers (and therefore their state) for the lifetime of the app. Views
+ * that are likely to be needed next can be preloaded on a background thread; FXML loading and
+ * node construction are allowed off the FX thread as long as the nodes are not yet in a scene.
+ * Controllers that attach to the ledger or other FX-thread state implement {@link BoundView},
+ * and are bound on the FX thread once loaded.
+ */
+public class ViewManager {
+
+    public enum View {
+        LOGIN("/fxml/LoginView.fxml"),
+        REGISTER("/fxml/RegisterView.fxml"),
+        BILLING("/fxml/BillingView.fxml"),
+        SUMMARY("/fxml/SummaryView.fxml");
+
+        private final String fxml;
+
+        View(String fxml) {
+            this.fxml = fxml;
+        }
+    }
+
+    private static ViewManager instance;
+
+    private final Stage stage;
+    private final Scene scene;
+    // Only touched on the FX thread; values may still be loading in the background
+    private final Map<View, CompletableFuture<LoadedView>> views = new EnumMap<>(View.class);
+
+    private ViewManager(Stage stage, View initial) {
+        this.stage = stage;
+        LoadedView first = load(initial);
+        bind(first);
+        views.put(initial, CompletableFuture.completedFuture(first));
+        this.scene = new Scene(first.root, 1000, 600);
+        stage.setScene(scene);
+    }
+
+    /**
+     * Create the manager for the primary stage and put the initial view in its scene.
+     */
+    public static ViewManager init(Stage stage, View initial) {
+        instance = new ViewManager(stage, initial);
+        return instance;
+    }
+
+    public static ViewManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Start loading views in the background so the first navigation to them is instant. The
+     * returned future completes when all of them are loaded.
+     */
+    public CompletableFuture<Void> preload(View... toLoad) {
+        // One after the other: controllers share the ledger and must not initialize concurrently
+        CompletableFuture<?> previous = CompletableFuture.completedFuture(null);
+        for (View view : toLoad) {
+            if (!views.containsKey(view)) {
+                CompletableFuture<LoadedView> loading = previous.handleAsync((result, error) -> {
+                    LoadedView loaded = load(view);
+                    StartupTimeline.mark(view.name().toLowerCase() + " view preloaded");
+                    return loaded;
+                }, TaskScheduler.executor());
+                views.put(view, loading);
+                // Bind ahead of the first navigation too, so it is as quick as a cached one
+                loading.thenAccept(loaded -> Platform.runLater(() -> bind(loaded)));
+                previous = loading;
+            }
+        }
+        return previous.handle((result, error) -> null);
+    }
+
+    /**
+     * Switch the scene to the given view, loading it first if needed, and return its controller.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T show(View view) {
+        long start = System.nanoTime();
+        CompletableFuture<LoadedView> future = views.get(view);
+        LoadedView loaded = null;
+        if (future != null) {
+            try {
+                // Normally done already; otherwise we only wait for the rest of a preload in flight
+                loaded = future.join();
+            } catch (CompletionException e) {
+                e.printStackTrace();
+            }
+        }
+        if (loaded == null) {
+            loaded = load(view);
+            views.put(view, CompletableFuture.completedFuture(loaded));
+        }
+
+        bind(loaded);
+        scene.setRoot(loaded.root);
+        recordFirstLayout(start);
+        stage.show();
+        return (T) loaded.controller;
+    }
+
+    // Navigation latency runs up to the first layout of the new root
+    private void recordFirstLayout(long start) {
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                UiMetrics.recordSince(UiMetrics.Action.NAVIGATION, start);
+            }
+        });
+    }
+
+    /**
+     * Attach a loaded view's controller to the ledger and the rest of the app, once. FX thread only.
+     */
+    private static void bind(LoadedView loaded) {
+        if (!loaded.bound) {
+            loaded.bound = true;
+            if (loaded.controller instanceof BoundView) {
+                ((BoundView) loaded.controller).bind();
+            }
+        }
+    }
+
+    private static LoadedView load(View view) {
+        try {
+            FXMLLoader loader = new FXMLLoader(ViewManager.class.getResource(view.fxml));
+            Parent root = loader.load();
+            return new LoadedView(root, loader.getController());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading " + view.fxml, e);
+        }
+    }
+
+    private static class LoadedView {
+        final Parent root;
+        final Object controller;
+        // FX thread only
+        boolean bound;
+
+        LoadedView(Parent root, Object controller) {
+            this.root = root;
+            this.controller = controller;
+        }
+    }
+}